@@ -0,0 +1,21 @@
+package sheepy.util.text;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark launcher.  Same as the standard JMH main, but always turns on the GC profiler,
+ * so that every result comes with bytes allocated per operation (gc.alloc.rate.norm).
+ * All normal JMH command line options are accepted, e.g. <br>
+ * <code>java -jar benchmarks.jar Codec -p variant=Z85 -p size=1024</code>
+ */
+public class Base85Benchmarks {
+   public static void main ( String[] args ) throws RunnerException, CommandLineOptionException {
+      CommandLineOptions cmd = new CommandLineOptions( args );
+      new Runner( new OptionsBuilder().parent( cmd ).addProfiler( GCProfiler.class ).build() ).run();
+   }
+}
@@ -0,0 +1,81 @@
+package sheepy.util.text;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Many small records, one call per record against one batch call.
+ * Scores are per record, so batch and loop are directly comparable; gc.alloc.rate.norm is per record too.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@OperationsPerInvocation( BatchBenchmark.RECORDS )
+public class BatchBenchmark {
+   static final int RECORDS = 1000;
+
+   @Param({ "Z85", "Ascii85" })
+   public String variant;
+
+   @Param({ "32", "128" })
+   public int size;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[][] records, codes;
+   private byte[] packed, packedCodes;
+   private int[] offsets, codeOffsets;
+   private final Base85.ByteSink sink = new Base85.ByteSink();
+
+   /** Records of 1 to size*2-1 bytes, averaging size. */
+   @Setup public void setup () {
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      final Random rnd = new Random( 85 );
+      final byte[] data = Variant.payload( "random", size * 2 * RECORDS );
+      records = new byte[ RECORDS ][];
+      codes = new byte[ RECORDS ][];
+      offsets = new int[ RECORDS + 1 ];
+      for ( int i = 0 ; i < RECORDS ; i++ ) {
+         offsets[ i + 1 ] = offsets[ i ] + 1 + rnd.nextInt( size * 2 - 1 );
+         records[ i ] = Arrays.copyOfRange( data, offsets[ i ], offsets[ i + 1 ] );
+         codes[ i ] = encoder.encode( records[ i ] );
+      }
+      packed = Arrays.copyOf( data, offsets[ RECORDS ] );
+      codeOffsets = encoder.encodeBatch( packed, offsets, sink.clear() );
+      packedCodes = sink.toByteArray();
+   }
+
+   @Benchmark public void encodeLoop ( Blackhole bh ) {
+      for ( byte[] record : records ) bh.consume( encoder.encode( record ) );
+   }
+
+   @Benchmark public int[] encodeBatch () {
+      return encoder.encodeBatch( packed, offsets, sink.clear() );
+   }
+
+   @Benchmark public void decodeLoop ( Blackhole bh ) {
+      for ( byte[] code : codes ) bh.consume( decoder.decode( code ) );
+   }
+
+   @Benchmark public int[] decodeBatch () {
+      return decoder.decodeBatch( packedCodes, codeOffsets, sink.clear() );
+   }
+}
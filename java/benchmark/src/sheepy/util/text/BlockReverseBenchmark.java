@@ -0,0 +1,50 @@
+package sheepy.util.text;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of strict RFC 1924 whole-block encoding.
+ * 16 bytes is the IPv6 address case, which has a fixed 128 bits path.
+ * Larger blocks are split by powers of 85, and grow a little faster than linear.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class BlockReverseBenchmark {
+   @Param({ "4", "16", "64", "1024", "16384", "65536", "1048576" })
+   public int size;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data, encoded;
+
+   @Setup public void setup () {
+      encoder = Base85.getRfc1924Encoder();
+      decoder = Base85.getRfc1924Decoder();
+      data = Variant.payload( "random", size );
+      data[0] |= 1; // Make sure leading byte is not zero
+      encoded = encoder.encodeBlockReverse( data );
+   }
+
+   @Benchmark public byte[] encodeBlockReverse () {
+      return encoder.encodeBlockReverse( data );
+   }
+
+   @Benchmark public byte[] decodeBlockReverse () {
+      return decoder.decodeBlockReverse( encoded );
+   }
+}
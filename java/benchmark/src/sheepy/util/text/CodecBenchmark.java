@@ -0,0 +1,82 @@
+package sheepy.util.text;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the block codecs from 4 bytes to 64 MB, with {@link java.util.Base64} as baseline.
+ * Sizes are of the raw (unencoded) payload.  Use the gc profiler for bytes allocated per operation.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class CodecBenchmark {
+   @Param({ "Rfc1924", "Z85", "Ascii85", "Ascii85-noZY" })
+   public String variant;
+
+   @Param({ "4", "64", "1024", "65536", "1048576", "67108864" })
+   public int size;
+
+   @Param({ "random", "sparse", "runs" })
+   public String payload;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data, encoded, decodeBuffer, encodeBuffer, base64;
+
+   @Setup public void setup () {
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      data = Variant.payload( payload, size );
+      encoded = encoder.encode( data );
+      encodeBuffer = new byte[ encoder.calcEncodedLength( data ) ];
+      decodeBuffer = new byte[ size ];
+      base64 = Base64.getEncoder().encode( data );
+   }
+
+   @Benchmark public byte[] encode () {
+      return encoder.encode( data );
+   }
+
+   @Benchmark public int encodeToBuffer () {
+      return encoder.encode( data, 0, data.length, encodeBuffer, 0 );
+   }
+
+   @Benchmark public byte[] decode () {
+      return decoder.decode( encoded );
+   }
+
+   @Benchmark public int decodeToBuffer () {
+      return decoder.decode( encoded, 0, encoded.length, decodeBuffer, 0 );
+   }
+
+   @Benchmark public Base85.Result tryDecode () {
+      return decoder.tryDecode( encoded, 0, encoded.length, decodeBuffer, 0 );
+   }
+
+   @Benchmark public boolean test () {
+      return decoder.test( encoded );
+   }
+
+   @Benchmark public byte[] base64Encode () {
+      return Base64.getEncoder().encode( data );
+   }
+
+   @Benchmark public byte[] base64Decode () {
+      return Base64.getDecoder().decode( base64 );
+   }
+}
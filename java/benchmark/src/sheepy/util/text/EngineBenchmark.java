@@ -0,0 +1,60 @@
+package sheepy.util.text;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each bulk engine against scalar code, on incompressible data into preallocated buffers.
+ * "swar" needs JDK 9+, and "vector" needs JDK 17+; the forked JVM adds module jdk.incubator.vector.  An engine that cannot load fails setup.
+ * Add <code>-jvmArgsAppend -XX:MaxVectorSize=32</code> to measure 256 bits vectors on AVX-512 hardware.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector" )
+public class EngineBenchmark {
+   @Param({ "Z85", "Ascii85" })
+   public String variant;
+
+   @Param({ "scalar", "swar", "vector" })
+   public String engine;
+
+   @Param({ "64", "1024", "65536" })
+   public int size;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data, encoded, encodeBuffer, decodeBuffer;
+
+   @Setup public void setup () {
+      final Base85.Engine bound = Base85.loadEngine( engine );
+      if ( bound == null && ! "scalar".equals( engine ) )
+         throw new IllegalStateException( engine + " engine not available" );
+      encoder = Variant.encoder( variant ).withEngine( bound );
+      decoder = Variant.decoder( variant ).withEngine( bound );
+      data = Variant.payload( "random", size );
+      encoded = encoder.encode( data );
+      encodeBuffer = new byte[ encoded.length ];
+      decodeBuffer = new byte[ size ];
+   }
+
+   @Benchmark public int encode () {
+      return encoder.encode( data, 0, data.length, encodeBuffer, 0 );
+   }
+
+   @Benchmark public int decode () {
+      return decoder.decode( encoded, 0, encoded.length, decodeBuffer, 0 );
+   }
+}
@@ -0,0 +1,69 @@
+package sheepy.util.text;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of monitoring.  The "direct" benchmarks call the unmonitored internals; the others call the public methods.
+ * With monitor=off, public methods should score the same as direct, since the JIT drops the monitoring code.
+ * With monitor=on, the difference is the cost of the counters.
+ * JMH runs each parameter set in a new fork, so the property is set before Base85 is loaded.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class MonitorBenchmark {
+   @Param({ "off", "on" })
+   public String monitor;
+
+   @Param({ "Z85", "Ascii85" })
+   public String variant;
+
+   @Param({ "64", "65536" })
+   public int size;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data, encoded, encodeBuffer, decodeBuffer;
+
+   @Setup public void setup () {
+      final boolean on = "on".equals( monitor );
+      System.setProperty( Base85.MONITOR_PROPERTY, Boolean.toString( on ) );
+      if ( ( Base85.getMonitor() != null ) != on ) throw new IllegalStateException( "Base85 was loaded before the monitor property is set" );
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      data = Variant.payload( "sparse", size );
+      encoded = encoder.encode( data );
+      encodeBuffer = new byte[ encoder.calcEncodedLength( data ) ];
+      decodeBuffer = new byte[ size ];
+   }
+
+   @Benchmark public int encodeDirect () {
+      return encoder._encode( data, 0, data.length, encodeBuffer, 0 );
+   }
+
+   @Benchmark public int encode () {
+      return encoder.encode( data, 0, data.length, encodeBuffer, 0 );
+   }
+
+   @Benchmark public int decodeDirect () {
+      return decoder._decode( encoded, 0, encoded.length, decodeBuffer, 0 );
+   }
+
+   @Benchmark public int decode () {
+      return decoder.decode( encoded, 0, encoded.length, decodeBuffer, 0 );
+   }
+}
@@ -0,0 +1,61 @@
+package sheepy.util.text;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential versus fork/join encoding of large payloads, using the common pool.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ParallelBenchmark {
+   @Param({ "Rfc1924", "Z85", "Ascii85" })
+   public String variant;
+
+   @Param({ "1048576", "16777216", "67108864" })
+   public int size;
+
+   @Param({ "random", "sparse" })
+   public String payload;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data, encoded;
+
+   @Setup public void setup () {
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      data = Variant.payload( payload, size );
+      encoded = encoder.encode( data );
+   }
+
+   @Benchmark public byte[] encode () {
+      return encoder.encode( data );
+   }
+
+   @Benchmark public byte[] encodeParallel () {
+      return encoder.encodeParallel( data );
+   }
+
+   @Benchmark public byte[] decode () {
+      return decoder.decode( encoded );
+   }
+
+   @Benchmark public byte[] decodeParallel () {
+      return decoder.decodeParallel( encoded );
+   }
+}
@@ -0,0 +1,82 @@
+package sheepy.util.text;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Longs and UUIDs through the primitive methods, against converting them to and from byte arrays around the general methods.
+ * The primitive methods allocate only the result string, or nothing when writing to an array.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class PrimitiveBenchmark {
+   @Param({ "Z85", "Ascii85" })
+   public String variant;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private final long value = 0x0123456789ABCDEFL;
+   private final UUID uuid = new UUID( 0x0123456789ABCDEFL, 0xFEDCBA9876543210L );
+   private final byte[] out = new byte[ 20 ];
+   private String longText, uuidText;
+
+   @Setup public void setup () {
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      longText = encoder.encode( value );
+      uuidText = encoder.encode( uuid );
+   }
+
+   @Benchmark public String encodeLong () {
+      return encoder.encode( value );
+   }
+
+   @Benchmark public int encodeLongToArray () {
+      return encoder.encode( value, out, 0 );
+   }
+
+   @Benchmark public String encodeLongBytes () {
+      return encoder.encodeToString( ByteBuffer.allocate( 8 ).putLong( value ).array() );
+   }
+
+   @Benchmark public long decodeLong () {
+      return decoder.decodeLong( longText );
+   }
+
+   @Benchmark public long decodeLongBytes () {
+      return ByteBuffer.wrap( decoder.decodeToBytes( longText ) ).getLong();
+   }
+
+   @Benchmark public String encodeUuid () {
+      return encoder.encode( uuid );
+   }
+
+   @Benchmark public String encodeUuidBytes () {
+      return encoder.encodeToString( ByteBuffer.allocate( 16 ).putLong( uuid.getMostSignificantBits() ).putLong( uuid.getLeastSignificantBits() ).array() );
+   }
+
+   @Benchmark public UUID decodeUuid () {
+      return decoder.decodeUuid( uuidText );
+   }
+
+   @Benchmark public UUID decodeUuidBytes () {
+      final ByteBuffer buf = ByteBuffer.wrap( decoder.decodeToBytes( uuidText ) );
+      return new UUID( buf.getLong(), buf.getLong() );
+   }
+}
@@ -0,0 +1,77 @@
+package sheepy.util.text;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Result arrays against a reused sink and a pooled sink.
+ * Check gc.alloc.rate.norm: the sink and pool benchmarks should allocate close to zero bytes per operation once warmed up,
+ * while the array benchmarks allocate the result, plus a trimmed copy when Ascii85 compression shrinks it.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class SinkBenchmark {
+   @Param({ "Z85", "Ascii85" })
+   public String variant;
+
+   @Param({ "64", "1024", "65536" })
+   public int size;
+
+   @Param({ "random", "sparse" })
+   public String payload;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data, encoded;
+   private final Base85.ByteSink sink = new Base85.ByteSink();
+   private final Base85.BufferPool pool = new Base85.BufferPool( 4, 256, 1 << 20 );
+
+   @Setup public void setup () {
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      data = Variant.payload( payload, size );
+      encoded = encoder.encode( data );
+   }
+
+   @Benchmark public byte[] encodeToArray () {
+      return encoder.encode( data );
+   }
+
+   @Benchmark public int encodeToSink () {
+      return encoder.encode( data, 0, data.length, sink.clear() );
+   }
+
+   @Benchmark public int encodeToPool () {
+      try ( Base85.ByteSink leased = encoder.encode( data, 0, data.length, pool ) ) {
+         return leased.length();
+      }
+   }
+
+   @Benchmark public byte[] decodeToArray () {
+      return decoder.decode( encoded );
+   }
+
+   @Benchmark public int decodeToSink () {
+      return decoder.decode( encoded, 0, encoded.length, sink.clear() );
+   }
+
+   @Benchmark public int decodeToPool () {
+      try ( Base85.ByteSink leased = decoder.decode( encoded, 0, encoded.length, pool ) ) {
+         return leased.length();
+      }
+   }
+}
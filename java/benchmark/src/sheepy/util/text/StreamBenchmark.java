@@ -0,0 +1,100 @@
+package sheepy.util.text;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential streams against parallel streams on a fixed thread pool, with the default 1 MB chunks.
+ * The other side of each stream is memory, so that the codec is the bottleneck.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class StreamBenchmark {
+   @Param({ "Z85", "Ascii85" })
+   public String variant;
+
+   @Param({ "16777216" })
+   public int size;
+
+   @Param({ "random", "sparse" })
+   public String payload;
+
+   @Param({ "2", "4", "8" })
+   public int threads;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data, encoded, buffer = new byte[ 65536 ];
+   private ExecutorService pool;
+
+   /** Counts and discards bytes. */
+   private static final class NullStream extends OutputStream {
+      long count;
+      @Override public void write ( int b ) { count++; }
+      @Override public void write ( byte[] b, int off, int len ) { count += len; }
+   }
+
+   @Setup public void setup () {
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      data = Variant.payload( payload, size );
+      encoded = encoder.encode( data );
+      pool = Executors.newFixedThreadPool( threads );
+   }
+
+   @TearDown public void tearDown () {
+      pool.shutdown();
+   }
+
+   @Benchmark public long encodeStream () throws IOException {
+      return encode( encoder.wrap( new NullStream() ) );
+   }
+
+   @Benchmark public long encodeParallelStream () throws IOException {
+      return encode( encoder.wrapParallel( new NullStream(), pool ) );
+   }
+
+   @Benchmark public long decodeStream () throws IOException {
+      return decode( decoder.wrap( new ByteArrayInputStream( encoded ) ) );
+   }
+
+   @Benchmark public long decodeParallelStream () throws IOException {
+      return decode( decoder.wrapParallel( new ByteArrayInputStream( encoded ), pool ) );
+   }
+
+   private long encode ( OutputStream out ) throws IOException {
+      try ( OutputStream os = out ) {
+         for ( int i = 0 ; i < data.length ; i += 65536 ) os.write( data, i, Math.min( 65536, data.length - i ) );
+      }
+      return data.length;
+   }
+
+   private long decode ( InputStream in ) throws IOException {
+      long total = 0;
+      try ( InputStream is = in ) {
+         for ( int len ; ( len = is.read( buffer ) ) >= 0 ; ) total += len;
+      }
+      return total;
+   }
+}
@@ -0,0 +1,88 @@
+package sheepy.util.text;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * String and character APIs, against the equivalent round trip through byte arrays.
+ * The "viaBytes" benchmarks are what callers had to write before the character APIs.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class StringBenchmark {
+   @Param({ "Z85", "Ascii85" })
+   public String variant;
+
+   @Param({ "64", "65536" })
+   public int size;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data;
+   private String encoded, encodedText;
+   private final StringBuilder builder = new StringBuilder();
+
+   @Setup public void setup () {
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      data = Variant.payload( "random", size );
+      encoded = encoder.encodeToString( data );
+      char[] text = new char[ size ];
+      Arrays.fill( text, 'x' );
+      encodedText = encoder.encode( new String( text ) );
+   }
+
+   @Benchmark public String encodeToString () {
+      return encoder.encodeToString( data );
+   }
+
+   @Benchmark public String encodeToStringViaBytes () {
+      return new String( encoder.encode( data ), US_ASCII );
+   }
+
+   @Benchmark public StringBuilder encodeToBuilder () {
+      builder.setLength( 0 );
+      return encoder.encode( data, 0, data.length, builder );
+   }
+
+   @Benchmark public byte[] decodeToBytes () {
+      return decoder.decodeToBytes( encoded );
+   }
+
+   @Benchmark public byte[] decodeToBytesViaBytes () {
+      return decoder.decode( encoded.getBytes( US_ASCII ) );
+   }
+
+   @Benchmark public String decodeToString () {
+      return decoder.decode( encodedText );
+   }
+
+   @Benchmark public String decodeToStringViaBytes () {
+      return new String( decoder.decode( encodedText.getBytes( US_ASCII ) ), UTF_8 );
+   }
+
+   @Benchmark public boolean test () {
+      return decoder.test( encoded );
+   }
+
+   @Benchmark public boolean testViaBytes () {
+      return decoder.test( encoded.getBytes( US_ASCII ) );
+   }
+}
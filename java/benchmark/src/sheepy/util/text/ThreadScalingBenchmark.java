@@ -0,0 +1,75 @@
+package sheepy.util.text;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of one shared encoder and decoder used by 1 to 16 threads at once.
+ * Each thread writes to its own buffer, so total throughput should grow with thread count up to the number of cores.
+ * Compare the scores of the same operation across thread counts; JMH reports the sum of all threads.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ThreadScalingBenchmark {
+   @Param({ "Z85", "Ascii85", "Ascii85-noZY" })
+   public String variant;
+
+   @Param({ "64", "65536" })
+   public int size;
+
+   private Base85.Encoder encoder;
+   private Base85.Decoder decoder;
+   private byte[] data, encoded;
+
+   @Setup public void setup () {
+      encoder = Variant.encoder( variant );
+      decoder = Variant.decoder( variant );
+      data = Variant.payload( "sparse", size );
+      encoded = encoder.encode( data );
+   }
+
+   /** Output buffers owned by each benchmark thread. */
+   @State( Scope.Thread )
+   public static class Buffers {
+      byte[] encodeBuffer, decodeBuffer;
+      @Setup public void setup ( ThreadScalingBenchmark shared ) {
+         encodeBuffer = new byte[ shared.encoder.calcEncodedLength( shared.data ) ];
+         decodeBuffer = new byte[ shared.size ];
+      }
+   }
+
+   private int encode ( Buffers buf ) {
+      return encoder.encode( data, 0, data.length, buf.encodeBuffer, 0 );
+   }
+
+   private int decode ( Buffers buf ) {
+      return decoder.decode( encoded, 0, encoded.length, buf.decodeBuffer, 0 );
+   }
+
+   @Benchmark @Threads( 1 )  public int encode01 ( Buffers buf ) { return encode( buf ); }
+   @Benchmark @Threads( 2 )  public int encode02 ( Buffers buf ) { return encode( buf ); }
+   @Benchmark @Threads( 4 )  public int encode04 ( Buffers buf ) { return encode( buf ); }
+   @Benchmark @Threads( 8 )  public int encode08 ( Buffers buf ) { return encode( buf ); }
+   @Benchmark @Threads( 16 ) public int encode16 ( Buffers buf ) { return encode( buf ); }
+
+   @Benchmark @Threads( 1 )  public int decode01 ( Buffers buf ) { return decode( buf ); }
+   @Benchmark @Threads( 2 )  public int decode02 ( Buffers buf ) { return decode( buf ); }
+   @Benchmark @Threads( 4 )  public int decode04 ( Buffers buf ) { return decode( buf ); }
+   @Benchmark @Threads( 8 )  public int decode08 ( Buffers buf ) { return decode( buf ); }
+   @Benchmark @Threads( 16 ) public int decode16 ( Buffers buf ) { return decode( buf ); }
+}
@@ -0,0 +1,59 @@
+package sheepy.util.text;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Validating tokens: validate, which finds the first error, against test, which only says yes or no,
+ * and tryDecode, which decodes into a preallocated buffer.  Valid data, so every benchmark reads all of it.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector" )
+public class ValidateBenchmark {
+   @Param({ "Z85", "Ascii85" })
+   public String variant;
+
+   @Param({ "scalar", "swar", "vector" })
+   public String engine;
+
+   @Param({ "40", "1024", "65536" })
+   public int size;
+
+   private Base85.Decoder decoder;
+   private byte[] encoded, decodeBuffer;
+
+   @Setup public void setup () {
+      final Base85.Engine bound = Base85.loadEngine( engine );
+      if ( bound == null && ! "scalar".equals( engine ) )
+         throw new IllegalStateException( engine + " engine not available" );
+      decoder = Variant.decoder( variant ).withEngine( bound );
+      encoded = Variant.encoder( variant ).encode( Variant.payload( "random", size / 5 * 4 ) );
+      decodeBuffer = new byte[ size ];
+   }
+
+   @Benchmark public Base85.Result validate () {
+      return decoder.validate( encoded );
+   }
+
+   @Benchmark public boolean test () {
+      return decoder.test( encoded );
+   }
+
+   @Benchmark public Base85.Result tryDecode () {
+      return decoder.tryDecode( encoded, 0, encoded.length, decodeBuffer, 0 );
+   }
+}
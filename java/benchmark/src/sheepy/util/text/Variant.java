@@ -0,0 +1,59 @@
+package sheepy.util.text;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Codec variants and payloads shared by the benchmarks.
+ */
+final class Variant {
+   private Variant() {}
+
+   static Base85.Encoder encoder ( String variant ) {
+      switch ( variant ) {
+         case "Rfc1924" : return Base85.getRfc1924Encoder();
+         case "Z85"     : return Base85.getZ85Encoder();
+         case "Ascii85" : return Base85.getAscii85Encoder( true, true );
+         case "Ascii85-noZY" : return Base85.getAscii85Encoder( false, false );
+         case "Custom"  : return custom().getEncoder();
+      }
+      throw new IllegalArgumentException( "Unknown variant " + variant );
+   }
+
+   static Base85.Decoder decoder ( String variant ) {
+      switch ( variant ) {
+         case "Rfc1924" : return Base85.getRfc1924Decoder();
+         case "Z85"     : return Base85.getZ85Decoder();
+         case "Ascii85" :
+         case "Ascii85-noZY" : return Base85.getAscii85Decoder();
+         case "Custom"  : return custom().getDecoder();
+      }
+      throw new IllegalArgumentException( "Unknown variant " + variant );
+   }
+
+   /** Z85 characters in reverse order, to compare a custom alphabet with the built-in one. */
+   private static Base85.Custom custom () {
+      return Base85.custom( new StringBuilder( Base85.getZ85Encoder().getCharset() ).reverse().toString() );
+   }
+
+   /** Generate payload.
+     * "random" is incompressible; "sparse" has every other 4-byte block zero or space,
+     * which is where Ascii85 "z" / "y" compression kicks in.
+     * "runs" is zeros with a 64 bytes random record every 4 KB, like a sparse image or a preallocated file,
+     * where Ascii85 compresses long runs of "z".
+     */
+   static byte[] payload ( String kind, int size ) {
+      byte[] data = new byte[ size ];
+      new Random( 85 ).nextBytes( data );
+      if ( "sparse".equals( kind ) )
+         for ( int i = 0 ; i + 4 <= size ; i += 8 )
+            for ( int j = 0 ; j < 4 ; j++ )
+               data[ i + j ] = ( i & 8 ) == 0 ? 0 : (byte) ' ';
+      else if ( "runs".equals( kind ) )
+         for ( int i = 0 ; i < size ; i += 4096 )
+            Arrays.fill( data, Math.min( i + 64, size ), Math.min( i + 4096, size ), (byte) 0 );
+      else if ( ! "random".equals( kind ) )
+         throw new IllegalArgumentException( "Unknown payload " + kind );
+      return data;
+   }
+}
@@ -1,12 +1,49 @@
 package sheepy.util.text;
 
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CoderResult;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Example: <br>
@@ -18,13 +55,54 @@ public class Base85 {
    private static final long Power4 = 52200625; // 85^4
    private static final long Power3 = 614125;  // 85^3
    private static final long Power2 = 7225;   // 85^2
+   // Parallel processing.  Input smaller than threshold is processed sequentially.
+   static final int PARALLEL_THRESHOLD = 1 << 20;
+   static final int PARALLEL_CHUNK = 1 << 18; // Bytes of binary data per task; must be multiple of 4.
+   static final int STREAM_CHUNK = 1 << 20; // Bytes of binary data per chunk of parallel streams; must be multiple of 4.
+   // Reciprocals for division-free encoding, exact for all unsigned 32 bits input.
+   private static final long Reciprocal2 = 2434904643L; // ceil( 2^44 / 85^2 ), use with >>> 44
+   private static final long Reciprocal2Hi = 148615;    // ceil( 2^30 / 85^2 ), for quotients below 2^20, use with >>> 30
+   /** System property to choose the bulk engine: "vector", "swar", or "scalar".  Default is the fastest available.
+     * An engine that is not available falls back to the next one in that order.
+     * @see #getEngineName() */
+   public static final String ENGINE_PROPERTY = "sheepy.util.text.Base85.engine";
+   // Engine names and classes, fastest first; must be initialized before ENGINE.  Scalar code needs no engine.
+   private static final String[] ENGINE_NAMES = { "vector", "swar" };
+   private static final String[] ENGINE_CLASSES = { "sheepy.util.text.VectorEngine", "sheepy.util.text.SwarEngine" };
+   // Bulk engine for long runs of blocks, or null for scalar code only.  Tests and benchmarks bind other engines to a codec copy with withEngine.
+   static final Engine ENGINE = selectEngine();
+   /** System property to turn on monitoring: set to "true" to count all operations in MXBean {@value #MONITOR_NAME},
+     * and on Java 11+, to emit JDK Flight Recorder events for operations of at least {@link #MONITOR_THRESHOLD_PROPERTY} bytes.
+     * Read once when Base85 is loaded; when off, the JIT removes the monitoring code entirely.
+     * @see #getMonitor() */
+   public static final String MONITOR_PROPERTY = "sheepy.util.text.Base85.monitor";
+   /** System property for the input length in bytes from which operations emit Flight Recorder events.  Default is 4096. */
+   public static final String MONITOR_THRESHOLD_PROPERTY = "sheepy.util.text.Base85.monitor.threshold";
+   /** JMX object name of the monitor. */
+   public static final String MONITOR_NAME = "sheepy.util.text:type=Base85";
+   // Final, so that the monitoring code is dropped by the JIT when it is null.
+   static final Monitor MONITOR = selectMonitor();
 
    /** This is a base class for encoding data using the Base85 encoding scheme,
      * in the same style as Base64 encoder.
      * Just override {@link #getEncodeMap()} to create a fully functional encoder.
      * Encoder instances can be safely shared by multiple threads.
      */
-   public static abstract class Encoder {
+   public static abstract class Encoder implements Cloneable {
+      // Only built-in encoders use the engine; a subclass may override _writeData and must see every block.
+      final boolean builtIn = getClass().getEnclosingClass() == Base85.class;
+      // Engine of this encoder; not final only so that withEngine can set it on a fresh copy.
+      Engine engine = builtIn ? ENGINE : null;
+      // A subclass written against the deprecated ByteBuffer hook keeps getting it called.
+      private final boolean legacyDangling = ! builtIn && overrides( getClass(), Encoder.class, "_encodeDangling", byte[].class, byte[].class, int.class, ByteBuffer.class, int.class );
+
+      // Line breaks and delimiters, which only Ascii85Encoder has.  They depend on the whole text, so block-based paths use unframed().
+      int lineLength () { return 0; }
+      boolean delimited () { return false; }
+      Encoder unframed () { return this; }
+      // Encoded length without reading the data, for sizing output.
+      int maxEncodedLength ( final byte[] data, final int offset, final int length ) { return calcEncodedLength( data, offset, length ); }
+
       /** Calculate byte length of encoded string.
         *
         * @param data string to be encoded in UTF-8 bytes
@@ -68,7 +146,7 @@ public class Base85 {
         * @return encoded Base85 string
         */
       public final String encodeToString ( final byte[] data ) {
-         return new String( encode( data ), US_ASCII );
+         return encodeToString( data, 0, data.length );
       }
 
       /** Encode part of binary data into Base85 string.
@@ -78,7 +156,100 @@ public class Base85 {
         * @return encoded Base85 string
         */
       public final String encodeToString ( final byte[] data, final int offset, final int length ) {
-         return new String( encode( data, offset, length ), US_ASCII );
+         final byte[] out = encode( data, offset, length );
+         return asciiString( out, 0, out.length );
+      }
+
+      /** Encode a long as eight big endian bytes, without converting it to an array first.
+        * @param value value to encode
+        * @return encoded Base85 string, of ten characters unless Ascii85 compresses a block
+        */
+      public final String encode ( final long value ) {
+         final byte[] out = new byte[ maxEncodedLength( null, 0, 8 ) ];
+         return asciiString( out, 0, encode( value, out, 0 ) );
+      }
+
+      /** Encode a long as eight big endian bytes into a byte array, without allocating anything.
+        * @param value value to encode
+        * @param out array to write encoded data to, which needs ten bytes
+        * @param out_offset byte offset to start writing encoded data to
+        * @return number of encoded bytes
+        */
+      public final int encode ( final long value, final byte[] out, final int out_offset ) {
+         if ( unframed() != this ) return encode( ByteBuffer.allocate( 8 ).putLong( value ).array(), 0, 8, out, out_offset );
+         final byte[] map = getEncodeMap();
+         return writeLong( value, map, out, out_offset ) - out_offset;
+      }
+
+      /** Encode a UUID as sixteen big endian bytes, most significant bits first, which is the byte order of its text form.
+        * @param value value to encode
+        * @return encoded Base85 string, of twenty characters unless Ascii85 compresses a block
+        */
+      public final String encode ( final UUID value ) {
+         final byte[] out = new byte[ maxEncodedLength( null, 0, 16 ) ];
+         return asciiString( out, 0, encode( value, out, 0 ) );
+      }
+
+      /** Encode a UUID as sixteen big endian bytes into a byte array, without allocating anything.
+        * @param value value to encode
+        * @param out array to write encoded data to, which needs twenty bytes
+        * @param out_offset byte offset to start writing encoded data to
+        * @return number of encoded bytes
+        */
+      public final int encode ( final UUID value, final byte[] out, final int out_offset ) {
+         if ( unframed() != this ) return encode( ByteBuffer.allocate( 16 ).putLong( value.getMostSignificantBits() ).putLong( value.getLeastSignificantBits() ).array(), 0, 16, out, out_offset );
+         final byte[] map = getEncodeMap();
+         return writeLong( value.getLeastSignificantBits(), map, out, writeLong( value.getMostSignificantBits(), map, out, out_offset ) ) - out_offset;
+      }
+
+      private int writeLong ( final long value, final byte[] map, final byte[] out, final int wi ) {
+         return _writeData( value & 0xFFFFFFFFL, map, out, _writeData( value >>> 32, map, out, wi ) );
+      }
+
+      /** Encode part of binary data and append it to a string builder, without creating an intermediate string.
+        * @param data data to encode
+        * @param offset byte offset that data starts
+        * @param length number of data bytes
+        * @param out string builder to append encoded data to
+        * @return out
+        */
+      public final StringBuilder encode ( final byte[] data, final int offset, final int length, final StringBuilder out ) {
+         out.ensureCapacity( out.length() + (int) Math.ceil( length * 1.25 ) );
+         try {
+            encode( data, offset, length, (Appendable) out );
+         } catch ( IOException ex ) { throw new AssertionError( ex ); } // StringBuilder does not throw
+         return out;
+      }
+
+      /** Encode part of binary data and append it to an Appendable, such as a Writer or a StringBuilder.
+        * Data is encoded through a small buffer; memory use does not grow with the size of the data,
+        * except for Ascii85 with line breaks or delimiters, which is encoded as a whole.
+        * @param data data to encode
+        * @param offset byte offset that data starts
+        * @param length number of data bytes
+        * @param out destination to append encoded data to
+        * @return out
+        * @throws IOException if out throws IOException
+        */
+      public final Appendable encode ( final byte[] data, int offset, final int length, final Appendable out ) throws IOException {
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         final Monitor monitor = MONITOR;
+         final Object event = monitor == null ? null : monitor.begin( length );
+         if ( unframed() != this ) {
+            final byte[] text = _encode( data, offset, length );
+            out.append( asciiString( text, 0, text.length ) );
+            if ( monitor != null ) monitor.encoded( this, event, length, text.length );
+            return out;
+         }
+         final AsciiSequence buf = new AsciiSequence( new byte[ (int) Math.ceil( Math.min( length, 8192 ) * 1.25 ) ] );
+         long written = 0;
+         for ( final int end = offset + length ; offset < end ; offset += 8192 ) {
+            buf.length = _encode( data, offset, Math.min( end - offset, 8192 ), buf.bytes, 0 );
+            out.append( buf, 0, buf.length );
+            written += buf.length;
+         }
+         if ( monitor != null ) monitor.encoded( this, event, length, written );
+         return out;
       }
 
       /** Encode binary data into a new byte array.
@@ -96,10 +267,53 @@ public class Base85 {
         * @return encoded Base85 encoded data in ASCII charset
         */
       public final byte[] encode ( final byte[] data, final int offset, final int length ) {
-         byte[] out = new byte[ calcEncodedLength( data, offset, length ) ];
-         int len = _encode( data, offset, length, out, 0 );
-         if ( out.length == len ) return out;
-         return Arrays.copyOf( out, len );
+         final Monitor monitor = MONITOR;
+         if ( monitor == null ) return _encode( data, offset, length );
+         final Object event = monitor.begin( length );
+         final byte[] result = _encode( data, offset, length );
+         monitor.encoded( this, event, length, result.length );
+         return result;
+      }
+
+      /** Encode binary data into a new byte array, splitting the work across the common ForkJoinPool.
+        * @param data data to encode
+        * @return encoded Base85 encoded data in ASCII charset
+        */
+      public final byte[] encodeParallel ( final byte[] data ) {
+         return encodeParallel( data, 0, data.length, ForkJoinPool.commonPool() );
+      }
+
+      /** Encode part of a binary data into a new byte array, splitting the work across a ForkJoinPool.
+        * Data is split on block boundaries.  The output length of each part is calculated in parallel first,
+        * so that parts that shrink from Ascii85 compression can be written to the right place.
+        * Small data is encoded sequentially.  Line breaks and delimiters are added after the parts are joined.
+        * @param data array with data to encode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @param pool pool to run encoding tasks
+        * @return encoded Base85 encoded data in ASCII charset
+        */
+      public final byte[] encodeParallel ( final byte[] data, final int offset, final int length, final ForkJoinPool pool ) {
+         if ( length < PARALLEL_THRESHOLD ) return encode( data, offset, length );
+         if ( offset < 0 || length > data.length - offset ) throw new ArrayIndexOutOfBoundsException( offset < 0 ? offset : offset + length );
+         final Encoder unframed = unframed();
+         if ( unframed != this ) return frame( unframed.encodeParallel( data, offset, length, pool ), lineLength(), delimited() );
+         final int count = ( length - 1 ) / PARALLEL_CHUNK + 1;
+         final int[] outOffsets = new int[ count + 1 ];
+         forkEach( pool, count, i -> {
+            final int start = offset + i * PARALLEL_CHUNK;
+            outOffsets[ i + 1 ] = calcEncodedLength( data, start, Math.min( PARALLEL_CHUNK, offset + length - start ) );
+         } );
+         for ( int i = 1 ; i <= count ; i++ ) outOffsets[ i ] += outOffsets[ i - 1 ];
+         final byte[] out = new byte[ outOffsets[ count ] ];
+         final Monitor monitor = MONITOR;
+         final Object event = monitor == null ? null : monitor.begin( length );
+         forkEach( pool, count, i -> {
+            final int start = offset + i * PARALLEL_CHUNK;
+            _encode( data, start, Math.min( PARALLEL_CHUNK, offset + length - start ), out, outOffsets[ i ] );
+         } );
+         if ( monitor != null ) monitor.encoded( this, event, length, out.length );
+         return out;
       }
 
       /** Encode part of a byte array and write the output into a byte array in ASCII charset.
@@ -111,8 +325,146 @@ public class Base85 {
         * @return number of encoded bytes
         */
       public final int encode ( final byte[] data, final int offset, final int length, final byte[] out, final int out_offset ) {
-         int size = calcEncodedLength( data, offset, length );
-         return _encode( data, offset, length, out, out_offset );
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         final Monitor monitor = MONITOR;
+         if ( monitor == null ) return _encode( data, offset, length, out, out_offset );
+         final Object event = monitor.begin( length );
+         final int len = _encode( data, offset, length, out, out_offset );
+         monitor.encoded( this, event, length, len );
+         return len;
+      }
+
+      /** Encode part of a byte array and append the output to a sink, which grows as needed.
+        * Reusing a sink avoids allocating a result array for each call.
+        * @param data array with data to encode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @param out sink to append encoded data to; the data starts at its length before the call
+        * @return number of encoded bytes
+        */
+      public final int encode ( final byte[] data, final int offset, final int length, final ByteSink out ) {
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         final Monitor monitor = MONITOR;
+         final Object event = monitor == null ? null : monitor.begin( length );
+         final byte[] buf = out.reserve( maxEncodedLength( data, offset, length ) );
+         final int len = _encode( data, offset, length, buf, out.length );
+         out.length += len;
+         if ( monitor != null ) monitor.encoded( this, event, length, len );
+         return len;
+      }
+
+      /** Encode part of a byte array into a sink leased from a pool.
+        * Close the sink, or release it to the pool, when done with the result.
+        * @param data array with data to encode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @param pool pool to lease a sink from
+        * @return leased sink with the encoded data from offset 0 to its length
+        */
+      public final ByteSink encode ( final byte[] data, final int offset, final int length, final BufferPool pool ) {
+         final ByteSink out = pool.lease();
+         try {
+            encode( data, offset, length, out );
+            return out;
+         } catch ( RuntimeException ex ) {
+            out.close();
+            throw ex;
+         }
+      }
+
+      /** Encode many messages packed one after another in an array, and append them to a sink one after another.
+        * The output is sized, reserved, and monitored once per batch instead of once per message,
+        * which is most of the cost of small messages.
+        * @param data array with the messages
+        * @param offsets start of each message in data, followed by the end of the last message
+        * @param out sink to append the encoded messages to
+        * @return start of each encoded message in the array of the sink, followed by the end of the last one
+        * @throws IllegalArgumentException if offsets is empty, decreasing, or outside data
+        */
+      public final int[] encodeBatch ( final byte[] data, final int[] offsets, final ByteSink out ) {
+         return encodeBatch( data, null, offsets, null, batchSize( data, offsets ), out );
+      }
+
+      /** Encode many messages, each a part of an array, and append them to a sink one after another.
+        * @param data array of each message
+        * @param offsets byte offset of each message in its array
+        * @param lengths number of bytes of each message
+        * @param out sink to append the encoded messages to
+        * @return start of each encoded message in the array of the sink, followed by the end of the last one
+        * @throws IllegalArgumentException if the three arrays differ in length, or a message is outside its array
+        * @see #encodeBatch(byte[], int[], ByteSink)
+        */
+      public final int[] encodeBatch ( final byte[][] data, final int[] offsets, final int[] lengths, final ByteSink out ) {
+         return encodeBatch( null, data, offsets, lengths, batchSize( data, offsets, lengths ), out );
+      }
+
+      /** Encode a batch of packed messages if packed is not null, otherwise of slices. */
+      private int[] encodeBatch ( final byte[] packed, final byte[][] arrays, final int[] offsets, final int[] lengths, final int count, final ByteSink out ) {
+         long in = 0, max = 0;
+         for ( int i = 0 ; i < count ; i++ ) {
+            final int length = lengths == null ? offsets[ i + 1 ] - offsets[ i ] : lengths[ i ];
+            in += length;
+            max += maxEncodedLength( packed != null ? packed : arrays[ i ], offsets[ i ], length );
+         }
+         final Monitor monitor = MONITOR;
+         final Object event = monitor == null ? null : monitor.begin( in );
+         final byte[] buf = out.reserve( arrayLength( out.length + max ) - out.length );
+         final int[] result = new int[ count + 1 ];
+         int wi = result[ 0 ] = out.length;
+         for ( int i = 0 ; i < count ; i++ ) {
+            final int length = lengths == null ? offsets[ i + 1 ] - offsets[ i ] : lengths[ i ];
+            wi = result[ i + 1 ] = wi + _encode( packed != null ? packed : arrays[ i ], offsets[ i ], length, buf, wi );
+         }
+         out.length = wi;
+         if ( monitor != null ) monitor.encoded( this, event, in, wi - result[ 0 ] );
+         return result;
+      }
+
+      /** Encode as many complete blocks as possible from a byte buffer into another byte buffer.
+        * Same as {@link #encode(ByteBuffer, ByteBuffer, boolean)} with endOfInput set to false.
+        * @param src buffer to read data from
+        * @param dst buffer to write encoded data to
+        * @return {@link CoderResult#UNDERFLOW} or {@link CoderResult#OVERFLOW}
+        */
+      public final CoderResult encode ( final ByteBuffer src, final ByteBuffer dst ) {
+         return encode( src, dst, false );
+      }
+
+      /** Encode data from a byte buffer into another byte buffer, in the style of {@link java.nio.charset.CharsetEncoder}.
+        * Data is read from src's position and written to dst's position, and both positions are advanced.
+        * Heap and direct buffers are both supported; direct buffers are accessed directly without copying.
+        * <p>
+        * An incomplete block of less than four bytes is left in src, unless endOfInput is true, in which case it is encoded.
+        * This allows the caller to compact src, fill in more data, and call again.
+        * dst should have space for at least five bytes so that progress can always be made.
+        *
+        * @param src buffer to read data from
+        * @param dst buffer to write encoded data to
+        * @param endOfInput true if there will be no more input after this call
+        * @return {@link CoderResult#UNDERFLOW} if src does not have enough data to form a block,
+        *         or {@link CoderResult#OVERFLOW} if dst does not have enough space to hold the next block.
+        * @throws UnsupportedOperationException if this is an Ascii85 encoder with line breaks or delimiters; use {@link #wrap(OutputStream)} instead
+        */
+      public final CoderResult encode ( final ByteBuffer src, final ByteBuffer dst, final boolean endOfInput ) {
+         if ( unframed() != this ) throw new UnsupportedOperationException( "Line breaks and delimiters need the whole text; use wrap or the array methods" );
+         for ( int blocks ; ( blocks = Math.min( src.remaining() / 4, dst.remaining() / 5 ) ) > 0 ; )
+            _encode( src, dst, blocks * 4 );
+         int leftover = src.remaining();
+         if ( leftover >= 4 ) return CoderResult.OVERFLOW;
+         if ( leftover == 0 || ! endOfInput ) return CoderResult.UNDERFLOW;
+         if ( dst.remaining() <= leftover ) return CoderResult.OVERFLOW;
+         _encode( src, dst, leftover );
+         return CoderResult.UNDERFLOW;
+      }
+
+      private void _encode ( final ByteBuffer src, final ByteBuffer dst, final int rlen ) {
+         final int ri = src.position(), wi = dst.position(), len;
+         if ( src.hasArray() && dst.hasArray() )
+            len = _encode( src.array(), src.arrayOffset() + ri, rlen, dst.array(), dst.arrayOffset() + wi );
+         else
+            len = _encode( src, ri, rlen, dst, wi );
+         src.position( ri + rlen );
+         dst.position( wi + len );
       }
 
       /** Encode the data as one block in reverse output order.
@@ -120,6 +472,7 @@ public class Base85 {
         * when the data is exactly 16 bytes (128 bits) long.
         * Because the whole input data is encoded as one big block,
         * this is much less efficient than the more common encodings.
+        * 16 bytes are encoded with fixed 128 bits arithmetic; longer data are split by powers of 85.
         * @see https://tools.ietf.org/html/rfc1924
         * @param data Byte data to encode
         * @return Encoded data in ascii encoding
@@ -146,54 +499,264 @@ public class Base85 {
         */
       public int encodeBlockReverse ( byte[] data, int offset, int length, byte[] out, int out_offset ) {
          int size = (int) Math.ceil( length * 1.25 );
-         if ( offset != 0 || length != data.length )
-            data = Arrays.copyOfRange( data, offset, offset + length );
-         BigInteger sum = new BigInteger( 1, data ), b85 = BigInteger.valueOf( 85 );
-         byte[] map = getEncodeMap();
-         for ( int i = size + out_offset - 1 ; i >= out_offset ; i-- ) {
-            BigInteger[] mod = sum.divideAndRemainder( b85 );
-            out[ i ] = map[ mod[1].intValue() ];
-            sum = mod[0];
-         }
+         final byte[] map = getEncodeMap();
+         if ( length == 16 ) {
+            final long hi = (long) getInt( data, offset     ) << 32 | getInt( data, offset +  4 ) & 0xFFFFFFFFL;
+            final long lo = (long) getInt( data, offset + 8 ) << 32 | getInt( data, offset + 12 ) & 0xFFFFFFFFL;
+            encode128( map, hi, lo, out, out_offset );
+         } else if ( length <= 7 ) {
+            if ( offset < 0 || offset + length > data.length ) throw new ArrayIndexOutOfBoundsException( offset + length );
+            long sum = 0;
+            for ( int i = offset, len = offset + length ; i < len ; i++ )
+               sum = sum << 8 | data[ i ] & 0xFF;
+            writeDigits( map, sum, out, out_offset, size );
+         } else
+            toDigits( map, new BigInteger( 1, Arrays.copyOfRange( data, offset, offset + length ) ), out, out_offset, size );
          return size;
       }
 
-      protected int _encodeDangling ( final byte[] encodeMap, final byte[] out, final int wi, final ByteBuffer buffer, int leftover ) {
-         long sum = buffer.getInt( 0 ) & 0x00000000ffffffffL;
-         out[wi  ] = encodeMap[ (int) ( sum / Power4 ) ]; sum %= Power4;
-         out[wi+1] = encodeMap[ (int) ( sum / Power3 ) ]; sum %= Power3;
+      /** Wrap an output stream for encoding binary data.
+        * Bytes written to the returned stream are encoded and written to the given stream as ASCII characters.
+        * Data is buffered internally; memory use does not grow with the size of the data.
+        * Close the returned stream to encode the last incomplete block.  This also closes the given stream.
+        * The returned stream is not thread-safe.
+        * @param os stream to write encoded data to
+        * @return stream to write binary data to
+        */
+      public OutputStream wrap ( final OutputStream os ) {
+         if ( os == null ) throw new NullPointerException();
+         return new EncoderOutputStream( this, os );
+      }
+
+      /** Wrap a writer for encoding binary data.
+        * Bytes written to the returned stream are encoded and written to the given writer.
+        * Data is buffered internally; memory use does not grow with the size of the data.
+        * Close the returned stream to encode the last incomplete block.  This also closes the given writer.
+        * The returned stream is not thread-safe.
+        * @param writer writer to write encoded characters to
+        * @return stream to write binary data to
+        */
+      public OutputStream wrap ( final Writer writer ) {
+         if ( writer == null ) throw new NullPointerException();
+         return new EncoderOutputStream( this, new AsciiWriterStream( writer ) );
+      }
+
+      /** Wrap an output stream for encoding binary data on many threads, with the default chunk size of 1 MB
+        * and up to two chunks per processor in flight.
+        * @param os stream to write encoded data to
+        * @param executor executor to encode chunks, such as a fixed thread pool or a virtual thread per task executor
+        * @return stream to write binary data to
+        * @see #wrapParallel(OutputStream, Executor, int, int)
+        */
+      public OutputStream wrapParallel ( final OutputStream os, final Executor executor ) {
+         return wrapParallel( os, executor, STREAM_CHUNK, 2 * Runtime.getRuntime().availableProcessors() );
+      }
+
+      /** Wrap an output stream for encoding binary data on many threads.
+        * Bytes written to the returned stream are split into chunks of whole blocks, which are encoded concurrently on the executor
+        * and written to the given stream in their original order.  The output is the same as {@link #wrap(OutputStream)},
+        * including Ascii85 compression, line breaks, and delimiters.
+        * <p>
+        * Up to maxPending chunks are encoding or waiting to be written.  A write that fills another chunk waits for the oldest one,
+        * so memory use is bounded by about 2.25 times chunkSize for each chunk, however slow the given stream is.
+        * Flush encodes and writes all complete blocks, and waits for them.
+        * Close the returned stream to encode the last incomplete block.  This also closes the given stream.
+        * The returned stream is not thread-safe.
+        * @param os stream to write encoded data to
+        * @param executor executor to encode chunks, such as a fixed thread pool or a virtual thread per task executor
+        * @param chunkSize bytes of binary data per chunk, rounded down to whole blocks
+        * @param maxPending maximum number of chunks encoding or waiting to be written
+        * @return stream to write binary data to
+        * @throws IllegalArgumentException if chunkSize is less than 4, or maxPending is less than 1
+        */
+      public OutputStream wrapParallel ( final OutputStream os, final Executor executor, final int chunkSize, final int maxPending ) {
+         if ( os == null || executor == null ) throw new NullPointerException();
+         if ( chunkSize < 4 || maxPending < 1 ) throw new IllegalArgumentException( "Chunk size must be at least 4, and pending chunks at least 1" );
+         return new ParallelEncoderOutputStream( this, os, new ChunkPipeline( executor, chunkSize & ~3, maxPending ) );
+      }
+
+      /** Start a session that encodes data pushed in fragments of any size, such as from a selector loop.
+        * Unlike {@link #encode(ByteBuffer, ByteBuffer, boolean)}, the session keeps an incomplete block until the next fragment,
+        * and supports Ascii85 line breaks and delimiters.
+        * @return new session, which is not thread-safe
+        */
+      public EncoderSession newSession () {
+         return new EncoderSession( this );
+      }
+
+      /** Encode the last one to three bytes into two to four characters.
+        * @param encodeMap encode map
+        * @param out array to write encoded data to
+        * @param wi offset to write encoded data to
+        * @param sum leftover bytes as a big-endian value, padded with zeros to four bytes
+        * @param leftover number of leftover bytes, 1 to 3
+        * @return number of characters written
+        */
+      protected int _encodeDangling ( final byte[] encodeMap, final byte[] out, final int wi, long sum, int leftover ) {
+         if ( legacyDangling )
+            return _encodeDangling( encodeMap, out, wi, ByteBuffer.allocate( 4 ).putInt( 0, (int) sum ), leftover );
+         return encodeLast( encodeMap, out, wi, sum, leftover );
+      }
+
+      private int encodeLast ( final byte[] encodeMap, final byte[] out, final int wi, long sum, int leftover ) {
+         final short[] pairs = getEncodePairs();
+         final long q = ( sum * Reciprocal2 ) >>> 44, hi = ( q * Reciprocal2Hi ) >>> 30;
+         final int mid = pairs[ (int) ( q - hi * Power2 ) ];
+         out[wi  ] = encodeMap[ (int) hi ];
+         out[wi+1] = (byte) ( mid >> 8 );
          if ( leftover >= 2 ) {
-            out[wi+2] = encodeMap[ (int) ( sum / Power2 ) ]; sum %= Power2;
+            out[wi+2] = (byte) mid;
             if ( leftover >= 3 )
-               out[wi+3] = encodeMap[ (int) ( sum / 85 ) ];
+               out[wi+3] = (byte) ( pairs[ (int) ( sum - q * Power2 ) ] >> 8 );
          }
          return leftover + 1;
       }
 
+      /** Encode the last one to three bytes, held as a big-endian integer at index 0 of the buffer.
+        * Called in place of {@link #_encodeDangling(byte[], byte[], int, long, int)} only when a subclass overrides it.
+        * @deprecated Override {@link #_encodeDangling(byte[], byte[], int, long, int)} instead.
+        */
+      @Deprecated protected int _encodeDangling ( final byte[] encodeMap, final byte[] out, final int wi, final ByteBuffer buffer, int leftover ) {
+         return encodeLast( encodeMap, out, wi, buffer.getInt( 0 ) & 0x00000000ffffffffL, leftover );
+      }
+
+      /** Encode data into a new array that fits the result exactly.
+        * @param in array to read data from
+        * @param ri offset to start reading
+        * @param rlen number of bytes to read
+        * @return encoded data
+        */
+      protected byte[] _encode ( byte[] in, int ri, int rlen ) {
+         byte[] out = new byte[ calcEncodedLength( in, ri, rlen ) ];
+         int len = _encode( in, ri, rlen, out, 0 );
+         if ( out.length == len ) return out;
+         return Arrays.copyOf( out, len );
+      }
+
       protected int _encode ( byte[] in, int ri, int rlen, byte[] out, int wi ) {
          final int wo = wi;
-         final ByteBuffer buffer = ByteBuffer.allocate( 4 );
-         final byte[] buf = buffer.array(), encodeMap = getEncodeMap();
+         final byte[] encodeMap = getEncodeMap();
+         final Engine engine = this.engine;
+         if ( engine != null ) {
+            final int done = engine.encode( encodeMap, in, ri, rlen / 4, out, wi, false, false );
+            ri += done * 4;
+            rlen -= done * 4;
+            wi += done * 5;
+         }
+         for ( int loop = rlen / 4 ; loop > 0 ; loop--, ri += 4 )
+            wi = _writeData( getInt( in, ri ) & 0x00000000ffffffffL, encodeMap, out, wi );
+         int leftover = rlen % 4;
+         if ( leftover == 0 ) return wi - wo;
+         return wi - wo + _encodeDangling( encodeMap, out, wi, getDangling( in, ri, leftover ) & 0x00000000ffffffffL, leftover );
+      }
+
+      /** Encode the last one to three bytes into a buffer at an absolute index.
+        * Only built-in encoders call this; subclasses are encoded through {@link #_encodeDangling(byte[], byte[], int, long, int)}.
+        * @return number of characters written
+        */
+      protected int _encodeDangling ( final byte[] encodeMap, final ByteBuffer out, final int wi, long sum, int leftover ) {
+         final short[] pairs = getEncodePairs();
+         final long q = ( sum * Reciprocal2 ) >>> 44, hi = ( q * Reciprocal2Hi ) >>> 30;
+         final int mid = pairs[ (int) ( q - hi * Power2 ) ];
+         out.put( wi  , encodeMap[ (int) hi ] );
+         out.put( wi+1, (byte) ( mid >> 8 ) );
+         if ( leftover >= 2 ) {
+            out.put( wi+2, (byte) mid );
+            if ( leftover >= 3 )
+               out.put( wi+3, (byte) ( pairs[ (int) ( sum - q * Power2 ) ] >> 8 ) );
+         }
+         return leftover + 1;
+      }
+
+      /** Encode data between absolute buffer indices.  Buffer positions are not changed.
+        * Used when either buffer is not backed by an accessible array.
+        */
+      protected int _encode ( ByteBuffer in, int ri, int rlen, ByteBuffer out, int wi ) {
+         final int wo = wi;
+         final byte[] encodeMap = getEncodeMap();
+         // A subclass may override only the array hooks; its blocks are encoded into one scratch array and copied.
+         final byte[] block = builtIn ? null : new byte[ 5 ];
          for ( int loop = rlen / 4 ; loop > 0 ; loop--, ri += 4 ) {
-            System.arraycopy( in, ri, buf, 0, 4 );
-            wi = _writeData( buffer.getInt( 0 ) & 0x00000000ffffffffL, encodeMap, out, wi );
+            final long sum = getInt( in, ri ) & 0x00000000ffffffffL;
+            if ( block == null )
+               wi = _writeData( sum, encodeMap, out, wi );
+            else
+               for ( int i = 0, len = _writeData( sum, encodeMap, block, 0 ) ; i < len ; i++ ) out.put( wi++, block[ i ] );
          }
          int leftover = rlen % 4;
          if ( leftover == 0 ) return wi - wo;
-         buffer.putInt( 0, 0 );
-         System.arraycopy( in, ri, buf, 0, leftover );
-         return wi - wo + _encodeDangling( encodeMap, out, wi, buffer, leftover );
+         final long sum = getDangling( in, ri, leftover ) & 0x00000000ffffffffL;
+         if ( block == null ) return wi - wo + _encodeDangling( encodeMap, out, wi, sum, leftover );
+         final int len = _encodeDangling( encodeMap, block, 0, sum, leftover );
+         for ( int i = 0 ; i < len ; i++ ) out.put( wi + i, block[ i ] );
+         return wi - wo + len;
+      }
+
+      /** Encode one 32 bits block into a buffer at an absolute index.
+        * Only built-in encoders call this; subclasses are encoded through {@link #_writeData(long, byte[], byte[], int)}.
+        * @param sum block value, 0 to 2^32-1
+        * @param map encode map
+        * @param out buffer to write encoded data to
+        * @param wi index to write encoded data to
+        * @return index after written data
+        */
+      protected int _writeData ( long sum, byte[] map, ByteBuffer out, int wi ) {
+         final short[] pairs = getEncodePairs();
+         final long q = ( sum * Reciprocal2 ) >>> 44, hi = ( q * Reciprocal2Hi ) >>> 30;
+         final int mid = pairs[ (int) ( q - hi * Power2 ) ], low = pairs[ (int) ( sum - q * Power2 ) ];
+         out.put( wi  , map[ (int) hi ] );
+         out.putShort( wi+1, out.order() == ByteOrder.BIG_ENDIAN ? (short) mid : Short.reverseBytes( (short) mid ) );
+         out.putShort( wi+3, out.order() == ByteOrder.BIG_ENDIAN ? (short) low : Short.reverseBytes( (short) low ) );
+         return wi+5;
       }
 
+      /** Encode one 32 bits block into five characters.
+        * Divisions are replaced by reciprocal multiplications,
+        * and the last four characters are written in pairs from {@link #getEncodePairs()}.
+        * @param sum block value, 0 to 2^32-1
+        * @param map encode map
+        * @param out array to write encoded data to
+        * @param wi offset to write encoded data to
+        * @return offset after written data
+        */
       protected int _writeData ( long sum, byte[] map, byte[] out, int wi ) {
-         out[wi  ] = map[ (int) ( sum / Power4 ) ]; sum %= Power4;
-         out[wi+1] = map[ (int) ( sum / Power3 ) ]; sum %= Power3;
-         out[wi+2] = map[ (int) ( sum / Power2 ) ]; sum %= Power2;
-         out[wi+3] = map[ (int) ( sum / 85 ) ];
-         out[wi+4] = map[ (int) ( sum % 85 ) ];
+         final short[] pairs = getEncodePairs();
+         final long q = ( sum * Reciprocal2 ) >>> 44, hi = ( q * Reciprocal2Hi ) >>> 30; // sum / 85^2, sum / 85^4
+         final int mid = pairs[ (int) ( q - hi * Power2 ) ], low = pairs[ (int) ( sum - q * Power2 ) ];
+         out[wi  ] = map[ (int) hi ];
+         out[wi+1] = (byte) ( mid >> 8 );
+         out[wi+2] = (byte) mid;
+         out[wi+3] = (byte) ( low >> 8 );
+         out[wi+4] = (byte) low;
          return wi+5;
       }
 
+      private PairTable encodePairs;
+
+      /** Get the pair table of the encode map, built on first use.
+        * Entry n holds the two characters that encode n (0 to 85^2-1), first character in high byte.
+        * @return encode pair table
+        */
+      protected final short[] getEncodePairs () {
+         PairTable table = encodePairs;
+         if ( table == null ) encodePairs = table = new PairTable( buildEncodePairs( getEncodeMap() ), null ); // Same for all threads; no need to lock.
+         return table.pairs;
+      }
+
+      /** Copy this encoder to run on the given engine instead of the selected one.  Used by tests and benchmarks.
+        * @param engine engine from {@link Base85#loadEngine(String)}, or null for scalar code
+        * @return new encoder; a subclass copy stays on scalar code
+        */
+      Encoder withEngine ( final Engine engine ) {
+         try {
+            final Encoder copy = (Encoder) clone();
+            copy.engine = builtIn ? engine : null;
+            return copy;
+         } catch ( CloneNotSupportedException ex ) {
+            throw new AssertionError( ex ); // Encoder and Decoder are Cloneable
+         }
+      }
+
       protected abstract byte[] getEncodeMap();
       public String getCharset() { return new String( getEncodeMap(), US_ASCII ); }
    }
@@ -219,13 +782,43 @@ public class Base85 {
    public static class Z85Encoder extends Encoder {
       private static final byte[] ENCODE_MAP = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ.-:+=^!/*?&<>()[]{}@%$#".getBytes( US_ASCII );
       @Override protected byte[] getEncodeMap() { return ENCODE_MAP; }
+
+      /** Encode a 32 bytes key, such as a CurveZMQ public or secret key, into its 40 characters text form.
+        * @param key key to encode
+        * @return encoded key
+        * @throws IllegalArgumentException if key is not 32 bytes long
+        */
+      public final String encodeKey ( final byte[] key ) {
+         if ( key.length != 32 ) throw new IllegalArgumentException( "Z85 key must be 32 bytes, not " + key.length );
+         final byte[] out = new byte[ 40 ];
+         encodeKey( key, 0, out, 0 );
+         return asciiString( out, 0, 40 );
+      }
+
+      /** Encode a 32 bytes key into 40 bytes of an array, block by block with no length or tail handling.
+        * @param key array with key to encode
+        * @param offset byte offset that the key starts
+        * @param out array to write the encoded key to
+        * @param out_offset byte offset to start writing the encoded key to
+        * @throws IllegalArgumentException if either array is not big enough
+        */
+      public final void encodeKey ( final byte[] key, final int offset, final byte[] out, final int out_offset ) {
+         if ( offset < 0 || offset > key.length - 32 || out_offset < 0 || out_offset > out.length - 40 )
+            throw new IllegalArgumentException( "Z85 key needs 32 bytes to read and 40 bytes to write" );
+         final byte[] map = getEncodeMap();
+         for ( int ri = offset, wi = out_offset ; ri < offset + 32 ; ri += 4 )
+            wi = _writeData( getInt( key, ri ) & 0xFFFFFFFFL, map, out, wi );
+      }
    }
 
    /** This class encodes data in the Ascii85 encoding (Adobe variant without &lt;~ and ~&gt;).
      * Supports "z" and "y" compression, which can be disabled individually.
-     * Line break is not supported.
+     * Line breaks and the &lt;~ ~&gt; delimiters can be enabled with {@link #withLineLength(int)} and {@link #withDelimiters(boolean)},
+     * to produce text that {@link Base85#getAdobeAscii85Decoder()} reads back.
      *
-     * Encoder instances can be safely shared by multiple threads.
+     * Use {@link #withZeroCompression(boolean)} and {@link #withSpaceCompression(boolean)} to get an immutable encoder
+     * for each combination.  These are shared and cannot be changed by other threads.
+     * Encoder instances can be safely shared by multiple threads, and take no lock when encoding.
      * @see https://en.wikipedia.org/wiki/Ascii85
      */
    public static class Ascii85Encoder extends Encoder {
@@ -233,46 +826,187 @@ public class Base85 {
       @Override protected byte[] getEncodeMap() { return ENCODE_MAP; }
 
       @Override public int calcEncodedLength ( byte[] data, int offset, int length ) {
+         final boolean useZ = this.useZ, useY = this.useY;
          int result = super.calcEncodedLength( data, offset, length );
          if ( useZ || useY ) {
-            final ByteBuffer buffer = ByteBuffer.wrap( data );
             for ( int i = offset, len = offset + length - 4 ; i <= len ; i += 4 )
                if ( useZ && data[i] == 0 ) {
-                  if ( buffer.getInt( i ) == 0 ) result -= 4;
+                  if ( getInt( data, i ) == 0 ) result -= 4;
                } else if ( useY && data[i] == 0x20 )
-                  if ( buffer.getInt( i ) == 0x20202020 ) result -= 4;
+                  if ( getInt( data, i ) == 0x20202020 ) result -= 4;
          }
-         return result;
+         if ( unframed() == this ) return result;
+         return arrayLength( framedLength( result, lineLength(), delimiters ) );
+      }
+
+      @Override int maxEncodedLength ( final byte[] data, final int offset, final int length ) {
+         final int max = super.calcEncodedLength( data, offset, length );
+         return unframed() == this ? max : arrayLength( framedLength( max, lineLength(), delimiters ) );
+      }
+
+      /** Encode into an array sized for no compression, then trim, so that the data is scanned only once.
+        * With line breaks or delimiters, the text is encoded to the end of the array and then moved forward line by line. */
+      @Override protected byte[] _encode ( byte[] in, int ri, int rlen ) {
+         final int max = super.calcEncodedLength( in, ri, rlen );
+         final byte[] out;
+         final int len;
+         if ( unframed() == this ) {
+            out = new byte[ max ];
+            len = encodeBlocks( in, ri, rlen, out, 0 );
+         } else {
+            out = new byte[ arrayLength( framedLength( max, lineLength(), delimiters ) ) ];
+            final int from = out.length - max - ( delimiters ? 2 : 0 );
+            len = frame( out, 0, from, encodeBlocks( in, ri, rlen, out, from ), lineLength(), delimiters );
+         }
+         if ( out.length == len ) return out;
+         return Arrays.copyOf( out, len );
+      }
+
+      private static final Ascii85Encoder[] SHARED = {
+         new Ascii85Encoder( false, false, 0, false ), new Ascii85Encoder( false, true, 0, false ),
+         new Ascii85Encoder( true, false, 0, false ), new Ascii85Encoder( true, true, 0, false ) };
+
+      private volatile boolean useZ = true;
+      private volatile boolean useY = true;
+      private final boolean immutable;
+      private final int lineLength;
+      private final boolean delimiters;
+
+      /** Create a mutable encoder with "z" and "y" compression enabled.
+        * @deprecated Use {@link Base85#getAscii85Encoder(boolean, boolean)} and the immutable {@code with} methods.
+        */
+      @Deprecated public Ascii85Encoder () {
+         immutable = false;
+         lineLength = 0;
+         delimiters = false;
+      }
+
+      private Ascii85Encoder ( boolean useZ, boolean useY, int lineLength, boolean delimiters ) {
+         this.useZ = useZ;
+         this.useY = useY;
+         this.lineLength = lineLength;
+         this.delimiters = delimiters;
+         immutable = true;
+      }
+
+      /** Get an immutable encoder.  Encoders without line breaks and delimiters are shared. */
+      private static Ascii85Encoder of ( boolean useZ, boolean useY, int lineLength, boolean delimiters ) {
+         if ( lineLength == 0 && ! delimiters ) return SHARED[ ( useZ ? 2 : 0 ) | ( useY ? 1 : 0 ) ];
+         return new Ascii85Encoder( useZ, useY, lineLength, delimiters );
+      }
+
+      /** Get an immutable encoder with the given zero compression and the same other settings as this encoder.
+       *  @param compress true to encode four zeros into "z", false to disable
+       *  @return immutable encoder
+       */
+      public Ascii85Encoder withZeroCompression ( boolean compress ) { return of( compress, useY, lineLength, delimiters ); }
+      /** Get an immutable encoder with the given space compression and the same other settings as this encoder.
+       *  @param compress true to encode four spaces into "y", false to disable
+       *  @return immutable encoder
+       */
+      public Ascii85Encoder withSpaceCompression ( boolean compress ) { return of( useZ, compress, lineLength, delimiters ); }
+      /** Get an immutable encoder that breaks lines with "\n" after the given number of characters, and the same other settings as this encoder.
+       *  The opening "&lt;~" counts towards the first line, and the closing "~&gt;" is moved to a new line instead of being split,
+       *  which is the layout of Python's base64.a85encode.  The last line does not end with a line break.
+       *  Blocks are not kept whole on a line; decoders of PostScript and PDF skip whitespace anywhere.
+       *  <p>
+       *  Line breaks need the whole text, so {@link #encode(ByteBuffer, ByteBuffer, boolean)} is not supported;
+       *  use the array methods or {@link #wrap(OutputStream)}.
+       *  @param length characters per line, such as 76, or 0 for no line break
+       *  @return immutable encoder
+       */
+      public Ascii85Encoder withLineLength ( int length ) {
+         if ( length < 0 ) throw new IllegalArgumentException( "Line length must not be negative" );
+         return of( useZ, useY, length, delimiters );
+      }
+      /** Get an immutable encoder that wraps the text in "&lt;~" and "~&gt;", and the same other settings as this encoder.
+       *  Like line breaks, delimiters need the whole text; see {@link #withLineLength(int)}.
+       *  @param delimit true to add delimiters, false to disable
+       *  @return immutable encoder
+       */
+      public Ascii85Encoder withDelimiters ( boolean delimit ) { return of( useZ, useY, lineLength, delimit ); }
+      /** Get the number of characters per line.
+       * @return line length, or 0 if lines are not broken
+       */
+      public int getLineLength() { return lineLength; }
+      /** Get delimiters status.
+       * @return true if text is wrapped in "&lt;~" and "~&gt;"
+       */
+      public boolean getDelimiters() { return delimiters; }
+
+      @Override int lineLength () { return delimiters && lineLength == 1 ? 2 : lineLength; } // "<~" and "~>" are never split
+      @Override boolean delimited () { return delimiters; }
+      @Override Encoder unframed () {
+         if ( lineLength == 0 && ! delimiters ) return this;
+         final Encoder shared = SHARED[ ( useZ ? 2 : 0 ) | ( useY ? 1 : 0 ) ];
+         return shared.engine == engine ? shared : shared.withEngine( engine ); // Copies only for engines bound by tests
       }
 
-      private boolean useZ = true;
-      private boolean useY = true;
-      private final ReadWriteLock lock = new ReentrantReadWriteLock( true );
+      private void checkMutable () {
+         if ( immutable ) throw new UnsupportedOperationException( "Shared Ascii85 encoder cannot be changed; use withZeroCompression or withSpaceCompression" );
+      }
 
       /** Set whether to enable encoding of four zeros into "z".
        *  @param compress true to enable, false to disable
+       *  @throws UnsupportedOperationException if this encoder is immutable
+       *  @deprecated Use {@link #withZeroCompression(boolean)}.
        */
-      public void setZeroCompression( boolean compress ) { lock.writeLock().lock(); try { useZ = compress; } finally { lock.writeLock().unlock(); } }
+      @Deprecated public void setZeroCompression( boolean compress ) { checkMutable(); useZ = compress; }
       /** Get zero compression status.
        * @return true if enabled, false if disabled
        */
-      public boolean getZeroCompression() { lock.readLock().lock(); try { return useZ; } finally { lock.readLock().unlock(); } }
-      /** Set whether to enable encoding of four spaces into "y".*
+      public boolean getZeroCompression() { return useZ; }
+      /** Set whether to enable encoding of four spaces into "y".
        *  @param compress true to enable, false to disable
+       *  @throws UnsupportedOperationException if this encoder is immutable
+       *  @deprecated Use {@link #withSpaceCompression(boolean)}.
        */
-      public void setSpaceCompression( boolean compress ) { lock.writeLock().lock(); try { useY = compress; } finally { lock.writeLock().unlock(); } }
+      @Deprecated public void setSpaceCompression( boolean compress ) { checkMutable(); useY = compress; }
       /** Get space compression status.
        * @return true if enabled, false if disabled
        */
-      public boolean getSpaceCompression() { lock.readLock().lock(); try { return useY; } finally { lock.readLock().unlock(); } }
+      public boolean getSpaceCompression() { return useY; }
 
+      /** With line breaks or delimiters, the text length is counted first, so that the text can be encoded to where it ends
+        * and then moved forward line by line. */
       @Override protected int _encode( byte[] in, int ri, int rlen, byte[] out, int wi ) {
-         lock.readLock().lock();
-         try {
-            return super._encode( in, ri, rlen, out, wi );
-         } finally {
-            lock.readLock().unlock();
+         final Encoder unframed = unframed();
+         if ( unframed == this ) return encodeBlocks( in, ri, rlen, out, wi );
+         final int text = unframed.calcEncodedLength( in, ri, rlen );
+         final int from = wi + arrayLength( framedLength( text, lineLength(), delimiters ) ) - text - ( delimiters ? 2 : 0 );
+         return frame( out, wi, from, encodeBlocks( in, ri, rlen, out, from ), lineLength(), delimiters );
+      }
+
+      /** Read the settings once per call, and skip the compression checks entirely when both are disabled.
+        * A subclass gets every block through its _writeData, as the base encoder does. */
+      private int encodeBlocks( byte[] in, int ri, int rlen, byte[] out, int wi ) {
+         final boolean useZ = this.useZ, useY = this.useY;
+         if ( ! builtIn || ! useZ && ! useY ) return super._encode( in, ri, rlen, out, wi );
+         final int wo = wi;
+         final byte[] encodeMap = getEncodeMap();
+         final Engine engine = this.engine;
+         for ( int loop = rlen / 4 ; loop > 0 ; loop--, ri += 4 ) {
+            if ( engine != null ) { // The engine stops before a block to compress
+               final int done = engine.encode( encodeMap, in, ri, loop, out, wi, useZ, useY );
+               ri += done * 4;
+               wi += done * 5;
+               loop -= done;
+               if ( loop == 0 ) break;
+            }
+            final int sum = getInt( in, ri );
+            if ( useZ && sum == 0 || useY && sum == 0x20202020 ) { // Compress the whole run, many bytes at a time
+               final int run = run( engine, in, ri + 4, loop * 4 - 4, (byte) sum ) / 4 + 1;
+               Arrays.fill( out, wi, wi + run, sum == 0 ? (byte) 'z' : (byte) 'y' );
+               if ( MONITOR != null ) MONITOR.compressed( run );
+               wi += run;
+               ri += run * 4 - 4;
+               loop -= run - 1;
+            } else
+               wi = super._writeData( sum & 0x00000000ffffffffL, encodeMap, out, wi );
          }
+         int leftover = rlen % 4;
+         if ( leftover == 0 ) return wi - wo;
+         return wi - wo + _encodeDangling( encodeMap, out, wi, getDangling( in, ri, leftover ) & 0x00000000ffffffffL, leftover );
       }
 
       @Override protected int _writeData( long sum, byte[] map, byte[] out, int wi ) {
@@ -287,6 +1021,19 @@ public class Base85 {
 
          return wi;
       }
+
+      @Override protected int _writeData( long sum, byte[] map, ByteBuffer out, int wi ) {
+         if ( useZ && sum == 0 )
+            out.put( wi++, (byte) 'z' );
+
+         else if ( useY && sum == 0x20202020 )
+            out.put( wi++, (byte) 'y' );
+
+         else
+            return super._writeData( sum, map, out, wi );
+
+         return wi;
+      }
    }
 
    /** This is a skeleton class for decoding data in the Base85 encoding scheme.
@@ -294,7 +1041,15 @@ public class Base85 {
      * Just override {@link #getEncodeMap()} and {@link #getName()} to create a fully functional decoder.
      * Decoder instances can be safely shared by multiple threads.
      */
-   public static abstract class Decoder {
+   public static abstract class Decoder implements Cloneable {
+      // Only built-in decoders use the engine; a subclass may override _putData and must see every block.
+      final boolean builtIn = getClass().getEnclosingClass() == Base85.class;
+      // Engine of this decoder; not final only so that withEngine can set it on a fresh copy.
+      Engine engine = builtIn ? ENGINE : null;
+      // A subclass written against the deprecated ByteBuffer hooks keeps getting them called.
+      private final boolean legacyPutData = ! builtIn && overrides( getClass(), Decoder.class, "_putData", ByteBuffer.class, byte[].class, byte[].class, int.class );
+      private final boolean legacyDangling = ! builtIn && overrides( getClass(), Decoder.class, "_decodeDangling", byte[].class, byte[].class, int.class, ByteBuffer.class, int.class );
+
       /** Calculate byte length of decoded data.
         * Assumes data is correct; use test method to validate data.
         *
@@ -333,7 +1088,8 @@ public class Base85 {
         * @return decoded UTF-8 string
         */
       public final String decode ( final String data ) {
-         return new String( decode( data.getBytes( US_ASCII ) ), UTF_8 );
+         final ByteBuffer result = _decode( data, 0, data.length(), null );
+         return utf8String( result.array(), result.position() );
       }
 
       /** Decode ASCII Base85 data into a new byte array.
@@ -349,7 +1105,107 @@ public class Base85 {
         * @return decoded binary data
         */
       public final byte[] decodeToBytes ( final String data ) {
-         return decode( data.getBytes( US_ASCII ) );
+         return decodeToBytes( (CharSequence) data );
+      }
+
+      /** Decode Base85 characters, such as a String or a StringBuilder, into a new byte array.
+        * @param data data to decode
+        * @return decoded binary data
+        */
+      public final byte[] decodeToBytes ( final CharSequence data ) {
+         final ByteBuffer result = _decode( data, 0, data.length(), null );
+         return toArray( result );
+      }
+
+      /** Decode part of a char array into a new byte array.
+        * @param data array with data to decode
+        * @param offset char offset to start reading data
+        * @param length number of char to read
+        * @return decoded binary data
+        * @throws IllegalArgumentException if offset or length is negative, or if data array is not big enough
+        */
+      public final byte[] decodeToBytes ( final char[] data, final int offset, final int length ) {
+         checkBounds( data.length, offset, length );
+         return toArray( _decode( CharBuffer.wrap( data ), offset, length, null ) );
+      }
+
+      /** Decode part of a character sequence and write the output into a byte array.
+        * @param data characters with data to decode
+        * @param offset char offset to start reading data
+        * @param length number of char to read
+        * @param out array to write decoded data to
+        * @param out_offset byte offset to start writing decoded data to
+        * @return number of decoded bytes
+        * @throws IllegalArgumentException if offset or length is negative, or if either array is not big enough
+        */
+      public final int decode ( final CharSequence data, final int offset, final int length, final byte[] out, final int out_offset ) {
+         checkBounds( data.length(), offset, length );
+         final ByteBuffer dst = ByteBuffer.wrap( out, out_offset, out.length - out_offset );
+         return _decode( data, offset, length, dst ).position() - out_offset;
+      }
+
+      private static void checkBounds ( final int size, final int offset, final int length ) {
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         if ( offset + length > size || offset + length < 0 ) throw new IllegalArgumentException( "Data is not big enough" );
+      }
+
+      private static byte[] toArray ( final ByteBuffer buf ) {
+         final byte[] result = buf.array();
+         if ( result.length == buf.position() ) return result;
+         return Arrays.copyOf( result, buf.position() );
+      }
+
+      /** Decode characters through a small ASCII buffer, without copying the whole input.
+        * Non-ASCII characters are mapped to an invalid byte.
+        * @param data characters to decode
+        * @param offset char offset to start reading data
+        * @param length number of char to read
+        * @param dst buffer to write to, or null to write to a new array that grows as needed
+        * @return buffer with decoded data before its position
+        */
+      private ByteBuffer _decode ( final CharSequence data, final int offset, final int length, final ByteBuffer dst ) {
+         final Monitor monitor = MONITOR;
+         if ( monitor == null ) return decodeChars( data, offset, length, dst );
+         final Object event = monitor.begin( length );
+         final int start = dst == null ? 0 : dst.position();
+         final ByteBuffer result;
+         try {
+            result = decodeChars( data, offset, length, dst );
+         } catch ( RuntimeException ex ) { throw failed( monitor, ex ); }
+         monitor.decoded( this, event, length, result.position() - start );
+         return result;
+      }
+
+      private ByteBuffer decodeChars ( final CharSequence data, int offset, final int length, ByteBuffer dst ) {
+         final boolean growable = dst == null;
+         if ( growable && length <= 10240 ) { // Small enough to convert in one go and use the array code.
+            final byte[] in = new byte[ length ];
+            toAscii( data, offset, in, 0, length );
+            final byte[] out = _decode( in, 0, length );
+            dst = ByteBuffer.wrap( out );
+            dst.position( out.length );
+            return dst;
+         }
+         if ( growable ) dst = ByteBuffer.wrap( new byte[ (int) ( length * 0.8 ) ] );
+         final ByteBuffer src = ByteBuffer.wrap( new byte[ Math.min( length, 10240 ) ] );
+         for ( final int end = offset + length ; ; ) {
+            final int wi = src.position(), len = Math.min( src.remaining(), end - offset );
+            toAscii( data, offset, src.array(), wi, len );
+            offset += len;
+            src.position( wi + len );
+            src.flip();
+            final boolean endOfInput = offset == end;
+            CoderResult result;
+            while ( ( result = decode( src, dst, endOfInput ) ).isOverflow() ) {
+               if ( ! growable ) throw new IllegalArgumentException( "Output array is not big enough" );
+               final ByteBuffer bigger = ByteBuffer.wrap( grow( dst.array(), dst.capacity() + 4 ) );
+               bigger.position( dst.position() );
+               dst = bigger;
+            }
+            if ( result.isError() ) throw throwMalformed( null );
+            if ( endOfInput ) return dst;
+            src.compact();
+         }
       }
 
       /** Decode ASCII Base85 data into a new byte array.
@@ -360,13 +1216,15 @@ public class Base85 {
         * @throws IllegalArgumentException if offset or length is negative, or if data array is not big enough (data won't be written)
         */
       public final byte[] decode ( final byte[] data, final int offset, final int length ) {
-         byte[] result = new byte[ calcDecodedLength( data, offset, length ) ];
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         final Monitor monitor = MONITOR;
          try {
-            int len = _decode( data, offset, length, result, 0 );
-            // Should not happen, but fitting the size makes sure tests will fail when it does happen.
-            if ( result.length != len ) return Arrays.copyOf( result, len );
-         } catch ( ArrayIndexOutOfBoundsException ex ) { throwMalformed( ex ); }
-         return result;
+            if ( monitor == null ) return _decode( data, offset, length );
+            final Object event = monitor.begin( length );
+            final byte[] result = _decode( data, offset, length );
+            monitor.decoded( this, event, length, result.length );
+            return result;
+         } catch ( RuntimeException ex ) { throw failed( monitor, ex ); }
       }
 
       /** Decode part of a byte array and write the output into a byte array in ASCII charset.
@@ -379,61 +1237,455 @@ public class Base85 {
         * @throws IllegalArgumentException if offset or length is negative, or if either array is not big enough (data won't be written)
         */
       public final int decode ( final byte[] data, final int offset, final int length, final byte[] out, final int out_offset ) {
-         int size = calcDecodedLength( data, offset, length );
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         final Monitor monitor = MONITOR;
          try {
-            _decode( data, offset, length, out, out_offset );
-         } catch ( ArrayIndexOutOfBoundsException ex ) { throwMalformed( ex ); }
-         return size;
+            if ( monitor == null ) return _decode( data, offset, length, out, out_offset );
+            final Object event = monitor.begin( length );
+            final int len = _decode( data, offset, length, out, out_offset );
+            monitor.decoded( this, event, length, len );
+            return len;
+         } catch ( RuntimeException ex ) { throw failed( monitor, ex ); }
       }
 
-      /** Decode the data as one block in reverse input order.
-        * This is the strict algorithm specified by RFC 1924 for IP address decoding,
-        * when the data is exactly 16 bytes (128 bits) long.
-        * @see https://tools.ietf.org/html/rfc1924
-        * @param data Byte data to encode
-        * @return Encoded data in ascii encoding
+      /** Decode part of a byte array and append the output to a sink, which grows as needed.
+        * Reusing a sink avoids allocating a result array for each call.
+        * @param data array with data to decode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @param out sink to append decoded data to; the data starts at its length before the call
+        * @return number of decoded bytes
+        * @throws IllegalArgumentException if offset or length is negative, or if data is malformed (sink length is unchanged)
         */
-      public byte[] decodeBlockReverse ( byte[] data ) {
-         int size = Math.max( 0, (int) Math.ceil( data.length * 0.8 ) );
-         byte[] result = new byte[ size ];
-         decodeBlockReverse ( data, 0, data.length, result, 0 );
-         return result;
+      public final int decode ( final byte[] data, final int offset, final int length, final ByteSink out ) {
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         final Monitor monitor = MONITOR;
+         try {
+            final Object event = monitor == null ? null : monitor.begin( length );
+            final byte[] buf = out.reserve( calcDecodedLength( data, offset, length ) );
+            final int len = _decode( data, offset, length, buf, out.length );
+            out.length += len;
+            if ( monitor != null ) monitor.decoded( this, event, length, len );
+            return len;
+         } catch ( RuntimeException ex ) { throw failed( monitor, ex ); }
+      }
+
+      /** Decode part of a byte array into a sink leased from a pool.
+        * Close the sink, or release it to the pool, when done with the result.
+        * @param data array with data to decode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @param pool pool to lease a sink from
+        * @return leased sink with the decoded data from offset 0 to its length
+        * @throws IllegalArgumentException if offset or length is negative, or if data is malformed (the sink is returned to the pool)
+        */
+      public final ByteSink decode ( final byte[] data, final int offset, final int length, final BufferPool pool ) {
+         final ByteSink out = pool.lease();
+         try {
+            decode( data, offset, length, out );
+            return out;
+         } catch ( RuntimeException ex ) {
+            out.close();
+            throw ex;
+         }
+      }
+
+      /** Decode a long from the encoding of eight big endian bytes, such as from {@link Encoder#encode(long)}.
+        * Ten characters are decoded directly; other forms, such as Ascii85 'z', are decoded through an array.
+        * @param data encoded data
+        * @return decoded value
+        * @throws IllegalArgumentException if data is malformed or does not decode to eight bytes
+        */
+      public final long decodeLong ( final CharSequence data ) {
+         if ( data.length() == 10 && builtIn ) {
+            final PairTable table = getDecodeTable();
+            final long hi = decodeBlock( table, data, 0 ), lo = decodeBlock( table, data, 5 );
+            if ( ( hi | lo ) >>> 32 == 0 ) return hi << 32 | lo;
+         }
+         final byte[] in = new byte[ data.length() ];
+         toAscii( data, 0, in, 0, in.length );
+         return decodeLong( in, 0, in.length );
+      }
+
+      /** Decode a long from part of a byte array, in the encoding of eight big endian bytes.
+        * @param data array with data to decode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @return decoded value
+        * @throws IllegalArgumentException if data is malformed or does not decode to eight bytes
+        */
+      public final long decodeLong ( final byte[] data, final int offset, final int length ) {
+         checkBounds( data.length, offset, length );
+         if ( length == 10 && builtIn ) {
+            final PairTable table = getDecodeTable();
+            final long hi = decodeBlock( table, data, offset ), lo = decodeBlock( table, data, offset + 5 );
+            if ( ( hi | lo ) >>> 32 == 0 ) return hi << 32 | lo;
+         }
+         return ByteBuffer.wrap( decodeFixed( data, offset, length, 8 ) ).getLong();
+      }
+
+      /** Decode a UUID from the encoding of sixteen big endian bytes, such as from {@link Encoder#encode(UUID)}.
+        * Twenty characters are decoded directly; other forms, such as Ascii85 'z', are decoded through an array.
+        * @param data encoded data
+        * @return decoded UUID
+        * @throws IllegalArgumentException if data is malformed or does not decode to sixteen bytes
+        */
+      public final UUID decodeUuid ( final CharSequence data ) {
+         if ( data.length() == 20 && builtIn ) {
+            final PairTable table = getDecodeTable();
+            final long b0 = decodeBlock( table, data, 0 ), b1 = decodeBlock( table, data, 5 ), b2 = decodeBlock( table, data, 10 ), b3 = decodeBlock( table, data, 15 );
+            if ( ( b0 | b1 | b2 | b3 ) >>> 32 == 0 ) return new UUID( b0 << 32 | b1, b2 << 32 | b3 );
+         }
+         final byte[] in = new byte[ data.length() ];
+         toAscii( data, 0, in, 0, in.length );
+         return decodeUuid( in, 0, in.length );
+      }
+
+      /** Decode a UUID from part of a byte array, in the encoding of sixteen big endian bytes.
+        * @param data array with data to decode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @return decoded UUID
+        * @throws IllegalArgumentException if data is malformed or does not decode to sixteen bytes
+        */
+      public final UUID decodeUuid ( final byte[] data, final int offset, final int length ) {
+         checkBounds( data.length, offset, length );
+         if ( length == 20 && builtIn ) {
+            final PairTable table = getDecodeTable();
+            final long b0 = decodeBlock( table, data, offset ), b1 = decodeBlock( table, data, offset + 5 );
+            final long b2 = decodeBlock( table, data, offset + 10 ), b3 = decodeBlock( table, data, offset + 15 );
+            if ( ( b0 | b1 | b2 | b3 ) >>> 32 == 0 ) return new UUID( b0 << 32 | b1, b2 << 32 | b3 );
+         }
+         final ByteBuffer buf = ByteBuffer.wrap( decodeFixed( data, offset, length, 16 ) );
+         return new UUID( buf.getLong(), buf.getLong() );
+      }
+
+      /** Decode data that must decode to the given number of bytes. */
+      private byte[] decodeFixed ( final byte[] data, final int offset, final int length, final int size ) {
+         final byte[] result = decode( data, offset, length );
+         if ( result.length != size ) throw new IllegalArgumentException( "Base85/" + getName() + " data decodes to " + result.length + " bytes, not " + size );
+         return result;
+      }
+
+      /** Decode many encoded messages packed one after another in an array, and append them to a sink one after another.
+        * The output is sized, reserved, and monitored once per batch instead of once per message.
+        * @param data array with the encoded messages
+        * @param offsets start of each message in data, followed by the end of the last message
+        * @param out sink to append the decoded messages to
+        * @return start of each decoded message in the array of the sink, followed by the end of the last one
+        * @throws IllegalArgumentException if offsets is empty, decreasing, or outside data, or if any message is malformed (sink length is unchanged)
+        */
+      public final int[] decodeBatch ( final byte[] data, final int[] offsets, final ByteSink out ) {
+         return decodeBatch( data, null, offsets, null, batchSize( data, offsets ), out );
+      }
+
+      /** Decode many encoded messages, each a part of an array, and append them to a sink one after another.
+        * @param data array of each message
+        * @param offsets byte offset of each message in its array
+        * @param lengths number of bytes of each message
+        * @param out sink to append the decoded messages to
+        * @return start of each decoded message in the array of the sink, followed by the end of the last one
+        * @throws IllegalArgumentException if the three arrays differ in length, a message is outside its array, or any message is malformed (sink length is unchanged)
+        * @see #decodeBatch(byte[], int[], ByteSink)
+        */
+      public final int[] decodeBatch ( final byte[][] data, final int[] offsets, final int[] lengths, final ByteSink out ) {
+         return decodeBatch( null, data, offsets, lengths, batchSize( data, offsets, lengths ), out );
+      }
+
+      /** Decode a batch of packed messages if packed is not null, otherwise of slices. */
+      private int[] decodeBatch ( final byte[] packed, final byte[][] arrays, final int[] offsets, final int[] lengths, final int count, final ByteSink out ) {
+         final Monitor monitor = MONITOR;
+         long in = 0;
+         for ( int i = 0 ; i < count ; i++ ) in += lengths == null ? offsets[ i + 1 ] - offsets[ i ] : lengths[ i ];
+         final Object event = monitor == null ? null : monitor.begin( in );
+         try {
+            long max = 0;
+            for ( int i = 0 ; i < count ; i++ ) {
+               final int length = lengths == null ? offsets[ i + 1 ] - offsets[ i ] : lengths[ i ];
+               max += calcDecodedLength( packed != null ? packed : arrays[ i ], offsets[ i ], length );
+            }
+            final byte[] buf = out.reserve( arrayLength( out.length + max ) - out.length );
+            final int[] result = new int[ count + 1 ];
+            int wi = result[ 0 ] = out.length;
+            for ( int i = 0 ; i < count ; i++ ) {
+               final int length = lengths == null ? offsets[ i + 1 ] - offsets[ i ] : lengths[ i ];
+               wi = result[ i + 1 ] = wi + _decode( packed != null ? packed : arrays[ i ], offsets[ i ], length, buf, wi );
+            }
+            out.length = wi;
+            if ( monitor != null ) monitor.decoded( this, event, in, wi - result[ 0 ] );
+            return result;
+         } catch ( RuntimeException ex ) { throw failed( monitor, ex ); }
+      }
+
+      /** Decode Base85 data into a new byte array, splitting the work across the common ForkJoinPool.
+        * @param data data to decode
+        * @return decoded binary data
+        */
+      public final byte[] decodeParallel ( final byte[] data ) {
+         return decodeParallel( data, 0, data.length, ForkJoinPool.commonPool() );
+      }
+
+      /** Decode Base85 data into a new byte array, splitting the work across a ForkJoinPool.
+        * Data is split on block boundaries.  For Ascii85, the alignment of each part is found in parallel first,
+        * so that "z" and "y" does not throw the blocks out of alignment.
+        * Small data is decoded sequentially.
+        * @param data array with data to decode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @param pool pool to run decoding tasks
+        * @return decoded binary data
+        * @throws IllegalArgumentException if data is malformed
+        */
+      public final byte[] decodeParallel ( final byte[] data, final int offset, final int length, final ForkJoinPool pool ) {
+         if ( length < PARALLEL_THRESHOLD ) return decode( data, offset, length );
+         if ( offset < 0 || length > data.length - offset ) throw new ArrayIndexOutOfBoundsException( offset < 0 ? offset : offset + length );
+         final Monitor monitor = MONITOR;
+         final Object event = monitor == null ? null : monitor.begin( length );
+         final byte[] out;
+         try {
+            final int[][] plan = planParallel( data, offset, length, pool );
+            final int[] starts = plan[0], outOffsets = plan[1];
+            final int count = starts.length - 1;
+            out = new byte[ outOffsets[ count ] ];
+            forkEach( pool, count, i -> _decode( data, starts[ i ], starts[ i + 1 ] - starts[ i ], out, outOffsets[ i ] ) );
+         } catch ( RuntimeException ex ) { throw failed( monitor, ex ); }
+         if ( monitor != null ) monitor.decoded( this, event, length, out.length );
+         return out;
+      }
+
+      /** Split encoded data into parts that start on block boundaries.
+        * @return { start index of each part, followed by end of data }, { output offset of each part, followed by total output length }
+        */
+      int[][] planParallel ( final byte[] data, final int offset, final int length, final ForkJoinPool pool ) {
+         final int chunk = PARALLEL_CHUNK / 4 * 5, count = ( length - 1 ) / chunk + 1;
+         final int[] starts = new int[ count + 1 ], outOffsets = new int[ count + 1 ];
+         for ( int i = 0 ; i < count ; i++ ) {
+            starts[ i ] = offset + i * chunk;
+            outOffsets[ i ] = i * PARALLEL_CHUNK;
+         }
+         starts[ count ] = offset + length;
+         outOffsets[ count ] = calcDecodedLength( data, offset, length );
+         return new int[][]{ starts, outOffsets };
+      }
+
+      /** Find where the whole blocks at the start of data end, so that a parallel stream can cut the text there.
+        * @return index after the last whole block
+        */
+      int blockEnd ( final byte[] data, final int offset, final int length ) {
+         return offset + length / 5 * 5;
+      }
+
+      /** Decode and validate part of a byte array in one pass, without throwing on malformed data.
+        * Invalid characters, invalid length, and blocks that exceed 32 bits are detected;
+        * in that case the content of the output array is undefined.
+        * @param data array with data to decode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @param out array to write decoded data to, which should be at least {@link #calcDecodedLength(byte[], int, int)} long
+        * @param out_offset byte offset to start writing decoded data to
+        * @return decoded length if valid, otherwise the reason and index of the first malformed data
+        * @throws IllegalArgumentException if offset or length is negative
+        * @throws ArrayIndexOutOfBoundsException if either array is not big enough
+        */
+      public final Result tryDecode ( final byte[] data, final int offset, final int length, final byte[] out, final int out_offset ) {
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         if ( offset + length > data.length ) throw new ArrayIndexOutOfBoundsException( offset + length );
+         final Monitor monitor = MONITOR;
+         if ( monitor == null ) return _tryDecode( data, offset, length, out, out_offset );
+         final Object event = monitor.begin( length );
+         final Result result;
+         try {
+            result = _tryDecode( data, offset, length, out, out_offset );
+         } catch ( RuntimeException ex ) { throw failed( monitor, ex ); }
+         if ( result.isValid() ) monitor.decoded( this, event, length, result.getLength() );
+         else monitor.failed();
+         return result;
+      }
+
+      /** Validate encoded data without decoding it, and find the first malformed data if any.
+        * Characters are checked many at a time by the live engine, and blocks are checked for overflow only where they may exceed 32 bits.
+        * Reports the same result as {@link #tryDecode(byte[], int, int, byte[], int)}, without an output array.
+        * @param data Encoded data in ascii charset
+        * @return decoded length if valid, otherwise the reason and index of the first malformed data
+        */
+      public final Result validate ( final byte[] data ) {
+         return validate( data, 0, data.length );
+      }
+
+      /** Validate part of encoded data without decoding it, and find the first malformed data if any.
+        * @param data Encoded data in ascii charset
+        * @param offset byte offset that data starts
+        * @param length number of data bytes
+        * @return decoded length if valid, otherwise the reason and array index of the first malformed data
+        * @throws IllegalArgumentException if offset or length is negative
+        * @throws ArrayIndexOutOfBoundsException if data is not big enough
+        */
+      public final Result validate ( final byte[] data, final int offset, final int length ) {
+         if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Offset and length must not be negative" );
+         if ( offset + length > data.length ) throw new ArrayIndexOutOfBoundsException( offset + length );
+         return _validate( data, offset, length );
+      }
+
+      /** Validate encoded text without decoding it, and find the first malformed data if any.
+        * @param data Encoded data
+        * @return decoded length if valid, otherwise the reason and char index of the first malformed data
+        */
+      public final Result validate ( final CharSequence data ) {
+         final byte[] in = new byte[ data.length() ];
+         toAscii( data, 0, in, 0, in.length );
+         return _validate( in, 0, in.length );
+      }
+
+      /** Decode as many complete blocks as possible from a byte buffer into another byte buffer.
+        * Same as {@link #decode(ByteBuffer, ByteBuffer, boolean)} with endOfInput set to false.
+        * @param src buffer to read encoded data from
+        * @param dst buffer to write decoded data to
+        * @return {@link CoderResult#UNDERFLOW}, {@link CoderResult#OVERFLOW}, or a malformed-input result
+        */
+      public final CoderResult decode ( final ByteBuffer src, final ByteBuffer dst ) {
+         return decode( src, dst, false );
+      }
+
+      /** Decode data from a byte buffer into another byte buffer, in the style of {@link java.nio.charset.CharsetDecoder}.
+        * Data is read from src's position and written to dst's position, and both positions are advanced.
+        * Heap and direct buffers are both supported; buffers are accessed directly without copying.
+        * <p>
+        * An incomplete block of less than five characters is left in src, unless endOfInput is true, in which case it is decoded.
+        * This allows the caller to compact src, fill in more data, and call again.
+        * dst should have space for at least four bytes so that progress can always be made.
+        * <p>
+        * Unlike the array methods, input is fully validated.
+        * On malformed input, src is positioned at the start of the offending block,
+        * and the result's length is the length of the block.
+        *
+        * @param src buffer to read encoded data from
+        * @param dst buffer to write decoded data to
+        * @param endOfInput true if there will be no more input after this call
+        * @return {@link CoderResult#UNDERFLOW} if src does not have enough data to form a block,
+        *         {@link CoderResult#OVERFLOW} if dst does not have enough space to hold the next block,
+        *         or a malformed-input result if src contains data that cannot be decoded.
+        */
+      public final CoderResult decode ( final ByteBuffer src, final ByteBuffer dst, final boolean endOfInput ) {
+         return _decode( src, dst, endOfInput );
+      }
+
+      /** Decode from a byte buffer into another byte buffer; see {@link #decode(ByteBuffer, ByteBuffer, boolean)}.
+        * Decodes complete blocks with {@link #_decode(ByteBuffer, ByteBuffer)}, then the last incomplete block at end of input.
+        * @param src buffer to read encoded data from
+        * @param dst buffer to write decoded data to
+        * @param endOfInput true if there will be no more input after this call
+        * @return {@link CoderResult#UNDERFLOW}, {@link CoderResult#OVERFLOW}, or a malformed-input result
+        */
+      protected CoderResult _decode ( final ByteBuffer src, final ByteBuffer dst, final boolean endOfInput ) {
+         CoderResult result = _decode( src, dst );
+         int leftover = src.remaining();
+         if ( result != CoderResult.UNDERFLOW || leftover == 0 || ! endOfInput ) return result;
+         if ( leftover == 1 ) return CoderResult.malformedForLength( 1 );
+         if ( dst.remaining() < leftover - 1 ) return CoderResult.OVERFLOW;
+         final int len;
+         if ( builtIn )
+            len = _decodeDangling( getDecodeMap(), src, src.position(), dst, dst.position(), leftover );
+         else // A subclass may override only the array _decodeDangling.
+            len = decodeLast( src, dst, leftover );
+         if ( len < 0 ) return CoderResult.malformedForLength( leftover );
+         src.position( src.limit() );
+         dst.position( dst.position() + len );
+         return CoderResult.UNDERFLOW;
+      }
+
+      // Decode the last characters through a scratch array and the array hook.  Buffer positions are not changed.
+      private int decodeLast ( final ByteBuffer src, final ByteBuffer dst, final int leftover ) {
+         final byte[] block = new byte[ 8 ];
+         for ( int i = 0 ; i < leftover ; i++ ) block[ i ] = src.get( src.position() + i );
+         try {
+            final int len = _decodeDangling( getDecodeMap(), block, 0, block, 4, leftover );
+            for ( int i = 0 ; i < len ; i++ ) dst.put( dst.position() + i, block[ 4 + i ] );
+            return len;
+         } catch ( IllegalArgumentException malformed ) {
+            return -1;
+         }
+      }
+
+      /** Decode the data as one block in reverse input order.
+        * This is the strict algorithm specified by RFC 1924 for IP address decoding,
+        * when the data is exactly 20 characters (128 bits) long.
+        * The decoded length is four fifth of the data length rounded down, which reverses {@link Encoder#encodeBlockReverse(byte[])}.
+        * @see https://tools.ietf.org/html/rfc1924
+        * @param data Byte data to encode
+        * @return Encoded data in ascii encoding
+        * @throws IllegalArgumentException if data contains invalid character, or if its value does not fit the decoded length
+        */
+      public byte[] decodeBlockReverse ( byte[] data ) {
+         int size = data.length / 5 * 4 + Math.max( 0, data.length % 5 - 1 );
+         byte[] result = new byte[ size ];
+         decodeBlockReverse ( data, 0, data.length, result, 0 );
+         return result;
       }
 
       /** Decode part of data as one block in reverse input order into output array.
         * This is the strict algorithm specified by RFC 1924 for IP address decoding,
-        * when the data part is exactly 16 bytes (128 bits) long.
+        * when the data part is exactly 20 characters (128 bits) long.
+        * 20 characters are decoded with fixed 128 bits arithmetic; longer data are combined by powers of 85.
         * @see https://tools.ietf.org/html/rfc1924
         * @param data array to read data from
         * @param offset byte offset to start reading data
         * @param length number of byte to read
         * @param out array to write decoded data to
         * @param out_offset byte offset to start writing decoded data to
-        * @return number of decoded bytes
+        * @return number of decoded bytes, which is four fifth of length rounded down
+        * @throws IllegalArgumentException if data contains invalid character, or if its value does not fit the decoded length
         */
       public int decodeBlockReverse ( byte[] data, int offset, int length, byte[] out, int out_offset ) {
-         int size = (int) Math.ceil( length * 0.8 );
-         BigInteger sum = BigInteger.ZERO, b85 = BigInteger.valueOf( 85 );
-         byte[] map = getDecodeMap();
-         try {
-            for ( int i = offset, len = offset + length ; i < len ; i++ )
-               sum = sum.multiply( b85 ).add( BigInteger.valueOf( map[ data[ i ] ] ) );
-         } catch ( ArrayIndexOutOfBoundsException ex ) { throwMalformed( ex ); }
-         System.arraycopy( sum.toByteArray(), 0, out, out_offset, size );
+         int size = length / 5 * 4 + Math.max( 0, length % 5 - 1 );
+         final byte[] map = getDecodeMap();
+         if ( length == 20 ) {
+            if ( ! decode128( map, data, offset, out, out_offset ) ) throwMalformed( null );
+         } else if ( length <= 9 ) {
+            long sum = readDigits( map, data, offset, length );
+            if ( sum < 0 || sum >>> ( size * 8 ) != 0 ) throwMalformed( null );
+            for ( int i = out_offset + size - 1 ; i >= out_offset ; i--, sum >>>= 8 )
+               out[ i ] = (byte) sum;
+         } else {
+            final BigInteger sum = fromDigits( map, data, offset, length );
+            if ( sum == null || sum.bitLength() > size * 8 ) throwMalformed( null );
+            final byte[] bytes = sum.toByteArray(); // May have a leading sign byte, or fewer bytes than size.
+            final int len = Math.min( bytes.length, size ), pad = out_offset + size - len;
+            Arrays.fill( out, out_offset, pad, (byte) 0 );
+            System.arraycopy( bytes, bytes.length - len, out, pad, len );
+         }
          return size;
       }
 
       /** Test that given data can be decoded correctly.
         * @param data Encoded data in ascii charset
-        * @return true if data is of correct length and composed of correct characters
+        * @return true if data is of correct length, composed of correct characters, and has no block above 32 bits
         */
       public boolean test ( final String data ) {
-         return test( data.getBytes( US_ASCII ) );
+         return test( (CharSequence) data );
+      }
+
+      /** Test that given data can be decoded correctly.
+        * @param data Encoded data in ascii charset
+        * @return true if data is of correct length, composed of correct characters, and has no block above 32 bits
+        */
+      public boolean test ( final CharSequence data ) {
+         return _test( data, 0, data.length() );
+      }
+
+      /** Test that part of a char array can be decoded correctly.
+        * @param data Encoded data
+        * @param offset char offset that data starts
+        * @param length number of data chars
+        * @return true if data is of correct length, composed of correct characters, and has no block above 32 bits
+        */
+      public boolean test ( final char[] data, final int offset, final int length ) {
+         checkBounds( data.length, offset, length );
+         return _test( CharBuffer.wrap( data ), offset, length );
       }
 
       /** Test that given data can be decoded correctly.
         * @param data Encoded data in ascii charset
-        * @return true if data is of correct length and composed of correct characters
+        * @return true if data is of correct length, composed of correct characters, and has no block above 32 bits
         */
       public boolean test ( final byte[] data ) {
          return test( data, 0, data.length );
@@ -443,189 +1695,2769 @@ public class Base85 {
         * @param data Encoded data in ascii charset
         * @param offset byte offset that data starts
         * @param length number of data bytes
-        * @return true if data is of correct length and composed of correct characters
+        * @return true if data is of correct length, composed of correct characters, and has no block above 32 bits
         */
       public boolean test ( byte[] encoded_data, int offset, int length ) { return _test( encoded_data, offset, length ); }
 
+      /** Wrap an input stream for decoding Base85 data.
+        * Bytes read from the returned stream are decoded from the ASCII characters of the given stream.
+        * Data is buffered internally; memory use does not grow with the size of the data.
+        * Malformed data throws IOException when it is reached.
+        * Closing the returned stream also closes the given stream.
+        * The returned stream is not thread-safe.
+        * @param is stream to read encoded data from
+        * @return stream to read decoded data from
+        */
+      public InputStream wrap ( final InputStream is ) {
+         if ( is == null ) throw new NullPointerException();
+         return new DecoderInputStream( this, is );
+      }
+
+      /** Wrap a reader for decoding Base85 data.
+        * Bytes read from the returned stream are decoded from the characters of the given reader.
+        * Data is buffered internally; memory use does not grow with the size of the data.
+        * Malformed data throws IOException when it is reached.
+        * Closing the returned stream also closes the given reader.
+        * The returned stream is not thread-safe.
+        * @param reader reader to read encoded characters from
+        * @return stream to read decoded data from
+        */
+      public InputStream wrap ( final Reader reader ) {
+         if ( reader == null ) throw new NullPointerException();
+         return new DecoderInputStream( this, new AsciiReaderStream( reader ) );
+      }
+
+      /** Wrap an input stream for decoding Base85 data on many threads, with the default chunk size of 1.25 MB of text
+        * and up to two chunks per processor in flight.
+        * @param is stream to read encoded data from
+        * @param executor executor to decode chunks, such as a fixed thread pool or a virtual thread per task executor
+        * @return stream to read decoded data from
+        * @see #wrapParallel(InputStream, Executor, int, int)
+        */
+      public InputStream wrapParallel ( final InputStream is, final Executor executor ) {
+         return wrapParallel( is, executor, STREAM_CHUNK / 4 * 5, 2 * Runtime.getRuntime().availableProcessors() );
+      }
+
+      /** Wrap an input stream for decoding Base85 data on many threads.
+        * Text is read ahead in chunks, which are cut after their last whole block and decoded concurrently on the executor.
+        * Decoded chunks are read in their original order.  For Ascii85, the blocks are counted from the start of each chunk,
+        * so that 'z' and 'y' do not throw the blocks out of alignment.
+        * <p>
+        * Up to maxPending chunks are read ahead, and more are read only when the oldest one has been read,
+        * so memory use is bounded by the chunks and their decoded data.
+        * Malformed data throws IOException when its chunk is reached.
+        * Closing the returned stream also closes the given stream.
+        * The returned stream is not thread-safe.
+        * @param is stream to read encoded data from
+        * @param executor executor to decode chunks, such as a fixed thread pool or a virtual thread per task executor
+        * @param chunkSize characters of text per chunk
+        * @param maxPending maximum number of chunks decoding or waiting to be read
+        * @return stream to read decoded data from
+        * @throws IllegalArgumentException if chunkSize is less than 5, or maxPending is less than 1
+        */
+      public InputStream wrapParallel ( final InputStream is, final Executor executor, final int chunkSize, final int maxPending ) {
+         if ( is == null || executor == null ) throw new NullPointerException();
+         if ( chunkSize < 5 || maxPending < 1 ) throw new IllegalArgumentException( "Chunk size must be at least 5, and pending chunks at least 1" );
+         return new ParallelDecoderInputStream( this, is, new ChunkPipeline( executor, chunkSize, maxPending ) );
+      }
+
+      /** Start a session that decodes text pushed in fragments of any size, such as from a selector loop.
+        * Unlike {@link #decode(ByteBuffer, ByteBuffer, boolean)}, the session keeps an incomplete block until the next fragment,
+        * so Ascii85 'z' and 'y' are expanded only where a block starts, however the text is split.
+        * @return new session, which is not thread-safe
+        */
+      public DecoderSession newSession () {
+         return new DecoderSession( this );
+      }
+
+      /** Check characters like {@link #_validate(byte[], int, int)}, then blocks for overflow where they may exceed 32 bits. */
       protected boolean _test( final byte[] data, final int offset, final int length ) {
-         byte[] valids = getDecodeMap();
+         final PairTable table = getDecodeTable();
+         final byte[] valids = table.map;
+         final Engine engine = this.engine;
          try {
-            for ( int i = offset, len = offset + length ; i < len ; i++ ) {
+            if ( offset < 0 || length < 0 || offset + length > data.length ) return false;
+            final int checked = engine == null ? 0 : engine.validate( valids, data, offset, length );
+            for ( int i = offset + checked, len = offset + length ; i < len ; i++ ) {
                byte e = data[i];
-               if ( valids[ e ] < 0 )
+               if ( valids[ e & 0xFF ] < 0 )
                   return false;
             }
             calcDecodedLength( data, offset, length );
-         } catch ( ArrayIndexOutOfBoundsException | IllegalArgumentException ex ) {
+         } catch ( IllegalArgumentException ex ) {
             return false;
          }
-         return true;
+         return validRun( table, data, offset, length ) >= 0;
+      }
+
+      /** Convert the text to ASCII bytes, as {@link #validate(CharSequence)} does, and test them. */
+      protected boolean _test ( final CharSequence data, final int offset, final int length ) {
+         final byte[] in = new byte[ length ];
+         toAscii( data, offset, in, 0, length );
+         return _test( in, 0, length );
+      }
+
+      /** Decode and validate data in one pass.
+        * Errors are accumulated in a flag instead of being checked per character;
+        * malformed data is located in a second pass only when the flag is raised.
+        */
+      protected Result _tryDecode ( final byte[] in, int ri, final int rlen, final byte[] out, int wi ) {
+         final int start = ri, wo = wi;
+         final PairTable table = getDecodeTable();
+         final byte[] map = table.map;
+         long err = 0;
+         for ( int loop = rlen / 5 ; loop > 0 ; loop--, ri += 5, wi += 4 ) {
+            final long sum = decodeBlock( map, in[ri], in[ri+1], in[ri+2], in[ri+3], in[ri+4] );
+            err |= sum;
+            putInt( out, wi, (int) sum );
+         }
+         final int leftover = rlen % 5;
+         if ( err >>> 32 != 0 || leftover == 1 ) return locateError( in, start, rlen );
+         if ( leftover > 0 ) {
+            final long sum = decodeDangling( map, in, ri, leftover );
+            if ( sum < 0 ) return locateError( in, start, rlen );
+            putDangling( out, wi, (int) sum, leftover - 1 );
+            wi += leftover - 1;
+         }
+         return new Result( wi - wo, null );
+      }
+
+      /** Validate without decoding.  Characters are checked by the engine and then by the map, accumulating errors in a flag;
+        * any error is located by {@link #locateError(byte[], int, int)} so that the result is the same as decoding.
+        */
+      protected Result _validate ( final byte[] in, final int ri, final int rlen ) {
+         final PairTable table = getDecodeTable();
+         final byte[] map = table.map;
+         final Engine engine = this.engine;
+         int i = ri, err = 0;
+         if ( engine != null ) i += engine.validate( getDecodeMap(), in, ri, rlen );
+         for ( final int re = ri + rlen ; i < re ; i++ )
+            err |= map[ in[i] & 0xFF ];
+         if ( err < 0 ) return locateError( in, ri, rlen );
+         final int length = validRun( table, in, ri, rlen );
+         return length < 0 ? locateError( in, ri, rlen ) : new Result( length, null );
+      }
+
+      /** Find the first malformed data.  Called only on the error path, so speed is not a concern.
+        * @return malformed result, or null if the data is valid
+        */
+      protected final Result locateError ( final byte[] in, final int offset, final int length ) {
+         final ByteBuffer src = ByteBuffer.wrap( in, offset, length ), dst = ByteBuffer.allocate( 1024 );
+         CoderResult result;
+         do {
+            dst.clear();
+            result = decode( src, dst, true );
+         } while ( result.isOverflow() );
+         if ( ! result.isMalformed() ) return null;
+         final byte[] map = getDecodeTable().map;
+         for ( int i = src.position(), len = i + result.length() ; i < len ; i++ )
+            if ( map[ in[i] & 0xFF ] < 0 )
+               return new Result( i, _invalidReason( in[i] ) );
+         if ( result.length() == 1 )
+            return new Result( src.position(), Result.Reason.INVALID_LENGTH );
+         return new Result( src.position(), Result.Reason.BLOCK_OVERFLOW );
+      }
+
+      /** Reason to report for a character that is not in the decode map. */
+      protected Result.Reason _invalidReason ( final byte e ) {
+         return Result.Reason.INVALID_CHARACTER;
       }
 
       protected RuntimeException throwMalformed ( Exception ex ) {
          throw new IllegalArgumentException( "Malformed Base85/" + getName() + " data", ex );
       }
 
-      protected int _decodeDangling ( final byte[] decodeMap, final byte[] in, final int ri, final ByteBuffer buffer, int leftover ) {
+      /** Count a failed call if monitored, and return the exception to rethrow. */
+      private RuntimeException failed ( final Monitor monitor, final RuntimeException ex ) {
+         if ( monitor != null ) monitor.failed();
+         return ex;
+      }
+
+      /** Decode the last two to four characters and write the resulting one to three bytes.
+        * @param decodeMap decode map
+        * @param in array to read encoded data from
+        * @param ri offset of the characters in input
+        * @param out array to write decoded data to
+        * @param wi offset to write decoded data to
+        * @param leftover number of leftover characters, 1 to 4
+        * @return number of bytes written
+        */
+      protected int _decodeDangling ( final byte[] decodeMap, final byte[] in, final int ri, final byte[] out, final int wi, int leftover ) {
+         if ( legacyDangling ) {
+            final ByteBuffer buffer = ByteBuffer.allocate( 4 );
+            final int len = _decodeDangling( decodeMap, in, ri, buffer, leftover );
+            buffer.get( out, wi, len );
+            return len;
+         }
+         return decodeLast( decodeMap, in, ri, out, wi, leftover );
+      }
+
+      private int decodeLast ( final byte[] decodeMap, final byte[] in, final int ri, final byte[] out, final int wi, int leftover ) {
          if ( leftover == 1 ) throwMalformed( null );
-         long sum = decodeMap[ in[ri  ] ] * Power4 +
-                    decodeMap[ in[ri+1] ] * Power3 + 85;
-         if ( leftover >= 3 ) {
-            sum += decodeMap[ in[ri+2] ] * Power2;
-            if ( leftover >= 4 )
-               sum += decodeMap[ in[ri+3] ] * 85;
-            else
-               sum += Power2;
-         } else
-            sum += Power3 + Power2;
-         buffer.putInt( 0, (int) sum );
-         return leftover-1;
+         final long sum = decodeDangling( decodeMap, in, ri, leftover );
+         if ( sum < 0 ) throwMalformed( null );
+         putDangling( out, wi, (int) sum, leftover - 1 );
+         return leftover - 1;
+      }
+
+      /** Decode the last two to four characters into a big-endian integer at index 0 of the buffer.
+        * Called in place of {@link #_decodeDangling(byte[], byte[], int, byte[], int, int)} only when a subclass overrides it.
+        * @deprecated Override {@link #_decodeDangling(byte[], byte[], int, byte[], int, int)} instead.
+        */
+      @Deprecated protected int _decodeDangling ( final byte[] decodeMap, final byte[] in, final int ri, final ByteBuffer buffer, int leftover ) {
+         final byte[] block = new byte[ 4 ];
+         final int len = decodeLast( decodeMap, in, ri, block, 0, leftover );
+         buffer.putInt( 0, getInt( block, 0 ) );
+         return len;
+      }
+
+      /** Decode data into a new array that fits the result exactly.
+        * @param in array to read encoded data from
+        * @param ri offset to start reading
+        * @param rlen number of bytes to read
+        * @return decoded data
+        */
+      protected byte[] _decode ( byte[] in, int ri, int rlen ) {
+         byte[] out = new byte[ calcDecodedLength( in, ri, rlen ) ];
+         int len = _decode( in, ri, rlen, out, 0 );
+         // Should not happen, but fitting the size makes sure tests will fail when it does happen.
+         if ( out.length == len ) return out;
+         return Arrays.copyOf( out, len );
       }
 
       protected int _decode ( byte[] in, int ri, int rlen, final byte[] out, int wi ) {
          final int wo = wi;
-         final ByteBuffer buffer = ByteBuffer.allocate( 4 );
-         final byte[] buf = buffer.array(), decodeMap = getDecodeMap();
-         for ( int loop = rlen / 5 ; loop > 0 ; loop--, wi += 4, ri += 5 ) {
-            _putData( buffer, decodeMap, in, ri );
-            System.arraycopy( buf, 0, out, wi, 4 );
+         final byte[] decodeMap = getDecodeMap();
+         final Engine engine = this.engine;
+         if ( engine != null ) { // The engine stops before malformed data, leaving it to _putData to report
+            final int done = engine.decode( decodeMap, in, ri, rlen, out, wi, false );
+            ri += done * 5;
+            rlen -= done * 5;
+            wi += done * 4;
          }
+         for ( int loop = rlen / 5 ; loop > 0 ; loop--, ri += 5 )
+            wi = _putData( decodeMap, in, ri, out, wi );
          int leftover = rlen % 5;
          if ( leftover == 0 ) return wi - wo;
-         leftover = _decodeDangling( decodeMap, in, ri, buffer, leftover );
-         System.arraycopy( buf, 0, out, wi, leftover );
-         return wi - wo + leftover;
+         return wi - wo + _decodeDangling( decodeMap, in, ri, out, wi, leftover );
       }
 
-      protected void _putData ( ByteBuffer buffer, byte[] map, byte[] in, int ri ) {
-         buffer.putInt( 0, (int) ( map[ in[ri  ] ] * Power4 +
-                                   map[ in[ri+1] ] * Power3 +
-                                   map[ in[ri+2] ] * Power2 +
-                                   map[ in[ri+3] ] * 85 +
-                                   map[ in[ri+4] ] ) );
+      /** Decode one block of five characters and write the resulting four bytes.
+        * @param map decode map; pair lookups are used when it is the map of this decoder
+        * @param in array to read encoded data from
+        * @param ri offset of the block in input
+        * @param out array to write decoded data to
+        * @param wi offset to write decoded data to
+        * @return offset after written data
+        */
+      protected int _putData ( byte[] map, byte[] in, int ri, byte[] out, int wi ) {
+         if ( legacyPutData ) { // The old hook writes at index 0 of a view over the output.
+            _putData( ByteBuffer.wrap( out, wi, 4 ).slice(), map, in, ri );
+            return wi + 4;
+         }
+         return putBlock( map, in, ri, out, wi );
       }
 
-      protected abstract byte[] getDecodeMap();
-      protected abstract String getName();
-   }
-
-   /** This class decodes data in the Base85 encoding using the character set described by IETF RFC 1924,
-     * in the efficient algorithm of Ascii85 and Z85.
-     * Malformed data may or may not throws IllegalArgumentException on decode; call test(byte[]) to check data if necessary.
-     * Decoder instances can be safely shared by multiple threads.
-     * @see https://tools.ietf.org/html/rfc1924
-     */
-   public static class Rfc1924Decoder extends Decoder {
-      private static final byte[] DECODE_MAP = new byte[127];
-      static {
-         buildDecodeMap( Rfc1924Encoder.ENCODE_MAP, DECODE_MAP );
+      private int putBlock ( byte[] map, byte[] in, int ri, byte[] out, int wi ) {
+         final long sum = decodeBlockWith( map, in[ri], in[ri+1], in[ri+2], in[ri+3], in[ri+4] );
+         if ( sum >>> 32 != 0 ) throwMalformed( null );
+         putInt( out, wi, (int) sum );
+         return wi + 4;
       }
-      @Override protected String getName() { return "RFC1924"; }
-      @Override protected byte[] getDecodeMap() { return DECODE_MAP; }
-   }
 
-   /** This class decodes data in the Base85 encoding scheme Z85 as described by ZeroMQ.
-     * Malformed data may or may not throws IllegalArgumentException on decode; call test(byte[]) to check data if necessary.
-     * Decoder instances can be safely shared by multiple threads.
-     * @see https://rfc.zeromq.org/spec:32/Z85/
-     */
-   public static class Z85Decoder extends Decoder {
-      private static final byte[] DECODE_MAP = new byte[127];
-      static {
-         buildDecodeMap( Z85Encoder.ENCODE_MAP, DECODE_MAP );
+      /** Decode one block of five characters into index 0 of the buffer.
+        * Called in place of {@link #_putData(byte[], byte[], int, byte[], int)} only when a subclass overrides it.
+        * @deprecated Override {@link #_putData(byte[], byte[], int, byte[], int)} instead.
+        */
+      @Deprecated protected void _putData ( ByteBuffer buffer, byte[] map, byte[] in, int ri ) {
+         final long sum = decodeBlockWith( map, in[ri], in[ri+1], in[ri+2], in[ri+3], in[ri+4] );
+         if ( sum >>> 32 != 0 ) throwMalformed( null );
+         buffer.putInt( 0, (int) sum );
       }
-      @Override protected String getName() { return "Z85"; }
-      @Override protected byte[] getDecodeMap() { return DECODE_MAP; }
-   }
-
-   /** This class decodes Ascii85 encoded data (Adobe variant without &lt;~ and ~&gt;).
-    *  'y' and 'z' are always processed.  This keep the decoder simple.
-     * Malformed data may or may not throws IllegalArgumentException on decode; call test(byte[]) to check data if necessary.
-     * Decoder instances can be safely shared by multiple threads.
-     * @see https://en.wikipedia.org/wiki/Ascii85
-     */
-   private static class Ascii85Decoder extends Decoder {
-      private static final byte[] zeros = new byte[]{ 0, 0, 0, 0 };
-      private static final byte[] spaces = new byte[]{ 32, 32, 32, 32 };
 
-      @Override public int calcDecodedLength ( byte[] encoded_data, int offset, int length ) {
-         int deflated = length, len = offset + length, i;
-         for ( i = offset ; i < len ; i += 5 )
-            if ( encoded_data[i] == 'z' || encoded_data[i] == 'y' ) {
-               deflated += 4;
-               i -= 4;
-            }
-         if ( i != len ) {
-            i -= 5;
-            while ( i < len && ( encoded_data[i] == 'z' || encoded_data[i] == 'y' ) ) {
-               deflated += 4;
-               i -= 4;
+      /** Decode all complete blocks from a byte buffer into another byte buffer, stopping when dst is full or input is malformed.
+        * Positions are advanced past the decoded blocks.  Incomplete blocks are left in src.
+        * @param in buffer to read encoded data from
+        * @param out buffer to write decoded data to
+        * @return {@link CoderResult#UNDERFLOW}, {@link CoderResult#OVERFLOW}, or a malformed-input result
+        */
+      protected CoderResult _decode ( final ByteBuffer in, final ByteBuffer out ) {
+         int ri = in.position(), wi = out.position();
+         final int re = in.limit(), we = out.limit();
+         final byte[] decodeMap = getDecodeMap();
+         if ( in.hasArray() && out.hasArray() ) try {
+            // Decode as many blocks as fit with the array code, then let the loop below report overflow or locate malformed data.
+            final int rlen = Math.min( ( re - ri ) / 5, ( we - wi ) / 4 ) * 5;
+            final int len = _decode( in.array(), in.arrayOffset() + ri, rlen, out.array(), out.arrayOffset() + wi );
+            ri += rlen;
+            wi += len;
+         } catch ( IllegalArgumentException malformed ) {}
+         // A subclass may override only the array _putData; its blocks are decoded from one scratch array and copied.
+         final byte[] block = builtIn ? null : new byte[ 9 ];
+         try {
+            for ( ; re - ri >= 5 ; ri += 5, wi += 4 ) {
+               if ( we - wi < 4 ) return CoderResult.OVERFLOW;
+               if ( ! ( block == null ? _putData( decodeMap, in, ri, out, wi ) : putBlock( decodeMap, in, ri, out, wi, block ) ) )
+                  return CoderResult.malformedForLength( 5 );
             }
+            return CoderResult.UNDERFLOW;
+         } finally {
+            in.position( ri );
+            out.position( wi );
          }
-         return super.calcDecodedLength( null, 0, deflated );
       }
 
-      @Override public boolean test ( byte[] encoded_data, int offset, int length ) {
+      /** Decode and validate one block of five characters from a buffer, and write the resulting four bytes.
+        * Buffer positions are not changed.
+        * Only built-in decoders call this; subclasses are decoded through {@link #_putData(byte[], byte[], int, byte[], int)}.
+        * @param map decode map
+        * @param in buffer to read encoded data from
+        * @param ri absolute index of the block in input
+        * @param out buffer to write decoded data to
+        * @param wi absolute index to write decoded data to
+        * @return false if the block contains invalid character or does not fit in 32 bits
+        */
+      protected boolean _putData ( byte[] map, ByteBuffer in, int ri, ByteBuffer out, int wi ) {
+         final long sum = decodeBlockWith( map, in.get( ri ), in.get( ri+1 ), in.get( ri+2 ), in.get( ri+3 ), in.get( ri+4 ) );
+         if ( sum >>> 32 != 0 ) return false;
+         putInt( out, wi, (int) sum );
+         return true;
+      }
+
+      // Decode one block through a scratch array and the array hook, which throws on malformed data.
+      private boolean putBlock ( final byte[] map, final ByteBuffer in, final int ri, final ByteBuffer out, final int wi, final byte[] block ) {
+         for ( int i = 0 ; i < 5 ; i++ ) block[ i ] = in.get( ri + i );
          try {
-            int deviation = 0;
-            for ( int i = offset, len = offset + length ; i < len ; i++ ) {
-               byte e = encoded_data[i];
-               if ( DECODE_MAP[ e ] < 0 )
-                  if ( ( deviation + i - offset ) % 5 != 0 || ( e != 'z' && e != 'y' ) )
-                     return false;
-                  else
-                     deviation += 4;
-            }
-            super.calcDecodedLength( null, 0, length + deviation ); // Validate length
-         } catch ( ArrayIndexOutOfBoundsException | IllegalArgumentException ignored ) { return false; }
+            _putData( map, block, 0, block, 5 );
+         } catch ( IllegalArgumentException malformed ) {
+            return false;
+         }
+         for ( int i = 0 ; i < 4 ; i++ ) out.put( wi + i, block[ 5 + i ] );
          return true;
       }
 
-      private static final byte[] DECODE_MAP = new byte[127];
-      static {
-         buildDecodeMap( Ascii85Encoder.ENCODE_MAP, DECODE_MAP );
+      /** Decode a block with the widened decode map if map is the decode map of this decoder, otherwise with bounds checks on map.
+        * @return block value; the high 32 bits are non-zero if malformed
+        */
+      private long decodeBlockWith ( final byte[] map, final byte c0, final byte c1, final byte c2, final byte c3, final byte c4 ) {
+         final PairTable table = getDecodeTable();
+         if ( map == table.map || map == getDecodeMap() ) return decodeBlock( table.map, c0, c1, c2, c3, c4 );
+         final int d0 = decodeChar( map, c0 ), d1 = decodeChar( map, c1 ), d2 = decodeChar( map, c2 ), d3 = decodeChar( map, c3 ), d4 = decodeChar( map, c4 );
+         final long sum = ( ( ( d0 * 85L + d1 ) * 85 + d2 ) * 85 + d3 ) * 85 + d4;
+         return ( d0 | d1 | d2 | d3 | d4 ) < 0 || sum > 0xFFFFFFFFL ? -1 : sum;
       }
-      @Override protected String getName() { return "Ascii85"; }
-      @Override protected byte[] getDecodeMap() { return DECODE_MAP; }
 
-      @Override protected int _decode ( byte[] in, int ri, int rlen, final byte[] out, int wi ) {
-         final int re = ri + rlen, wo = wi;
-         final ByteBuffer buffer = ByteBuffer.allocate( 4 );
-         final byte[] buf = buffer.array(), decodeMap = getDecodeMap();
-         for ( int max = ri + rlen, max2 = max - 4 ; ri < max ; wi += 4 ) {
-            while ( ri < max && ( in[ri] == 'z' || in[ri] == 'y' ) ) {
-               byte[] src = null;
-               switch ( in[ri++] ) {
-               case 'z': src = zeros; break;
-               case 'y': src = spaces; break;
-               }
-               System.arraycopy( src, 0, out, wi, 4 );
-               wi += 4;
-            }
-            if ( ri < max2 ) {
-               _putData( buffer, decodeMap, in, ri );;
-               ri += 5;
-               System.arraycopy( buf, 0, out, wi, 4 );
-            } else
-               break;
+      /** Decode and validate the last two to four characters from a buffer.  Buffer positions are not changed.
+        * Only built-in decoders call this; subclasses are decoded through {@link #_decodeDangling(byte[], byte[], int, byte[], int, int)}.
+        * @return number of decoded bytes, or -1 if the data is malformed
+        */
+      protected int _decodeDangling ( final byte[] decodeMap, final ByteBuffer in, final int ri, final ByteBuffer out, final int wi, int leftover ) {
+         long sum = 0;
+         int valid = 0;
+         for ( int i = 0 ; i < 5 ; i++ ) {
+            final int d = i < leftover ? decodeChar( decodeMap, in.get( ri + i ) ) : 84; // Pad with highest digit
+            valid |= d;
+            sum = sum * 85 + d;
          }
-         if ( re == ri ) return wi - wo;
-         int leftover = _decodeDangling( decodeMap, in, ri, buffer, re - ri );
-         System.arraycopy( buf, 0, out, wi, leftover );
-         return wi - wo + leftover;
+         if ( valid < 0 || sum > 0xFFFFFFFFL ) return -1;
+         putDangling( out, wi, (int) sum, leftover - 1 );
+         return leftover - 1;
       }
-   }
 
-   private static void buildDecodeMap ( byte[] encodeMap, byte[] decodeMap ) {
-      Arrays.fill( decodeMap, (byte) -1 );
+      private PairTable decodeTable, decodePairs;
+
+      /** Get the pair table of the decode map, built on first use.
+        * Entry ( c1 &lt;&lt; 7 | c2 ) holds the value of ASCII character pair c1 c2 (0 to 85^2-1), or -1 if either is invalid.
+        * The decoder itself looks up single characters; the table is for subclasses.
+        * @return decode pair table
+        */
+      protected final short[] getDecodePairs () {
+         PairTable table = decodePairs;
+         if ( table == null ) decodePairs = table = new PairTable( buildDecodePairs( getDecodeTable().map ), null ); // Same for all threads; no need to lock.
+         return table.pairs;
+      }
+
+      /** Get the decode tables, with the decode map widened to cover all 256 byte values. */
+      final PairTable getDecodeTable () {
+         PairTable table = decodeTable;
+         if ( table == null ) decodeTable = table = buildDecodeTable( getDecodeMap() ); // Same for all threads; no need to lock.
+         return table;
+      }
+
+      /** Copy this decoder to run on the given engine instead of the selected one.  Used by tests and benchmarks.
+        * @param engine engine from {@link Base85#loadEngine(String)}, or null for scalar code
+        * @return new decoder; a subclass copy stays on scalar code
+        */
+      Decoder withEngine ( final Engine engine ) {
+         try {
+            final Decoder copy = (Decoder) clone();
+            copy.engine = builtIn ? engine : null;
+            return copy;
+         } catch ( CloneNotSupportedException ex ) {
+            throw new AssertionError( ex ); // Encoder and Decoder are Cloneable
+         }
+      }
+
+      protected abstract byte[] getDecodeMap();
+      protected abstract String getName();
+   }
+
+   /** Result of a validating decode: either the decoded length, or the first malformed index and the reason.
+     * @see Decoder#tryDecode(byte[], int, int, byte[], int)
+     */
+   public static final class Result {
+      /** Reasons of malformed data. */
+      public enum Reason {
+         /** Character is not in the alphabet. */
+         INVALID_CHARACTER,
+         /** Data ends with a single character, which cannot encode anything. */
+         INVALID_LENGTH,
+         /** Ascii85 'z' or 'y' in the middle of a block. */
+         MISPLACED_COMPRESSION,
+         /** Block value exceeds 2^32-1. */
+         BLOCK_OVERFLOW
+      }
+
+      private final int value;
+      private final Reason reason;
+
+      Result ( int value, Reason reason ) { this.value = value; this.reason = reason; }
+
+      /** @return true if data is valid */
+      public boolean isValid () { return reason == null; }
+
+      /** @return decoded length
+        * @throws IllegalStateException if data is malformed */
+      public int getLength () {
+         if ( reason != null ) throw new IllegalStateException( "Malformed data has no length" );
+         return value;
+      }
+
+      /** @return array index of the first malformed data
+        * @throws IllegalStateException if data is valid */
+      public int getErrorOffset () {
+         if ( reason == null ) throw new IllegalStateException( "Valid data has no error" );
+         return value;
+      }
+
+      /** @return reason of malformed data, or null if data is valid */
+      public Reason getReason () { return reason; }
+
+      @Override public String toString () {
+         return reason == null ? "Valid, length " + value : reason + " at " + value;
+      }
+   }
+
+   /** A resumable encoding of data that arrives in fragments.
+     * Complete blocks are encoded as soon as they arrive, and up to three bytes of an incomplete block are kept for the next fragment.
+     * {@link #finish(ByteBuffer)} encodes the kept bytes and ends the text, after which the session starts over.
+     * Ascii85 line breaks and delimiters are added as the text is written, in the same layout as the array methods.
+     * A session is not thread-safe.
+     * @see Encoder#newSession()
+     */
+   public static final class EncoderSession {
+      private final Encoder encoder;
+      private final int width;
+      private final boolean delimited;
+      private final ByteBuffer pending = ByteBuffer.allocate( 4 ); // Bytes of an incomplete block, in write mode
+      private final ByteBuffer text; // Encoded text to be written with line breaks, in read mode; null if there is no line break or delimiter
+      private int column; // Characters on the current line
+
+      EncoderSession ( final Encoder encoder ) {
+         this.encoder = encoder.unframed();
+         width = encoder.lineLength();
+         delimited = encoder.delimited();
+         text = width == 0 && ! delimited ? null : ByteBuffer.allocate( 1280 );
+         reset();
+      }
+
+      private void reset () {
+         pending.clear();
+         column = 0;
+         if ( text == null ) return;
+         text.clear();
+         if ( delimited ) text.put( (byte) '<' ).put( (byte) '~' );
+         text.flip();
+      }
+
+      /** @return number of bytes kept for the next fragment, 0 to 3 */
+      public int getPending () { return pending.position(); }
+
+      /** Encode a fragment of data.  Complete blocks are written to dst, and the bytes of a trailing incomplete block are kept.
+        * dst should have space for at least five bytes so that progress can always be made.
+        * @param src data to encode; its position is advanced past what is encoded or kept
+        * @param dst buffer to write encoded data to
+        * @return {@link CoderResult#UNDERFLOW} when src is used up,
+        *         or {@link CoderResult#OVERFLOW} when dst is full; make room in dst and call again with the rest of src
+        */
+      public CoderResult update ( final ByteBuffer src, final ByteBuffer dst ) {
+         return text == null ? encode( src, dst, false ) : encodeText( src, dst, false );
+      }
+
+      /** Encode the kept bytes and end the text, then start over.
+        * @param dst buffer to write encoded data to
+        * @return {@link CoderResult#UNDERFLOW} when done, or {@link CoderResult#OVERFLOW} when dst is full; make room and call again
+        */
+      public CoderResult finish ( final ByteBuffer dst ) {
+         final ByteBuffer none = ByteBuffer.allocate( 0 );
+         final CoderResult result = text == null ? encode( none, dst, true ) : encodeText( none, dst, true );
+         if ( result.isUnderflow() ) reset();
+         return result;
+      }
+
+      /** Encode a fragment of data into a new array.
+        * @param src data to encode, which is used up
+        * @return encoded data of the complete blocks
+        */
+      public byte[] update ( final ByteBuffer src ) {
+         return toArray( src, false );
+      }
+
+      /** Encode part of a byte array as a fragment of data into a new array.
+        * @param data array with data to encode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @return encoded data of the complete blocks
+        */
+      public byte[] update ( final byte[] data, final int offset, final int length ) {
+         return toArray( ByteBuffer.wrap( data, offset, length ), false );
+      }
+
+      /** Encode the kept bytes and end the text into a new array, then start over.
+        * @return encoded data of the last incomplete block, and the closing delimiter
+        */
+      public byte[] finish () {
+         return toArray( null, true );
+      }
+
+      private byte[] toArray ( final ByteBuffer src, final boolean endOfInput ) {
+         ByteBuffer dst = ByteBuffer.allocate( (int) Math.ceil( ( endOfInput ? 4 : src.remaining() + 4 ) * 1.25 ) + 8 );
+         while ( ( endOfInput ? finish( dst ) : update( src, dst ) ).isOverflow() )
+            dst = grow( dst, dst.capacity() + 8 );
+         return Arrays.copyOf( dst.array(), dst.position() );
+      }
+
+      /** Encode without line breaks, completing the kept block first. */
+      private CoderResult encode ( final ByteBuffer src, final ByteBuffer dst, final boolean endOfInput ) {
+         if ( pending.position() > 0 ) {
+            if ( dst.remaining() < 5 ) return CoderResult.OVERFLOW;
+            while ( pending.hasRemaining() && src.hasRemaining() ) pending.put( src.get() );
+            if ( pending.hasRemaining() && ! endOfInput ) return CoderResult.UNDERFLOW;
+            pending.flip();
+            encoder.encode( pending, dst, true );
+            pending.clear();
+         }
+         final CoderResult result = encoder.encode( src, dst, endOfInput );
+         if ( result.isUnderflow() ) pending.put( src ); // Less than a block
+         return result;
+      }
+
+      /** Encode through the text buffer, which is then written with line breaks and delimiters. */
+      private CoderResult encodeText ( final ByteBuffer src, final ByteBuffer dst, final boolean endOfInput ) {
+         while ( true ) {
+            if ( ! writeText( dst ) ) return CoderResult.OVERFLOW;
+            if ( ! src.hasRemaining() && ( ! endOfInput || pending.position() == 0 ) ) break;
+            text.clear();
+            encode( src, text, endOfInput );
+            text.flip();
+         }
+         if ( ! endOfInput || ! delimited ) return CoderResult.UNDERFLOW;
+         final boolean newLine = width > 0 && column + 2 > width;
+         if ( dst.remaining() < ( newLine ? 3 : 2 ) ) return CoderResult.OVERFLOW;
+         if ( newLine ) dst.put( (byte) '\n' );
+         dst.put( (byte) '~' ).put( (byte) '>' );
+         return CoderResult.UNDERFLOW;
+      }
+
+      /** Write the text buffer with line breaks.
+        * @return false if dst is full before all text is written
+        */
+      private boolean writeText ( final ByteBuffer dst ) {
+         while ( text.hasRemaining() ) {
+            if ( ! dst.hasRemaining() ) return false;
+            if ( width > 0 && column == width ) {
+               dst.put( (byte) '\n' );
+               column = 0;
+               continue;
+            }
+            final int len = Math.min( Math.min( text.remaining(), dst.remaining() ), width > 0 ? width - column : Integer.MAX_VALUE );
+            final int limit = text.limit();
+            text.limit( text.position() + len );
+            dst.put( text );
+            text.limit( limit );
+            column += len;
+         }
+         return true;
+      }
+   }
+
+   /** A resumable decoding of text that arrives in fragments.
+     * Complete blocks are decoded as soon as they arrive, and the characters of an incomplete block are kept for the next fragment:
+     * at most four, except that the Ascii85 text decoder also keeps whitespace within the block.
+     * {@link #finish(ByteBuffer)} decodes the kept characters, after which the session starts over.
+     * A session is not thread-safe.
+     * @see Decoder#newSession()
+     */
+   public static final class DecoderSession {
+      private final Decoder decoder;
+      private ByteBuffer pending = ByteBuffer.allocate( 16 ); // Characters of an incomplete block, in write mode
+
+      DecoderSession ( final Decoder decoder ) {
+         this.decoder = decoder;
+      }
+
+      /** @return number of characters kept for the next fragment */
+      public int getPending () { return pending.position(); }
+
+      /** Decode a fragment of encoded text.  Complete blocks are written to dst, and the characters of a trailing incomplete block are kept.
+        * dst should have space for at least four bytes so that progress can always be made.
+        * @param src encoded text to decode; its position is advanced past what is decoded or kept
+        * @param dst buffer to write decoded data to
+        * @return {@link CoderResult#UNDERFLOW} when src is used up,
+        *         {@link CoderResult#OVERFLOW} when dst is full; make room in dst and call again with the rest of src,
+        *         or a malformed-input result, after which the session should be discarded
+        */
+      public CoderResult update ( final ByteBuffer src, final ByteBuffer dst ) {
+         return decode( src, dst, false );
+      }
+
+      /** Decode the kept characters, then start over.
+        * @param dst buffer to write decoded data to
+        * @return {@link CoderResult#UNDERFLOW} when done, {@link CoderResult#OVERFLOW} when dst is full; make room and call again,
+        *         or a malformed-input result
+        */
+      public CoderResult finish ( final ByteBuffer dst ) {
+         final CoderResult result = decode( ByteBuffer.allocate( 0 ), dst, true );
+         if ( ! result.isOverflow() ) pending.clear();
+         return result;
+      }
+
+      /** Decode a fragment of encoded text into a new array.
+        * @param src encoded text to decode, which is used up
+        * @return decoded data of the complete blocks
+        * @throws IllegalArgumentException if data is malformed
+        */
+      public byte[] update ( final ByteBuffer src ) {
+         return toArray( src, false );
+      }
+
+      /** Decode part of a byte array as a fragment of encoded text into a new array.
+        * @param data array with data to decode
+        * @param offset byte offset to start reading data
+        * @param length number of byte to read
+        * @return decoded data of the complete blocks
+        * @throws IllegalArgumentException if data is malformed
+        */
+      public byte[] update ( final byte[] data, final int offset, final int length ) {
+         return toArray( ByteBuffer.wrap( data, offset, length ), false );
+      }
+
+      /** Decode the kept characters into a new array, then start over.
+        * @return decoded data of the last incomplete block
+        * @throws IllegalArgumentException if data is malformed
+        */
+      public byte[] finish () {
+         return toArray( null, true );
+      }
+
+      private byte[] toArray ( final ByteBuffer src, final boolean endOfInput ) {
+         ByteBuffer dst = ByteBuffer.allocate( ( ( endOfInput ? 0 : src.remaining() ) + pending.position() ) / 5 * 4 + 4 );
+         CoderResult result;
+         while ( ( result = endOfInput ? finish( dst ) : update( src, dst ) ).isOverflow() )
+            dst = grow( dst, dst.capacity() + 4 );
+         if ( result.isError() ) throw decoder.throwMalformed( null );
+         return Arrays.copyOf( dst.array(), dst.position() );
+      }
+
+      private CoderResult decode ( final ByteBuffer src, final ByteBuffer dst, final boolean endOfInput ) {
+         // Complete the kept block with a few characters at a time, and give back the characters it does not use.
+         while ( pending.position() > 0 ) {
+            final int kept = pending.position(), start = src.position(), take = Math.min( src.remaining(), 5 );
+            if ( take == 0 && ! endOfInput ) return CoderResult.UNDERFLOW;
+            if ( pending.remaining() < take ) pending = grow( pending, kept + take );
+            for ( int i = 0 ; i < take ; i++ ) pending.put( src.get() );
+            pending.flip();
+            final CoderResult result = decoder.decode( pending, dst, endOfInput && ! src.hasRemaining() );
+            final int used = pending.position() - kept; // Characters used from src; negative if kept characters are left
+            if ( used < 0 && result.isUnderflow() ) { // Still incomplete, e.g. broken by whitespace; keep them all
+               pending.compact();
+               continue;
+            }
+            src.position( start + Math.max( used, 0 ) );
+            pending.limit( Math.max( kept, pending.position() ) );
+            pending.compact();
+            if ( ! result.isUnderflow() ) return result;
+         }
+         final CoderResult result = decoder.decode( src, dst, endOfInput );
+         if ( result.isUnderflow() && src.hasRemaining() ) { // An incomplete block
+            if ( pending.remaining() < src.remaining() ) pending = grow( pending, pending.position() + src.remaining() );
+            pending.put( src );
+         }
+         return result;
+      }
+   }
+
+   /** A growable byte buffer that encoders and decoders append to.
+     * Reusing one sink, or leasing sinks from a {@link BufferPool}, avoids allocating a result array per call;
+     * the array only grows until it fits the largest result.
+     * A sink is not thread-safe.
+     */
+   public static final class ByteSink implements AutoCloseable {
+      private byte[] buf;
+      private int length;
+      private BufferPool pool; // Pool that leased this sink, if any
+
+      /** Create a sink with an initial capacity of 256 bytes. */
+      public ByteSink () { this( 256 ); }
+
+      /** @param capacity initial capacity in bytes */
+      public ByteSink ( final int capacity ) {
+         if ( capacity < 0 ) throw new IllegalArgumentException( "Capacity must not be negative" );
+         buf = new byte[ capacity ];
+      }
+
+      /** @return backing array, valid until the next write to this sink; data is from offset 0 to {@link #length()} */
+      public byte[] array () { return buf; }
+
+      /** @return number of bytes in this sink */
+      public int length () { return length; }
+
+      /** Discard all data, keeping the array for reuse.
+        * @return this sink */
+      public ByteSink clear () {
+         length = 0;
+         return this;
+      }
+
+      /** @return copy of the data in a new array */
+      public byte[] toByteArray () { return Arrays.copyOf( buf, length ); }
+
+      /** Return this sink to the pool it was leased from.  Does nothing if it is not leased. */
+      @Override public void close () {
+         if ( pool != null ) pool.release( this );
+      }
+
+      /** Make sure there is room for more bytes after the data.
+        * @param more number of bytes to be written
+        * @return backing array, which may be a new one */
+      byte[] reserve ( final int more ) {
+         if ( buf.length - length < more ) buf = grow( buf, length + more );
+         return buf;
+      }
+   }
+
+   /** A bounded, thread-safe pool of {@link ByteSink}.
+     * Leasing takes a free sink if there is one, or creates a new one, so it never blocks.
+     * Released sinks are kept up to the pool size, except those that grew bigger than the pool's maximum array length.
+     * Leasing and releasing are lock-free and allocate nothing when the pool has a free sink.
+     */
+   public static final class BufferPool {
+      private final AtomicReferenceArray<ByteSink> free;
+      private final int initialCapacity, maxCapacity;
+
+      /** @param size maximum number of free sinks to keep
+        * @param initialCapacity initial capacity of new sinks
+        * @param maxCapacity sinks with a bigger array are not kept */
+      public BufferPool ( final int size, final int initialCapacity, final int maxCapacity ) {
+         if ( size < 0 || initialCapacity < 0 || maxCapacity < initialCapacity ) throw new IllegalArgumentException( "Invalid pool size or capacity" );
+         free = new AtomicReferenceArray<>( size );
+         this.initialCapacity = initialCapacity;
+         this.maxCapacity = maxCapacity;
+      }
+
+      /** Lease an empty sink.  Close or release it when done.
+        * @return leased sink */
+      public ByteSink lease () {
+         for ( int i = 0, len = free.length() ; i < len ; i++ ) {
+            final ByteSink sink = free.get( i );
+            if ( sink != null && free.compareAndSet( i, sink, null ) ) {
+               sink.pool = this;
+               return sink.clear();
+            }
+         }
+         final ByteSink sink = new ByteSink( initialCapacity );
+         sink.pool = this;
+         return sink;
+      }
+
+      /** Return a leased sink to this pool.  The sink must not be used afterwards.
+        * @param sink sink leased from this pool
+        * @throws IllegalArgumentException if the sink is not leased from this pool, or is already released
+        */
+      public void release ( final ByteSink sink ) {
+         if ( sink.pool != this ) throw new IllegalArgumentException( "Sink is not leased from this pool" );
+         sink.pool = null;
+         if ( sink.buf.length > maxCapacity ) return;
+         for ( int i = 0, len = free.length() ; i < len ; i++ )
+            if ( free.get( i ) == null && free.compareAndSet( i, null, sink ) ) return;
+      }
+   }
+
+   /** This class decodes data in the Base85 encoding using the character set described by IETF RFC 1924,
+     * in the efficient algorithm of Ascii85 and Z85.
+     * Malformed data throws IllegalArgumentException on decode; call test(byte[]) to check data without exception.
+     * Decoder instances can be safely shared by multiple threads.
+     * @see https://tools.ietf.org/html/rfc1924
+     */
+   public static class Rfc1924Decoder extends Decoder {
+      private static final byte[] DECODE_MAP = new byte[256];
+      static {
+         buildDecodeMap( Rfc1924Encoder.ENCODE_MAP, DECODE_MAP );
+      }
+      @Override protected String getName() { return "RFC1924"; }
+      @Override protected byte[] getDecodeMap() { return DECODE_MAP; }
+   }
+
+   /** This class decodes data in the Base85 encoding scheme Z85 as described by ZeroMQ.
+     * Malformed data throws IllegalArgumentException on decode; call test(byte[]) to check data without exception.
+     * Decoder instances can be safely shared by multiple threads.
+     * @see https://rfc.zeromq.org/spec:32/Z85/
+     */
+   public static class Z85Decoder extends Decoder {
+      private static final byte[] DECODE_MAP = new byte[256];
+      static {
+         buildDecodeMap( Z85Encoder.ENCODE_MAP, DECODE_MAP );
+      }
+      @Override protected String getName() { return "Z85"; }
+      @Override protected byte[] getDecodeMap() { return DECODE_MAP; }
+
+      /** Decode a 40 characters key, such as a CurveZMQ public or secret key, into 32 bytes.
+        * @param data encoded key
+        * @return decoded key
+        * @throws IllegalArgumentException if data is not 40 characters long or is malformed
+        */
+      public final byte[] decodeKey ( final CharSequence data ) {
+         final byte[] result = new byte[ 32 ];
+         decodeKey( data, result, 0 );
+         return result;
+      }
+
+      /** Decode a 40 characters key into 32 bytes of an array.  The output is undefined if the key is malformed.
+        * @param data encoded key
+        * @param out array to write the decoded key to
+        * @param out_offset byte offset to start writing the decoded key to
+        * @throws IllegalArgumentException if data is not 40 characters long or is malformed, or if out is not big enough
+        */
+      public final void decodeKey ( final CharSequence data, final byte[] out, final int out_offset ) {
+         if ( data.length() != 40 ) throw new IllegalArgumentException( "Z85 key must be 40 characters, not " + data.length() );
+         if ( out_offset < 0 || out_offset > out.length - 32 ) throw new IllegalArgumentException( "Z85 key needs 32 bytes to write" );
+         final PairTable table = getDecodeTable();
+         long err = 0;
+         for ( int i = 0 ; i < 8 ; i++ ) {
+            final long block = decodeBlock( table, data, i * 5 );
+            err |= block;
+            putInt( out, out_offset + i * 4, (int) block );
+         }
+         if ( err >>> 32 != 0 ) throw throwMalformed( null );
+      }
+   }
+
+   /** This class decodes Ascii85 encoded data (Adobe variant without &lt;~ and ~&gt;).
+    *  'y' and 'z' are always processed.  This keep the decoder simple.
+     * Malformed data throws IllegalArgumentException on decode; call test(byte[]) to check data without exception.
+     * Decoder instances can be safely shared by multiple threads.
+     * @see https://en.wikipedia.org/wiki/Ascii85
+     */
+   private static class Ascii85Decoder extends Decoder {
+
+      @Override public int calcDecodedLength ( byte[] encoded_data, int offset, int length ) {
+         int deflated = length, len = offset + length, i;
+         for ( i = offset ; i < len ; i += 5 )
+            if ( encoded_data[i] == 'z' || encoded_data[i] == 'y' ) {
+               deflated += 4;
+               i -= 4;
+            }
+         if ( i != len ) {
+            i -= 5;
+            while ( i < len && ( encoded_data[i] == 'z' || encoded_data[i] == 'y' ) ) {
+               deflated += 4;
+               i -= 4;
+            }
+         }
+         return super.calcDecodedLength( null, 0, deflated );
+      }
+
+      /** Check runs of alphabet characters with the engine, like {@link #_validate(byte[], int, int)};
+        * each 'z' or 'y' must be at a block boundary, and each run must not overflow. */
+      @Override protected boolean _test ( final byte[] data, final int offset, final int length ) {
+         if ( offset < 0 || length < 0 || length > data.length - offset ) return false;
+         final PairTable table = getDecodeTable();
+         final byte[] decodeMap = getDecodeMap();
+         final Engine engine = this.engine;
+         final int end = offset + length;
+         int i = offset, start = offset; // start of current run
+         for ( ;; ) {
+            if ( engine != null ) i += engine.validate( decodeMap, data, i, end - i );
+            while ( i < end && decodeMap[ data[i] & 0xFF ] >= 0 ) i++;
+            if ( i == end ) break;
+            final byte e = data[i];
+            if ( e != 'z' && e != 'y' || ( i - start ) % 5 != 0 || validRun( table, data, start, i - start ) < 0 ) return false;
+            start = ++i;
+         }
+         return validRun( table, data, start, end - start ) >= 0;
+      }
+
+      private static final byte[] DECODE_MAP = new byte[256];
+      static {
+         buildDecodeMap( Ascii85Encoder.ENCODE_MAP, DECODE_MAP );
+      }
+      @Override protected String getName() { return "Ascii85"; }
+      @Override protected byte[] getDecodeMap() { return DECODE_MAP; }
+
+      /** Decode in one pass into an array sized for no compression, growing it when 'z' or 'y' need more room. */
+      @Override protected byte[] _decode ( byte[] in, int ri, int rlen ) {
+         final int re = ri + rlen;
+         final byte[] decodeMap = getDecodeMap();
+         final Engine engine = this.engine;
+         byte[] out = new byte[ (int) ( rlen * 0.8 ) ];
+         int wi = 0;
+         while ( ri < re ) {
+            final byte e = in[ri];
+            if ( e == 'z' || e == 'y' ) { // Expand the whole run with one fill
+               final int run = run( engine, in, ri, re - ri, e );
+               if ( out.length - wi < run * 4 ) out = grow( out, wi + run * 4 + ( re - ri - run ) / 5 * 4 );
+               Arrays.fill( out, wi, wi + run * 4, e == 'z' ? 0 : (byte) ' ' );
+               if ( MONITOR != null ) MONITOR.compressed( run );
+               ri += run;
+               wi += run * 4;
+               continue;
+            }
+            if ( out.length - wi < 4 ) out = grow( out, wi + 4 + ( re - ri ) / 5 * 4 );
+            if ( re - ri >= 5 ) {
+               if ( engine != null ) { // The engine stops before 'z', 'y', or malformed data
+                  final int done = engine.decode( decodeMap, in, ri, re - ri, out, wi, true );
+                  ri += done * 5;
+                  wi += done * 4;
+                  if ( done > 0 ) continue;
+               }
+               wi = _putData( decodeMap, in, ri, out, wi );
+               ri += 5;
+            } else {
+               wi += _decodeDangling( decodeMap, in, ri, out, wi, re - ri );
+               break;
+            }
+         }
+         if ( out.length == wi ) return out;
+         return Arrays.copyOf( out, wi );
+      }
+
+      @Override protected int _decode ( byte[] in, int ri, int rlen, final byte[] out, int wi ) {
+         final int re = ri + rlen, wo = wi;
+         final byte[] decodeMap = getDecodeMap();
+         final Engine engine = this.engine;
+         for ( int max = ri + rlen, max2 = max - 4 ; ri < max ; ) {
+            while ( ri < max && ( in[ri] == 'z' || in[ri] == 'y' ) ) { // Expand each run with one fill
+               final byte e = in[ri];
+               final int run = run( engine, in, ri, max - ri, e );
+               Arrays.fill( out, wi, wi + run * 4, e == 'z' ? 0 : (byte) ' ' );
+               if ( MONITOR != null ) MONITOR.compressed( run );
+               ri += run;
+               wi += run * 4;
+            }
+            if ( ri < max2 ) {
+               if ( engine != null ) { // The engine stops before 'z', 'y', or malformed data
+                  final int done = engine.decode( decodeMap, in, ri, max - ri, out, wi, true );
+                  ri += done * 5;
+                  wi += done * 4;
+                  if ( done > 0 ) continue;
+               }
+               wi = _putData( decodeMap, in, ri, out, wi );
+               ri += 5;
+            } else
+               break;
+         }
+         if ( re == ri ) return wi - wo;
+         return wi - wo + _decodeDangling( decodeMap, in, ri, out, wi, re - ri );
+      }
+
+      @Override protected Result _tryDecode ( final byte[] in, int ri, final int rlen, final byte[] out, int wi ) {
+         final int start = ri, re = ri + rlen, wo = wi;
+         final PairTable table = getDecodeTable();
+         final byte[] map = table.map;
+         long err = 0;
+         int compressed = 0;
+         while ( ri < re ) {
+            final byte e = in[ri];
+            if ( e == 'z' || e == 'y' ) {
+               putInt( out, wi, e == 'z' ? 0 : 0x20202020 );
+               ri += 1;
+               compressed++;
+            } else if ( re - ri >= 5 ) {
+               final long sum = decodeBlock( map, e, in[ri+1], in[ri+2], in[ri+3], in[ri+4] );
+               err |= sum;
+               putInt( out, wi, (int) sum );
+               ri += 5;
+            } else
+               break;
+            wi += 4;
+         }
+         final int leftover = re - ri;
+         if ( err >>> 32 != 0 || leftover == 1 ) return locateError( in, start, rlen );
+         if ( leftover > 0 ) {
+            final long sum = decodeDangling( map, in, ri, leftover );
+            if ( sum < 0 ) return locateError( in, start, rlen );
+            putDangling( out, wi, (int) sum, leftover - 1 );
+            wi += leftover - 1;
+         }
+         if ( MONITOR != null ) MONITOR.compressed( compressed );
+         return new Result( wi - wo, null );
+      }
+
+      /** Validate runs of alphabet characters between 'z' and 'y', each of which must be at a block boundary. */
+      @Override protected Result _validate ( final byte[] in, final int ri, final int rlen ) {
+         final PairTable table = getDecodeTable();
+         final byte[] map = table.map, decodeMap = getDecodeMap();
+         final Engine engine = this.engine;
+         int i = ri, start = ri, compressed = 0; // start of current run
+         for ( final int re = ri + rlen ; ; ) {
+            if ( engine != null ) i += engine.validate( decodeMap, in, i, re - i );
+            while ( i < re && map[ in[i] & 0xFF ] >= 0 ) i++;
+            if ( i == re ) break;
+            final byte e = in[i];
+            if ( e != 'z' && e != 'y' || ( i - start ) % 5 != 0 || validRun( table, in, start, i - start ) < 0 )
+               return locateError( in, ri, rlen );
+            compressed++;
+            start = ++i;
+         }
+         final int last = validRun( table, in, start, ri + rlen - start );
+         if ( last < 0 ) return locateError( in, ri, rlen );
+         return new Result( compressed * 4 + ( start - ri - compressed ) / 5 * 4 + last, null );
+      }
+
+      /** 'z' and 'y' are blocks of one character, so blocks are counted from the start, five characters or a run of 'z' or 'y' at a time. */
+      @Override int blockEnd ( final byte[] data, final int offset, final int length ) {
+         final Engine engine = this.engine;
+         int i = offset;
+         for ( final int end = offset + length ; i < end ; ) {
+            final byte e = data[i];
+            if ( e == 'z' || e == 'y' )
+               i += run( engine, data, i, end - i, e );
+            else if ( end - i >= 5 )
+               i += 5;
+            else
+               break;
+         }
+         return i;
+      }
+
+      /** Find block boundaries in parallel.
+        * Each part is scanned once to find how it maps each of the five possible starting alignments to
+        * an ending alignment and a block count.  Chaining these maps gives the alignment and output offset of every part.
+        */
+      @Override int[][] planParallel ( final byte[] data, final int offset, final int length, final ForkJoinPool pool ) {
+         final int chunk = PARALLEL_CHUNK, count = ( length - 1 ) / chunk + 1, end = offset + length;
+         final long[][] transfer = new long[ count ][ 5 ];
+         forkEach( pool, count, i -> {
+            final int start = offset + i * chunk;
+            scanAlignment( data, start, Math.min( start + chunk, end ), transfer[ i ] );
+         } );
+         final int[] starts = new int[ count + 1 ], outOffsets = new int[ count + 1 ];
+         long blocks = 0;
+         int phase = 0;
+         for ( int i = 0 ; i < count ; i++ ) {
+            // A block that straddles the split is decoded by the previous part.
+            starts[ i ] = Math.min( offset + i * chunk + ( 5 - phase ) % 5, end );
+            outOffsets[ i ] = checkLength( ( blocks + ( phase == 0 ? 0 : 1 ) ) * 4 );
+            blocks += transfer[ i ][ phase ] >>> 3;
+            phase = (int) ( transfer[ i ][ phase ] & 7 );
+         }
+         if ( phase == 1 ) throwMalformed( null );
+         starts[ count ] = end;
+         outOffsets[ count ] = checkLength( blocks * 4 + Math.max( 0, phase - 1 ) );
+         return new int[][]{ starts, outOffsets };
+      }
+
+      /** Count complete blocks and ending alignment for each starting alignment (0 to 4 characters into a block).
+        * 'z' and 'y' count as a complete block at alignment 0, and as normal characters otherwise.
+        * @param transfer receives ( block count &lt;&lt; 3 | ending alignment ) for each starting alignment
+        */
+      private static void scanAlignment ( final byte[] data, final int start, final int end, final long[] transfer ) {
+         final int[] phase = { 0, 1, 2, 3, 4 };
+         final long[] blocks = new long[ 5 ];
+         for ( int i = start, last = start ; i <= end ; i++ ) {
+            if ( i < end && data[i] != 'z' && data[i] != 'y' ) continue;
+            final int run = i - last; // Normal characters since last z / y
+            for ( int p = 0 ; p < 5 ; p++ ) {
+               blocks[p] += ( phase[p] + run ) / 5;
+               phase[p] = ( phase[p] + run ) % 5;
+            }
+            if ( i == end ) break;
+            for ( int p = 0 ; p < 5 ; p++ )
+               if ( phase[p] == 0 ) blocks[p]++;
+               else if ( ++phase[p] == 5 ) {
+                  phase[p] = 0;
+                  blocks[p]++;
+               }
+            last = i + 1;
+         }
+         for ( int p = 0 ; p < 5 ; p++ )
+            transfer[p] = blocks[p] << 3 | phase[p];
+      }
+
+      int checkLength ( final long length ) {
+         if ( length > Integer.MAX_VALUE - 8 ) throw new IllegalArgumentException( "Decoded data too large for an array" );
+         return (int) length;
+      }
+
+      @Override protected Result.Reason _invalidReason ( final byte e ) {
+         return e == 'z' || e == 'y' ? Result.Reason.MISPLACED_COMPRESSION : Result.Reason.INVALID_CHARACTER;
+      }
+
+      @Override protected CoderResult _decode ( final ByteBuffer in, final ByteBuffer out ) {
+         int ri = in.position(), wi = out.position();
+         final int re = in.limit(), we = out.limit();
+         final byte[] decodeMap = getDecodeMap();
+         if ( in.hasArray() && out.hasArray() ) {
+            // Same as the loop below on the backing arrays, but stops at malformed data and leaves it to the loop.
+            final byte[] src = in.array(), dst = out.array();
+            final int ro = in.arrayOffset(), wo = out.arrayOffset();
+            final PairTable table = getDecodeTable();
+            while ( re - ri > 0 && we - wi >= 4 ) {
+               final byte e = src[ ro + ri ];
+               if ( e == 'z' || e == 'y' ) {
+                  putInt( dst, wo + wi, e == 'z' ? 0 : 0x20202020 );
+                  ri += 1;
+               } else if ( re - ri >= 5 ) {
+                  final int i = ro + ri;
+                  final long sum = decodeBlock( table.map, e, src[i+1], src[i+2], src[i+3], src[i+4] );
+                  if ( sum >>> 32 != 0 ) break;
+                  putInt( dst, wo + wi, (int) sum );
+                  ri += 5;
+               } else
+                  break;
+               wi += 4;
+            }
+         }
+         try {
+            while ( ri < re ) {
+               final byte e = in.get( ri );
+               if ( e == 'z' || e == 'y' ) {
+                  if ( we - wi < 4 ) return CoderResult.OVERFLOW;
+                  putInt( out, wi, e == 'z' ? 0 : 0x20202020 );
+                  ri += 1;
+               } else if ( re - ri >= 5 ) {
+                  if ( we - wi < 4 ) return CoderResult.OVERFLOW;
+                  if ( ! _putData( decodeMap, in, ri, out, wi ) ) return CoderResult.malformedForLength( 5 );
+                  ri += 5;
+               } else
+                  break;
+               wi += 4;
+            }
+            return CoderResult.UNDERFLOW;
+         } finally {
+            in.position( ri );
+            out.position( wi );
+         }
+      }
+   }
+
+   /** This class decodes Ascii85 text as found in PostScript and PDF, and as written by {@link Ascii85Encoder#withLineLength(int)}.
+     * Whitespace (NUL, tab, line feed, vertical tab, form feed, carriage return, and space) is skipped anywhere,
+     * the text may start with "&lt;~", and "~&gt;" ends it.  Only whitespace may follow "~&gt;".
+     * 'z' and 'y' are expanded wherever a block starts, including after a line break in the middle of the text.
+     * <p>
+     * Blocks between whitespace are decoded with the block code and engine of the strict decoder, many at a time;
+     * only a block broken by whitespace is gathered character by character.
+     * Because a block may be broken anywhere, parallel decoding runs sequentially.
+     */
+   private static class AdobeAscii85Decoder extends Ascii85Decoder {
+      private static final long WHITESPACE = 1L | 1L << '\t' | 1L << '\n' | 1L << 0x0B | 1L << '\f' | 1L << '\r' | 1L << ' ';
+
+      private static boolean isSpace ( final byte e ) {
+         return e >= 0 && e <= ' ' && ( WHITESPACE >>> e & 1 ) != 0;
+      }
+
+      @Override public int calcDecodedLength ( byte[] encoded_data, int offset, int length ) {
+         long size = 0;
+         int chars = 0; // Characters of the current block
+         for ( int i = offset, len = offset + length ; i < len ; i++ ) {
+            final byte e = encoded_data[i];
+            if ( isSpace( e ) ) continue;
+            if ( e == '~' ) break;
+            if ( e == '<' && size == 0 && chars == 0 && i + 1 < len && encoded_data[i+1] == '~' )
+               i++;
+            else if ( chars == 0 && ( e == 'z' || e == 'y' ) )
+               size += 4;
+            else if ( ++chars == 5 ) {
+               size += 4;
+               chars = 0;
+            }
+         }
+         if ( chars == 1 ) throw new IllegalArgumentException( "Base85/" + getName() + " data ends with a single character." );
+         return checkLength( size + Math.max( 0, chars - 1 ) );
+      }
+
+      @Override public boolean test ( byte[] encoded_data, int offset, int length ) {
+         if ( offset < 0 || length < 0 || offset + length > encoded_data.length ) return false;
+         final ByteBuffer src = ByteBuffer.wrap( encoded_data, offset, length ), dst = ByteBuffer.allocate( 1024 );
+         CoderResult result;
+         do {
+            dst.clear();
+            result = _decode( src, dst, true );
+         } while ( result.isOverflow() );
+         return ! result.isError();
+      }
+
+      @Override protected boolean _test ( final CharSequence data, final int offset, final int length ) {
+         final byte[] in = new byte[ length ];
+         toAscii( data, offset, in, 0, length );
+         return test( in, 0, length );
+      }
+
+      @Override protected byte[] _decode ( byte[] in, int ri, int rlen ) {
+         if ( ri + rlen > in.length ) throw new ArrayIndexOutOfBoundsException( ri + rlen );
+         final ByteBuffer src = ByteBuffer.wrap( in, ri, rlen );
+         ByteBuffer dst = ByteBuffer.wrap( new byte[ (int) ( rlen * 0.8 ) + 4 ] );
+         CoderResult result;
+         while ( ( result = _decode( src, dst, true ) ).isOverflow() ) {
+            final ByteBuffer bigger = ByteBuffer.wrap( grow( dst.array(), dst.capacity() + 4 ) );
+            bigger.position( dst.position() );
+            dst = bigger;
+         }
+         if ( result.isError() ) throw throwMalformed( null );
+         return Arrays.copyOf( dst.array(), dst.position() );
+      }
+
+      @Override protected int _decode ( byte[] in, int ri, int rlen, final byte[] out, int wi ) {
+         if ( ri + rlen > in.length ) throw new ArrayIndexOutOfBoundsException( ri + rlen );
+         if ( wi < 0 || wi > out.length ) throw new ArrayIndexOutOfBoundsException( wi );
+         final ByteBuffer src = ByteBuffer.wrap( in, ri, rlen ), dst = ByteBuffer.wrap( out, wi, out.length - wi );
+         final CoderResult result = _decode( src, dst, true );
+         if ( result.isOverflow() ) throw new ArrayIndexOutOfBoundsException( "Output array is not big enough" );
+         if ( result.isError() ) throw throwMalformed( null );
+         return dst.position() - wi;
+      }
+
+      @Override protected Result _tryDecode ( final byte[] in, final int ri, final int rlen, final byte[] out, final int wi ) {
+         if ( wi < 0 || wi > out.length ) throw new ArrayIndexOutOfBoundsException( wi );
+         final ByteBuffer src = ByteBuffer.wrap( in, ri, rlen ), dst = ByteBuffer.wrap( out, wi, out.length - wi );
+         final CoderResult result = _decode( src, dst, true );
+         if ( result.isOverflow() ) throw new ArrayIndexOutOfBoundsException( "Output array is not big enough" );
+         if ( ! result.isError() ) return new Result( dst.position() - wi, null );
+         return malformed( in, src, result );
+      }
+
+      @Override protected Result _validate ( final byte[] in, final int ri, final int rlen ) {
+         final ByteBuffer src = ByteBuffer.wrap( in, ri, rlen ), dst = ByteBuffer.allocate( 1024 );
+         CoderResult result;
+         int length = 0;
+         do {
+            dst.clear();
+            result = _decode( src, dst, true );
+            length += dst.position();
+         } while ( result.isOverflow() );
+         return result.isError() ? malformed( in, src, result ) : new Result( length, null );
+      }
+
+      /** Report the first character that is neither whitespace nor in the alphabet, otherwise the block. */
+      private Result malformed ( final byte[] in, final ByteBuffer src, final CoderResult result ) {
+         final byte[] map = getDecodeTable().map;
+         int chars = 0;
+         for ( int i = src.position(), len = i + result.length() ; i < len ; i++ ) {
+            if ( isSpace( in[i] ) ) continue;
+            if ( map[ in[i] & 0xFF ] < 0 ) return new Result( i, _invalidReason( in[i] ) );
+            chars++;
+         }
+         return new Result( src.position(), chars == 1 ? Result.Reason.INVALID_LENGTH : Result.Reason.BLOCK_OVERFLOW );
+      }
+
+      /** A block may be broken by whitespace anywhere, so the text is decoded by {@link #wrap(InputStream)} on the calling thread. */
+      @Override public InputStream wrapParallel ( final InputStream is, final Executor executor, final int chunkSize, final int maxPending ) {
+         if ( executor == null ) throw new NullPointerException();
+         if ( chunkSize < 5 || maxPending < 1 ) throw new IllegalArgumentException( "Chunk size must be at least 5, and pending chunks at least 1" );
+         return wrap( is );
+      }
+
+      /** A block may be broken by whitespace anywhere, so the text is decoded as one part. */
+      @Override int[][] planParallel ( final byte[] data, final int offset, final int length, final ForkJoinPool pool ) {
+         return new int[][]{ { offset, offset + length }, { 0, calcDecodedLength( data, offset, length ) } };
+      }
+
+      @Override protected CoderResult _decode ( final ByteBuffer in, final ByteBuffer out ) {
+         return _decode( in, out, false );
+      }
+
+      /** Decode whole blocks between whitespace, many at a time, and gather the blocks that are broken by whitespace.
+        * The opening "&lt;~" is recognised only at the start of src, since the decoder does not keep state between calls.
+        */
+      @Override protected CoderResult _decode ( final ByteBuffer src, final ByteBuffer dst, final boolean endOfInput ) {
+         if ( ! src.hasArray() || ! dst.hasArray() ) return decodeDirect( src, dst, endOfInput );
+         final byte[] in = src.array(), out = dst.array(), decodeMap = getDecodeMap(), block = new byte[ 5 ];
+         final int ro = src.arrayOffset(), wo = dst.arrayOffset(), re = ro + src.limit(), we = wo + dst.limit();
+         final PairTable table = getDecodeTable();
+         final Engine engine = this.engine;
+         int ri = ro + src.position(), wi = wo + dst.position();
+         try {
+            for ( boolean first = true ; ; first = false ) {
+               while ( ri < re && isSpace( in[ri] ) ) ri++;
+               if ( ri == re ) return CoderResult.UNDERFLOW;
+               final byte e = in[ri];
+               if ( e == '~' ) {
+                  if ( ri + 1 == re ) return endOfInput ? CoderResult.malformedForLength( 1 ) : CoderResult.UNDERFLOW;
+                  if ( in[ri+1] != '>' ) return CoderResult.malformedForLength( 1 );
+                  int i = ri + 2;
+                  while ( i < re && isSpace( in[i] ) ) i++;
+                  ri = i;
+                  return i < re ? CoderResult.malformedForLength( 1 ) : CoderResult.UNDERFLOW;
+               }
+               if ( e == '<' && first ) {
+                  if ( ri + 1 == re && ! endOfInput ) return CoderResult.UNDERFLOW;
+                  if ( ri + 1 < re && in[ri+1] == '~' ) {
+                     ri += 2;
+                     continue;
+                  }
+               }
+               if ( e == 'z' || e == 'y' ) {
+                  if ( we - wi < 4 ) return CoderResult.OVERFLOW;
+                  putInt( out, wi, e == 'z' ? 0 : 0x20202020 );
+                  ri += 1;
+                  wi += 4;
+                  continue;
+               }
+               // Whole blocks, until one fails because of whitespace, delimiter, or malformed data
+               if ( engine != null && we - wi >= 4 ) { // The engine stops before 'z', 'y', or any character not in the alphabet
+                  final int done = engine.decode( decodeMap, in, ri, Math.min( re - ri, ( we - wi ) / 4 * 5 ), out, wi, true );
+                  ri += done * 5;
+                  wi += done * 4;
+               }
+               for ( ; re - ri >= 5 ; ri += 5, wi += 4 ) {
+                  final byte c = in[ri];
+                  if ( c == 'z' || c == 'y' || we - wi < 4 ) break; // A full output may still hold the last incomplete block
+                  final long sum = decodeBlock( table.map, c, in[ri+1], in[ri+2], in[ri+3], in[ri+4] );
+                  if ( sum >>> 32 != 0 ) break;
+                  putInt( out, wi, (int) sum );
+               }
+               if ( ri == re || isSpace( in[ri] ) || in[ri] == '~' || in[ri] == 'z' || in[ri] == 'y' ) continue;
+               // A block broken by whitespace, or the last block
+               int chars = 0, i = ri;
+               for ( ; chars < 5 && i < re ; i++ ) {
+                  final byte c = in[i];
+                  if ( c == '~' ) break;
+                  if ( ! isSpace( c ) ) block[ chars++ ] = c;
+               }
+               if ( chars == 5 ) {
+                  if ( we - wi < 4 ) return CoderResult.OVERFLOW;
+                  final long sum = decodeBlock( table.map, block[0], block[1], block[2], block[3], block[4] );
+                  if ( sum >>> 32 != 0 ) return CoderResult.malformedForLength( i - ri );
+                  putInt( out, wi, (int) sum );
+               } else {
+                  if ( i == re && ! endOfInput ) return CoderResult.UNDERFLOW;
+                  if ( chars == 1 ) return CoderResult.malformedForLength( i - ri );
+                  if ( we - wi < chars - 1 ) return CoderResult.OVERFLOW;
+                  final long sum = decodeDangling( table.map, block, 0, chars );
+                  if ( sum < 0 ) return CoderResult.malformedForLength( i - ri );
+                  putDangling( out, wi, (int) sum, chars - 1 );
+               }
+               ri = i;
+               wi += chars - 1;
+            }
+         } finally {
+            src.position( ri - ro );
+            dst.position( wi - wo );
+         }
+      }
+
+      /** Decode buffers not backed by an array, such as direct buffers, in place with absolute gets and puts.
+        * Same rules and results as the array path, one block at a time and without the engine.
+        */
+      private CoderResult decodeDirect ( final ByteBuffer src, final ByteBuffer dst, final boolean endOfInput ) {
+         final byte[] map = getDecodeTable().map;
+         final int re = src.limit(), we = dst.limit();
+         int ri = src.position(), wi = dst.position();
+         try {
+            for ( boolean first = true ; ; first = false ) {
+               while ( ri < re && isSpace( src.get( ri ) ) ) ri++;
+               if ( ri == re ) return CoderResult.UNDERFLOW;
+               final byte e = src.get( ri );
+               if ( e == '~' ) {
+                  if ( ri + 1 == re ) return endOfInput ? CoderResult.malformedForLength( 1 ) : CoderResult.UNDERFLOW;
+                  if ( src.get( ri+1 ) != '>' ) return CoderResult.malformedForLength( 1 );
+                  int i = ri + 2;
+                  while ( i < re && isSpace( src.get( i ) ) ) i++;
+                  ri = i;
+                  return i < re ? CoderResult.malformedForLength( 1 ) : CoderResult.UNDERFLOW;
+               }
+               if ( e == '<' && first ) {
+                  if ( ri + 1 == re && ! endOfInput ) return CoderResult.UNDERFLOW;
+                  if ( ri + 1 < re && src.get( ri+1 ) == '~' ) {
+                     ri += 2;
+                     continue;
+                  }
+               }
+               if ( e == 'z' || e == 'y' ) {
+                  if ( we - wi < 4 ) return CoderResult.OVERFLOW;
+                  putInt( dst, wi, e == 'z' ? 0 : 0x20202020 );
+                  ri += 1;
+                  wi += 4;
+                  continue;
+               }
+               // A block, which may be broken by whitespace, or the last block
+               long sum = 0;
+               int chars = 0, valid = 0, i = ri;
+               for ( ; chars < 5 && i < re ; i++ ) {
+                  final byte c = src.get( i );
+                  if ( c == '~' ) break;
+                  if ( isSpace( c ) ) continue;
+                  final int d = map[ c & 0xFF ];
+                  valid |= d;
+                  sum = sum * 85 + d;
+                  chars++;
+               }
+               if ( chars < 5 ) {
+                  if ( i == re && ! endOfInput ) return CoderResult.UNDERFLOW;
+                  if ( chars == 1 ) return CoderResult.malformedForLength( i - ri );
+               }
+               if ( we - wi < Math.max( chars - 1, 4 * ( chars / 5 ) ) ) return CoderResult.OVERFLOW;
+               for ( int pad = chars ; pad < 5 ; pad++ ) sum = sum * 85 + 84;
+               if ( valid < 0 || sum > 0xFFFFFFFFL ) return CoderResult.malformedForLength( i - ri );
+               if ( chars == 5 ) putInt( dst, wi, (int) sum );
+               else putDangling( dst, wi, (int) sum, chars - 1 );
+               ri = i;
+               wi += chars - 1;
+            }
+         } finally {
+            src.position( ri );
+            dst.position( wi );
+         }
+      }
+   }
+
+   /** Encoder and decoder of a custom alphabet, from {@link Base85#custom(String, String)}.
+     * The tables are built once per alphabet, and shared by every codec of the alphabet whatever its name,
+     * so that a custom codec runs the same code and engine as the built-in ones.
+     * Instances can be safely shared by multiple threads.
+     */
+   public static final class Custom {
+      private final String alphabet, name;
+      private final Encoder encoder;
+      private final Decoder decoder;
+      private final Map<String,Custom> names; // Codecs of other names, or null if this is one of them
+
+      private Custom ( final String alphabet ) {
+         if ( alphabet.length() != 85 ) throw new IllegalArgumentException( "Base85 alphabet must have 85 characters, not " + alphabet.length() );
+         final byte[] encodeMap = new byte[ 85 ], decodeMap = new byte[ 256 ];
+         Arrays.fill( decodeMap, (byte) -1 );
+         for ( int i = 0 ; i < 85 ; i++ ) {
+            final char c = alphabet.charAt( i );
+            if ( c >= 128 ) throw new IllegalArgumentException( "Base85 alphabet must be ASCII, not U+" + Integer.toHexString( c ).toUpperCase( Locale.ROOT ) );
+            if ( decodeMap[ c ] >= 0 ) throw new IllegalArgumentException( "Base85 alphabet must not repeat '" + c + "'" );
+            encodeMap[ i ] = (byte) c;
+            decodeMap[ c ] = (byte) i;
+         }
+         this.alphabet = alphabet;
+         name = "Custom";
+         encoder = new CustomEncoder( encodeMap, new PairTable( buildEncodePairs( encodeMap ), null ) );
+         decoder = new CustomDecoder( name, decodeMap, buildDecodeTable( decodeMap ) );
+         names = new ConcurrentHashMap<>();
+      }
+
+      private Custom ( final Custom tables, final String name ) {
+         alphabet = tables.alphabet;
+         this.name = name;
+         encoder = tables.encoder;
+         decoder = new CustomDecoder( name, tables.decoder.getDecodeMap(), tables.decoder.getDecodeTable() );
+         names = null;
+      }
+
+      /** Get the codec of this alphabet with the given name, sharing the tables of this codec. */
+      private Custom named ( final String name ) {
+         if ( this.name.equals( name ) ) return this;
+         final Custom codec = names.get( name );
+         return codec != null ? codec : cache( names, name, new Custom( this, name ) );
+      }
+
+      /** @return encoder of this alphabet */
+      public Encoder getEncoder () { return encoder; }
+      /** @return decoder of this alphabet */
+      public Decoder getDecoder () { return decoder; }
+      /** @return the 85 characters, of digit 0 to 84 */
+      public String getAlphabet () { return alphabet; }
+      /** @return name used in messages of malformed data */
+      public String getName () { return name; }
+   }
+
+   private static final class CustomEncoder extends Encoder {
+      private final byte[] encodeMap;
+      CustomEncoder ( final byte[] encodeMap, final PairTable encodePairs ) {
+         this.encodeMap = encodeMap;
+         super.encodePairs = encodePairs;
+      }
+      @Override protected byte[] getEncodeMap() { return encodeMap; }
+   }
+
+   private static final class CustomDecoder extends Decoder {
+      private final String name;
+      private final byte[] decodeMap;
+      CustomDecoder ( final String name, final byte[] decodeMap, final PairTable decodeTable ) {
+         this.name = name;
+         this.decodeMap = decodeMap;
+         super.decodeTable = decodeTable;
+      }
+      @Override protected String getName() { return name; }
+      @Override protected byte[] getDecodeMap() { return decodeMap; }
+   }
+
+   /** Check the offsets of a batch of packed messages.
+     * @return number of messages
+     */
+   private static int batchSize ( final byte[] data, final int[] offsets ) {
+      if ( offsets.length == 0 ) throw new IllegalArgumentException( "Offsets must end with the end of the last message" );
+      int last = 0;
+      for ( final int offset : offsets ) {
+         if ( offset < last ) throw new IllegalArgumentException( "Offsets must not be negative or decreasing" );
+         last = offset;
+      }
+      if ( last > data.length ) throw new IllegalArgumentException( "Data is not big enough" );
+      return offsets.length - 1;
+   }
+
+   /** Check the slices of a batch of messages.
+     * @return number of messages
+     */
+   private static int batchSize ( final byte[][] data, final int[] offsets, final int[] lengths ) {
+      if ( data.length != offsets.length || data.length != lengths.length ) throw new IllegalArgumentException( "Data, offsets, and lengths must have the same length" );
+      for ( int i = 0 ; i < data.length ; i++ )
+         if ( offsets[ i ] < 0 || lengths[ i ] < 0 || offsets[ i ] + lengths[ i ] > data[ i ].length || offsets[ i ] + lengths[ i ] < 0 )
+            throw new IllegalArgumentException( "Message " + i + " is not within its data" );
+      return data.length;
+   }
+
+   /** Check the blocks and the dangling characters of a run of alphabet characters.
+     * Only a block that starts with a digit of 82 or above can exceed 2^32-1, so other blocks are skipped.
+     * @return decoded length, or -1 if a block overflows or the run ends with a single character
+     */
+   private static int validRun ( final PairTable table, final byte[] in, int ri, final int rlen ) {
+      final byte[] map = table.map;
+      final int leftover = rlen % 5;
+      for ( final int re = ri + rlen - leftover ; ri < re ; ri += 5 )
+         if ( map[ in[ri] & 0xFF ] >= 82 && decodeBlock( map, in[ri], in[ri+1], in[ri+2], in[ri+3], in[ri+4] ) >>> 32 != 0 )
+            return -1;
+      if ( leftover == 1 || leftover > 0 && decodeDangling( map, in, ri, leftover ) < 0 ) return -1;
+      return rlen / 5 * 4 + Math.max( 0, leftover - 1 );
+   }
+
+   /** Decode two to four dangling characters, padded with the highest digit.
+     * @return decoded value, or -1 if malformed
+     */
+   private static long decodeDangling ( final byte[] map, final byte[] in, final int ri, final int leftover ) {
+      long sum = 0;
+      int valid = 0;
+      for ( int i = 0 ; i < 5 ; i++ ) {
+         final int d = i < leftover ? decodeChar( map, in[ ri + i ] ) : 84;
+         valid |= d;
+         sum = sum * 85 + d;
+      }
+      return valid < 0 || sum > 0xFFFFFFFFL ? -1 : sum;
+   }
+
+   /** Run task( i ) for i from 0 to count-1 in a ForkJoinPool, and wait for all to complete. */
+   private static void forkEach ( final ForkJoinPool pool, final int count, final IntConsumer task ) {
+      pool.invoke( new ForkEach( task, 0, count ) );
+   }
+
+   private static class ForkEach extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      private final IntConsumer task;
+      private final int from, to;
+
+      ForkEach ( IntConsumer task, int from, int to ) { this.task = task; this.from = from; this.to = to; }
+
+      @Override protected void compute () {
+         if ( to - from == 1 ) {
+            task.accept( from );
+            return;
+         }
+         final int mid = ( from + to ) >>> 1;
+         invokeAll( new ForkEach( task, from, mid ), new ForkEach( task, mid, to ) );
+      }
+   }
+
+   /** Cached 85^(9*2^k), for splitting big blocks.  Threads may race to extend it; any copy is correct. */
+   private static volatile BigInteger[] pow85Cache = { BigInteger.valueOf( 231616946283203125L ) }; // 85^9
+
+   private static BigInteger pow85 ( final int k ) {
+      BigInteger[] cache = pow85Cache;
+      if ( k >= cache.length ) {
+         int i = cache.length;
+         cache = Arrays.copyOf( cache, k + 1 );
+         for ( ; i <= k ; i++ )
+            cache[ i ] = cache[ i - 1 ].multiply( cache[ i - 1 ] );
+         pow85Cache = cache;
+      }
+      return cache[ k ];
+   }
+
+   /** Number of low digits to split from a big block: the largest 9*2^k that is less than digits. */
+   private static int splitDigits ( final int digits ) {
+      int k = 0;
+      while ( 9 << ( k + 1 ) < digits ) k++;
+      return k;
+   }
+
+   /** Write a value as the given number of base 85 digits, most significant first.
+     * Value must be less than 85^digits; up to 9 digits fit in a long.
+     */
+   private static void writeDigits ( final byte[] map, long sum, final byte[] out, final int wi, final int digits ) {
+      for ( int i = wi + digits - 1 ; i >= wi ; i-- ) {
+         out[ i ] = map[ (int) ( sum % 85 ) ];
+         sum /= 85;
+      }
+   }
+
+   /** Read up to 9 base 85 digits, most significant first.
+     * @return value of the digits, or -1 if any character is invalid
+     */
+   private static long readDigits ( final byte[] map, final byte[] in, final int ri, final int digits ) {
+      long sum = 0;
+      int err = 0;
+      for ( int i = ri, len = ri + digits ; i < len ; i++ ) {
+         final int digit = decodeChar( map, in[ i ] );
+         err |= digit;
+         sum = sum * 85 + digit;
+      }
+      return err < 0 ? -1 : sum;
+   }
+
+   /** Convert a big value into digits by dividing it by a power of 85 near half its digits, recursively.
+     * Big division is sub-quadratic, which makes the whole conversion sub-quadratic.
+     */
+   private static void toDigits ( final byte[] map, final BigInteger sum, final byte[] out, final int wi, final int digits ) {
+      if ( digits <= 9 ) {
+         writeDigits( map, sum.longValue(), out, wi, digits );
+         return;
+      }
+      final int k = splitDigits( digits ), low = 9 << k;
+      final BigInteger[] qr = sum.divideAndRemainder( pow85( k ) );
+      toDigits( map, qr[0], out, wi, digits - low );
+      toDigits( map, qr[1], out, wi + digits - low, low );
+   }
+
+   /** Convert digits into a big value by combining halves with a power of 85, recursively.
+     * @return decoded value, or null if any character is invalid
+     */
+   private static BigInteger fromDigits ( final byte[] map, final byte[] in, final int ri, final int digits ) {
+      if ( digits <= 9 ) {
+         final long sum = readDigits( map, in, ri, digits );
+         return sum < 0 ? null : BigInteger.valueOf( sum );
+      }
+      final int k = splitDigits( digits ), low = 9 << k;
+      final BigInteger hi = fromDigits( map, in, ri, digits - low ), lo = fromDigits( map, in, ri + digits - low, low );
+      if ( hi == null || lo == null ) return null;
+      return hi.multiply( pow85( k ) ).add( lo );
+   }
+
+   /** Encode a 128 bits value into 20 digits, dividing it by 85^4 five times in 32 bits limbs. */
+   private static void encode128 ( final byte[] map, long hi, long lo, final byte[] out, final int wi ) {
+      for ( int i = wi + 16 ; i >= wi ; i -= 4 ) {
+         long r = hi >>> 32;
+         final long q3 = r / Power4;
+         r = ( r % Power4 ) << 32 | hi & 0xFFFFFFFFL;
+         final long q2 = r / Power4;
+         r = ( r % Power4 ) << 32 | lo >>> 32;
+         final long q1 = r / Power4;
+         r = ( r % Power4 ) << 32 | lo & 0xFFFFFFFFL;
+         final long q0 = r / Power4;
+         hi = q3 << 32 | q2;
+         lo = q1 << 32 | q0;
+         writeDigits( map, r % Power4, out, i, 4 );
+      }
+   }
+
+   /** Decode 20 digits into a 128 bits value, multiplying it by 85^4 five times in 32 bits limbs.
+     * @return false if any character is invalid or if the value exceeds 128 bits
+     */
+   private static boolean decode128 ( final byte[] map, final byte[] in, final int ri, final byte[] out, final int wi ) {
+      long hi = 0, lo = 0;
+      for ( int i = ri ; i < ri + 20 ; i += 4 ) {
+         final long digits = readDigits( map, in, i, 4 );
+         if ( digits < 0 ) return false;
+         long t = ( lo & 0xFFFFFFFFL ) * Power4 + digits;
+         final long l0 = t & 0xFFFFFFFFL;
+         t = ( lo >>> 32 ) * Power4 + ( t >>> 32 );
+         final long l1 = t & 0xFFFFFFFFL;
+         t = ( hi & 0xFFFFFFFFL ) * Power4 + ( t >>> 32 );
+         final long h0 = t & 0xFFFFFFFFL;
+         t = ( hi >>> 32 ) * Power4 + ( t >>> 32 );
+         if ( t >>> 32 != 0 ) return false;
+         hi = t << 32 | h0;
+         lo = l1 << 32 | l0;
+      }
+      putInt( out, wi     , (int) ( hi >>> 32 ) );
+      putInt( out, wi +  4, (int) hi );
+      putInt( out, wi +  8, (int) ( lo >>> 32 ) );
+      putInt( out, wi + 12, (int) lo );
+      return true;
+   }
+
+   /** Count the leading bytes, up to length, that equal fill; on the engine if any, otherwise eight bytes per step.
+     * Used to compress and expand runs of Ascii85 'z' and 'y' in bulk. */
+   private static int run ( final Engine engine, final byte[] in, final int ri, final int length, final byte fill ) {
+      if ( engine != null ) return engine.run( in, ri, length, fill );
+      final int word = ( fill & 0xFF ) * 0x01010101, re = ri + length;
+      int i = ri;
+      while ( i <= re - 8 && ( ( getInt( in, i ) ^ word ) | ( getInt( in, i + 4 ) ^ word ) ) == 0 ) i += 8;
+      while ( i < re && in[i] == fill ) i++;
+      return i - ri;
+   }
+
+   /** Read a big-endian 32 bits integer from a byte array. */
+   /** Check whether a codec subclass declares a method, such as a deprecated extension point, between itself and base. */
+   private static boolean overrides ( Class<?> type, final Class<?> base, final String name, final Class<?>... params ) {
+      for ( ; type != base && type != null ; type = type.getSuperclass() ) try {
+         type.getDeclaredMethod( name, params );
+         return true;
+      } catch ( NoSuchMethodException | SecurityException ex ) {}
+      return false;
+   }
+
+   private static int getInt ( final byte[] in, final int ri ) {
+      return   in[ri  ]          << 24 |
+             ( in[ri+1] & 0xFF ) << 16 |
+             ( in[ri+2] & 0xFF ) <<  8 |
+             ( in[ri+3] & 0xFF );
+   }
+
+   /** Read the last one to three bytes of input as the high bytes of a big-endian integer, zero padded. */
+   private static int getDangling ( final byte[] in, final int ri, final int leftover ) {
+      int data = 0;
+      for ( int i = 0, shift = 24 ; i < leftover ; i++, shift -= 8 )
+         data |= ( in[ri+i] & 0xFF ) << shift;
+      return data;
+   }
+
+   /** Write a big-endian 32 bits integer into a byte array. */
+   private static void putInt ( final byte[] out, final int wi, final int data ) {
+      out[wi  ] = (byte) ( data >>> 24 );
+      out[wi+1] = (byte) ( data >>> 16 );
+      out[wi+2] = (byte) ( data >>>  8 );
+      out[wi+3] = (byte)   data;
+   }
+
+   /** Read a big-endian 32 bits integer from a byte buffer's absolute index, regardless of buffer's byte order. */
+   private static int getInt ( final ByteBuffer in, final int ri ) {
+      final int data = in.getInt( ri );
+      return in.order() == ByteOrder.BIG_ENDIAN ? data : Integer.reverseBytes( data );
+   }
+
+   private static int getDangling ( final ByteBuffer in, final int ri, final int leftover ) {
+      int data = 0;
+      for ( int i = 0, shift = 24 ; i < leftover ; i++, shift -= 8 )
+         data |= ( in.get( ri+i ) & 0xFF ) << shift;
+      return data;
+   }
+
+   /** Write a big-endian 32 bits integer to a byte buffer's absolute index, regardless of buffer's byte order. */
+   private static void putInt ( final ByteBuffer out, final int wi, final int data ) {
+      out.putInt( wi, out.order() == ByteOrder.BIG_ENDIAN ? data : Integer.reverseBytes( data ) );
+   }
+
+   private static void putDangling ( final ByteBuffer out, final int wi, final int data, final int count ) {
+      for ( int i = 0, shift = 24 ; i < count ; i++, shift -= 8 )
+         out.put( wi+i, (byte) ( data >>> shift ) );
+   }
+
+   /** Look up a character in a decode map, returning -1 if the character is out of range. */
+   private static int decodeChar ( final byte[] map, final byte e ) {
+      return ( e & 0xFF ) < map.length ? map[ e & 0xFF ] : -1;
+   }
+
+   /** Write the high one to three bytes of a big-endian integer into a byte array. */
+   private static void putDangling ( final byte[] out, final int wi, final int data, final int count ) {
+      for ( int i = 0, shift = 24 ; i < count ; i++, shift -= 8 )
+         out[wi+i] = (byte) ( data >>> shift );
+   }
+
+   /** Copy an array into a bigger one, growing by at least half of its length.
+     * @param buf array to grow
+     * @param minCapacity minimum length of new array
+     * @return new array with the content of buf
+     */
+   private static byte[] grow ( final byte[] buf, final int minCapacity ) {
+      if ( minCapacity < 0 ) throw new OutOfMemoryError( "Decoded data too large" );
+      final int half = Math.min( buf.length >> 1, Integer.MAX_VALUE - 8 - buf.length );
+      return Arrays.copyOf( buf, Math.max( buf.length + half, minCapacity ) );
+   }
+
+   /** Copy a heap buffer into a bigger one, keeping its position.
+     * @param buf buffer to grow
+     * @param minCapacity minimum capacity of new buffer
+     * @return new buffer with the content of buf
+     */
+   private static ByteBuffer grow ( final ByteBuffer buf, final int minCapacity ) {
+      final ByteBuffer bigger = ByteBuffer.wrap( grow( buf.array(), minCapacity ) );
+      bigger.position( buf.position() );
+      return bigger;
+   }
+
+   private static int arrayLength ( final long length ) {
+      if ( length > Integer.MAX_VALUE - 8 ) throw new IllegalArgumentException( "Encoded data too large for an array" );
+      return (int) length;
+   }
+
+   /** Length of encoded text after line breaks and delimiters are added; see {@link #frame(byte[], int, int, int, int, boolean)}. */
+   private static long framedLength ( final long length, final int width, final boolean delimited ) {
+      long text = length + ( delimited ? 2 : 0 ); // Up to the closing delimiter
+      if ( width > 0 && text > 0 ) {
+         final long lines = ( text - 1 ) / width + 1, last = text - ( lines - 1 ) * width;
+         text += lines - 1;
+         if ( delimited && last + 2 > width ) text++;
+      }
+      return delimited ? text + 2 : text;
+   }
+
+   /** Break encoded text into lines and add delimiters, moving it forward in the same array.
+     * Lines break after every width characters, counting the opening "&lt;~".
+     * The closing "~&gt;" moves to a new line when it does not fit on the last line.
+     * <p>
+     * The text must start far enough from wi that it is not overwritten before it is moved:
+     * from - wi must be at least framedLength( length ) - length - ( delimited ? 2 : 0 ), as if the text ends where the output ends.
+     * @param out array with the text, and to write the result to
+     * @param wi offset to write the result to
+     * @param from offset of the text
+     * @param length length of the text
+     * @param width line length, or 0 for no line break
+     * @param delimited true to add delimiters
+     * @return length of the result
+     */
+   private static int frame ( final byte[] out, final int wi, int from, final int length, final int width, final boolean delimited ) {
+      int text = length, w = wi;
+      if ( delimited ) {
+         out[ --from ] = '~';
+         out[ --from ] = '<';
+         text += 2;
+      }
+      if ( width == 0 ) {
+         System.arraycopy( out, from, out, w, text );
+         w += text;
+      } else
+         for ( int i = 0 ; i < text ; i += width ) {
+            if ( i > 0 ) out[ w++ ] = '\n';
+            final int len = Math.min( width, text - i );
+            System.arraycopy( out, from + i, out, w, len );
+            w += len;
+         }
+      if ( delimited ) {
+         if ( width > 0 && ( text - 1 ) % width + 3 > width ) out[ w++ ] = '\n';
+         out[ w++ ] = '~';
+         out[ w++ ] = '>';
+      }
+      return w - wi;
+   }
+
+   /** Break encoded text into lines and add delimiters, into a new array. */
+   private static byte[] frame ( final byte[] text, final int width, final boolean delimited ) {
+      final byte[] out = new byte[ arrayLength( framedLength( text.length, width, delimited ) ) ];
+      final int from = out.length - text.length - ( delimited ? 2 : 0 );
+      System.arraycopy( text, 0, out, from, text.length );
+      frame( out, 0, from, text.length, width, delimited );
+      return out;
+   }
+
+   /** Converts long runs of whole blocks, many blocks at a time.
+     * The scalar code is the reference.  An engine may stop before any block, and the scalar code carries on from there.
+     * Every block it does convert must be identical to the scalar result.
+     */
+   abstract static class Engine {
+      /** Encode up to the given number of four-byte blocks, writing exactly five bytes per encoded block.
+        * @return number of blocks encoded.  Stops before any zero block if stopZero, or any four spaces block if stopSpace.
+        */
+      abstract int encode ( byte[] encodeMap, byte[] in, int ri, int blocks, byte[] out, int wi, boolean stopZero, boolean stopSpace );
+      /** Decode five-character blocks from up to rlen characters, writing exactly four bytes per decoded block within out.
+        * @return number of blocks decoded.  Stops before any malformed block, or any 'z' or 'y' if stopZY.
+        */
+      abstract int decode ( byte[] decodeMap, byte[] in, int ri, int rlen, byte[] out, int wi, boolean stopZY );
+      /** Check that characters are in the alphabet, many at a time, without decoding them.
+        * @return number of leading characters checked valid.  Stops before any word or vector with an invalid character, including Ascii85 'z' and 'y'.
+        */
+      abstract int validate ( byte[] decodeMap, byte[] in, int ri, int rlen );
+      /** Count a run of one byte value many bytes at a time, such as zero blocks to compress or 'z' to expand.
+        * @return number of leading bytes, up to length, that equal fill
+        */
+      abstract int run ( byte[] in, int ri, int length, byte fill );
+      /** Build and keep the tables of a cached custom alphabet before its first use, whether or not the engine is at {@link #MAX_TABLES}. */
+      abstract void prepare ( byte[] encodeMap, byte[] decodeMap );
+      /** @return number of maps with tables, for tests */
+      abstract int tableCount ();
+      abstract String getName ();
+
+      /** Most maps of a table cache to build tables for on first use, such as the built-in maps and custom codecs beyond the cache.
+        * Room is left for the prepared tables of every cached custom alphabet, encode and decode.
+        * Other maps are left to the scalar code, so that custom codecs made and dropped in a loop do not grow the engine.
+        */
+      static final int MAX_TABLES = CUSTOM_CACHE * 2 + 16;
+
+      /** Get the tables of a map from a cache by identity, building them on first use while the cache has less than {@link #MAX_TABLES} maps.
+        * @return tables, or null if the map has none and the cache is full
+        */
+      static <T> T table ( final Map<byte[],T> cache, final byte[] map, final Function<byte[],T> build ) {
+         final T tables = cache.get( map );
+         return tables != null || cache.size() >= MAX_TABLES ? tables : cache.computeIfAbsent( map, build );
+      }
+   }
+
+   /** Get the name of the engine that converts long runs of blocks: "Scalar", "SWAR", or "Vector" with vector bits such as "Vector256".
+     * The engine is selected once, by Java version, hardware, and the {@link #ENGINE_PROPERTY} system property.
+     * All engines produce identical results; only speed differs.
+     * @return name of the live engine
+     */
+   public static String getEngineName () {
+      final Engine engine = ENGINE;
+      return engine == null ? "Scalar" : engine.getName();
+   }
+
+   /** Select the engine requested by {@link #ENGINE_PROPERTY}, or the next available one.
+     * @return engine, or null for scalar code
+     */
+   static Engine selectEngine () {
+      String choice;
+      try {
+         choice = System.getProperty( ENGINE_PROPERTY, "" ).trim().toLowerCase( Locale.ROOT );
+      } catch ( SecurityException ex ) {
+         choice = "";
+      }
+      if ( choice.equals( "scalar" ) ) return null;
+      for ( int i = Math.max( 0, Arrays.asList( ENGINE_NAMES ).indexOf( choice ) ) ; i < ENGINE_NAMES.length ; i++ ) {
+         final Engine engine = loadEngine( ENGINE_NAMES[ i ] );
+         if ( engine != null ) return engine;
+      }
+      return null;
+   }
+
+   /** Load an engine by name.  The SWAR engine exists only in the Java 9 part of a multi-release jar,
+     * and the vector engine only in the Java 17 part.
+     * @param name "vector" or "swar"
+     * @return new engine, or null when it does not exist in this runtime, or the runtime or hardware does not support it
+     */
+   static Engine loadEngine ( final String name ) {
+      final int i = Arrays.asList( ENGINE_NAMES ).indexOf( name );
+      if ( i < 0 ) return null;
+      try {
+         return (Engine) Class.forName( ENGINE_CLASSES[ i ] ).getDeclaredConstructor().newInstance();
+      } catch ( ReflectiveOperationException | LinkageError | RuntimeException ex ) {
+         return null;
+      }
+   }
+
+   /** Counters of all encoders and decoders since start or reset, when {@link #MONITOR_PROPERTY} is on.
+     * Counted are the array, string, sink, parallel, and tryDecode methods; streams, sessions, byte buffers, and primitive values are not.
+     * @see #getMonitor() */
+   public interface MonitorMXBean {
+      /** @return number of encode calls */
+      long getEncodeCount ();
+      /** @return number of bytes encoded */
+      long getEncodeBytesIn ();
+      /** @return number of encoded bytes written */
+      long getEncodeBytesOut ();
+      /** @return number of decode calls that succeeded */
+      long getDecodeCount ();
+      /** @return number of encoded bytes or chars decoded */
+      long getDecodeBytesIn ();
+      /** @return number of decoded bytes written */
+      long getDecodeBytesOut ();
+      /** @return number of decode calls that failed, which is malformed data unless an argument is wrong */
+      long getMalformedCount ();
+      /** @return number of Ascii85 'z' and 'y' written by encoders or expanded by decoders, including calls that later failed */
+      long getCompressedBlockCount ();
+      /** @return input length in bytes from which operations emit Flight Recorder events, or -1 if events are not supported */
+      int getEventThreshold ();
+      /** Set all counters to zero. */
+      void reset ();
+   }
+
+   /** Get the live monitor.
+     * @return monitor, or null if {@link #MONITOR_PROPERTY} is not on
+     */
+   public static MonitorMXBean getMonitor () {
+      return MONITOR;
+   }
+
+   /** Emits JDK Flight Recorder events.  The implementation exists only in the Java 11 part of a multi-release jar. */
+   abstract static class Recorder {
+      /** @return started event, or null if the event is not enabled */
+      abstract Object begin ();
+      /** End and commit an event from {@link #begin()}. */
+      abstract void end ( Object event, String variant, String operation, long bytesIn, long bytesOut );
+   }
+
+   /** Counts operations with LongAdders, which do not contend across threads, and passes big ones to the recorder. */
+   static final class Monitor implements MonitorMXBean {
+      private final LongAdder encodeCount = new LongAdder(), encodeIn = new LongAdder(), encodeOut = new LongAdder();
+      private final LongAdder decodeCount = new LongAdder(), decodeIn = new LongAdder(), decodeOut = new LongAdder();
+      private final LongAdder malformed = new LongAdder(), compressed = new LongAdder();
+      private final int threshold;
+      private final Recorder recorder;
+
+      Monitor ( final int threshold, final Recorder recorder ) {
+         this.threshold = threshold;
+         this.recorder = recorder;
+      }
+
+      /** Start an operation.
+        * @param length input length
+        * @return event to pass to encoded or decoded, or null */
+      Object begin ( final long length ) {
+         return recorder != null && length >= threshold ? recorder.begin() : null;
+      }
+
+      void encoded ( final Encoder encoder, final Object event, final long in, final long out ) {
+         encodeCount.increment();
+         encodeIn.add( in );
+         encodeOut.add( out );
+         if ( event != null ) recorder.end( event, variant( encoder ), "encode", in, out );
+      }
+
+      void decoded ( final Decoder decoder, final Object event, final long in, final long out ) {
+         decodeCount.increment();
+         decodeIn.add( in );
+         decodeOut.add( out );
+         if ( event != null ) recorder.end( event, decoder.getName(), "decode", in, out );
+      }
+
+      /** Count a decode call that threw or returned a malformed result. */
+      void failed () {
+         malformed.increment();
+      }
+
+      /** Count Ascii85 'z' or 'y' written or expanded in a run. */
+      void compressed ( final long count ) {
+         compressed.add( count );
+      }
+
+      private static String variant ( final Encoder encoder ) {
+         final String name = encoder.getClass().getSimpleName();
+         return name.endsWith( "Encoder" ) ? name.substring( 0, name.length() - 7 ) : encoder.getClass().getName();
+      }
+
+      @Override public long getEncodeCount () { return encodeCount.sum(); }
+      @Override public long getEncodeBytesIn () { return encodeIn.sum(); }
+      @Override public long getEncodeBytesOut () { return encodeOut.sum(); }
+      @Override public long getDecodeCount () { return decodeCount.sum(); }
+      @Override public long getDecodeBytesIn () { return decodeIn.sum(); }
+      @Override public long getDecodeBytesOut () { return decodeOut.sum(); }
+      @Override public long getMalformedCount () { return malformed.sum(); }
+      @Override public long getCompressedBlockCount () { return compressed.sum(); }
+      @Override public int getEventThreshold () { return recorder == null ? -1 : threshold; }
+      @Override public void reset () {
+         for ( LongAdder counter : new LongAdder[]{ encodeCount, encodeIn, encodeOut, decodeCount, decodeIn, decodeOut, malformed, compressed } )
+            counter.reset();
+      }
+   }
+
+   /** Create the monitor if {@link #MONITOR_PROPERTY} is "true", and register it as an MXBean.
+     * @return monitor, or null if monitoring is off
+     */
+   private static Monitor selectMonitor () {
+      int threshold = 4096;
+      try {
+         if ( ! Boolean.parseBoolean( System.getProperty( MONITOR_PROPERTY, "" ).trim() ) ) return null;
+         threshold = Integer.parseInt( System.getProperty( MONITOR_THRESHOLD_PROPERTY, "4096" ).trim() );
+      } catch ( SecurityException ex ) {
+         return null;
+      } catch ( NumberFormatException ignored ) {}
+      Recorder recorder;
+      try {
+         recorder = (Recorder) Class.forName( "sheepy.util.text.FlightRecorder" ).getDeclaredConstructor().newInstance();
+      } catch ( ReflectiveOperationException | LinkageError | RuntimeException ex ) {
+         recorder = null;
+      }
+      final Monitor monitor = new Monitor( threshold, recorder );
+      try {
+         ManagementFactory.getPlatformMBeanServer().registerMBean( monitor, new ObjectName( MONITOR_NAME ) );
+      } catch ( JMException | LinkageError | RuntimeException ignored ) {} // Counters still work without JMX
+      return monitor;
+   }
+
+   /** Holds lazily built tables.  The final fields make the tables safe to publish without lock or volatile,
+     * so that they can be read in hot loops as plain fields. */
+   private static final class PairTable {
+      final short[] pairs; // null for decode map
+      final byte[] map; // 256 entries decode map; null for pairs
+      PairTable ( short[] pairs, byte[] map ) { this.pairs = pairs; this.map = map; }
+   }
+
+   private static short[] buildEncodePairs ( byte[] encodeMap ) {
+      final short[] pairs = new short[ (int) Power2 ];
+      for ( int i = 0 ; i < Power2 ; i++ )
+         pairs[ i ] = (short) ( encodeMap[ i / 85 ] << 8 | encodeMap[ i % 85 ] );
+      return pairs;
+   }
+
+   private static PairTable buildDecodeTable ( byte[] decodeMap ) {
+      byte[] map = decodeMap;
+      if ( map.length < 256 ) {
+         map = Arrays.copyOf( decodeMap, 256 );
+         Arrays.fill( map, decodeMap.length, 256, (byte) -1 );
+      }
+      return new PairTable( null, map );
+   }
+
+   private static short[] buildDecodePairs ( byte[] decodeMap ) {
+      final short[] pairs = new short[ 128 * 128 ];
+      for ( int c1 = 0 ; c1 < 128 ; c1++ )
+         for ( int c2 = 0 ; c2 < 128 ; c2++ ) {
+            final int d1 = c1 < decodeMap.length ? decodeMap[ c1 ] : -1, d2 = c2 < decodeMap.length ? decodeMap[ c2 ] : -1;
+            pairs[ c1 << 7 | c2 ] = (short) ( d1 < 0 || d2 < 0 ? -1 : d1 * 85 + d2 );
+         }
+      return pairs;
+   }
+
+   /** Decode a block of five characters with five map lookups, without branching.
+     * Five digits never exceed 85^5-1, which is below 2^33, so overflow shows in the high word.
+     * @param map decode map of 256 entries
+     * @return block value as unsigned integer in the low 32 bits.
+     *         The high 32 bits are non-zero if any character is invalid or the value does not fit in 32 bits.
+     */
+   private static long decodeBlock ( final byte[] map, final byte c0, final byte c1, final byte c2, final byte c3, final byte c4 ) {
+      final int d0 = map[ c0 & 0xFF ], d1 = map[ c1 & 0xFF ], d2 = map[ c2 & 0xFF ], d3 = map[ c3 & 0xFF ], d4 = map[ c4 & 0xFF ];
+      final long sum = ( ( ( d0 * 85L + d1 ) * 85 + d2 ) * 85 + d3 ) * 85 + d4;
+      return sum | ( (long) ( ( d0 | d1 | d2 | d3 | d4 ) >> 31 ) << 32 ); // All high bits set if any lookup failed
+   }
+
+   /** Decode the block of five characters at the given index.  High 32 bits are non-zero if malformed; see {@link #decodeBlock(byte[], byte, byte, byte, byte, byte)}. */
+   private static long decodeBlock ( final PairTable table, final byte[] in, final int ri ) {
+      return decodeBlock( table.map, in[ri], in[ri+1], in[ri+2], in[ri+3], in[ri+4] );
+   }
+
+   private static long decodeBlock ( final PairTable table, final CharSequence in, final int ri ) {
+      return decodeBlock( table.map, ascii( in.charAt( ri ) ), ascii( in.charAt( ri+1 ) ), ascii( in.charAt( ri+2 ) ),
+            ascii( in.charAt( ri+3 ) ), ascii( in.charAt( ri+4 ) ) );
+   }
+
+   /** @return the character as a byte, or an invalid byte if it is not ASCII */
+   private static byte ascii ( final char c ) {
+      return c < 128 ? (byte) c : (byte) 0xFF;
+   }
+
+   private static void buildDecodeMap ( byte[] encodeMap, byte[] decodeMap ) {
+      Arrays.fill( decodeMap, (byte) -1 );
       for ( byte i = 0, len = (byte) encodeMap.length ; i < len ; i++ ) {
          byte b = encodeMap[ i ];
          decodeMap[ b ] = i;
       }
    }
 
-   private static Encoder RFC1924ENCODER, Z85ENCODER, ASCII85ENCODER;
-   private static Decoder RFC1924DECODER, Z85DECODER, ASCII85DECODER;
+   /** Output stream that encodes data in blocks through {@link Encoder#encode(ByteBuffer, ByteBuffer, boolean)}.
+     * Incomplete blocks are carried over to next write, and encoded on close.
+     * Line breaks and delimiters are added as the text is written, in the same layout as the array methods.
+     */
+   private static class EncoderOutputStream extends OutputStream {
+      private final Encoder encoder;
+      private final OutputStream os;
+      private final FramedTextStream framed; // Null if the encoder adds no line breaks and delimiters
+      private final ByteBuffer in = ByteBuffer.allocate( 8192 ), out = ByteBuffer.allocate( 10240 );
+      private boolean closed;
+
+      EncoderOutputStream ( Encoder encoder, OutputStream os ) {
+         this.encoder = encoder.unframed();
+         framed = FramedTextStream.of( encoder, os );
+         this.os = framed != null ? framed : os;
+      }
+
+      @Override public void write ( int b ) throws IOException {
+         ensureOpen();
+         in.put( (byte) b );
+         if ( ! in.hasRemaining() ) drain( false );
+      }
+
+      @Override public void write ( byte[] b, int off, int len ) throws IOException {
+         ensureOpen();
+         if ( off < 0 || len < 0 || len > b.length - off ) throw new ArrayIndexOutOfBoundsException();
+         while ( len > 0 ) {
+            int size = Math.min( len, in.remaining() );
+            in.put( b, off, size );
+            off += size;
+            len -= size;
+            if ( ! in.hasRemaining() ) drain( false );
+         }
+      }
+
+      /** Encode and write all complete blocks.  The last incomplete block is not written until close. */
+      @Override public void flush () throws IOException {
+         ensureOpen();
+         drain( false );
+         os.flush();
+      }
+
+      @Override public void close () throws IOException {
+         if ( closed ) return;
+         closed = true;
+         try {
+            drain( true );
+            if ( framed != null ) framed.finish();
+         } finally {
+            os.close();
+         }
+      }
+
+      private void drain ( boolean endOfInput ) throws IOException {
+         in.flip();
+         CoderResult result;
+         do {
+            result = encoder.encode( in, out, endOfInput );
+            os.write( out.array(), 0, out.position() );
+            out.clear();
+         } while ( result.isOverflow() );
+         in.compact();
+      }
+
+      private void ensureOpen () throws IOException {
+         if ( closed ) throw new IOException( "Stream closed" );
+      }
+   }
+
+   /** Output stream that adds line breaks and delimiters to encoded text, in the same layout as the array methods.
+     * The opening delimiter is written with the first text, and the closing delimiter by {@link #finish()}.
+     */
+   private static class FramedTextStream extends OutputStream {
+      private final OutputStream os;
+      private final int width;
+      private final boolean delimited;
+      private int column = -1; // Characters on the current line, -1 before any text is written
+
+      private FramedTextStream ( OutputStream os, int width, boolean delimited ) {
+         this.os = os;
+         this.width = width;
+         this.delimited = delimited;
+      }
+
+      /** @return stream that frames text written to os, or null if the encoder adds no line breaks and delimiters */
+      static FramedTextStream of ( Encoder encoder, OutputStream os ) {
+         final int width = encoder.lineLength();
+         return width == 0 && ! encoder.delimited() ? null : new FramedTextStream( os, width, encoder.delimited() );
+      }
+
+      @Override public void write ( int b ) throws IOException { write( new byte[]{ (byte) b }, 0, 1 ); }
+
+      @Override public void write ( byte[] b, int off, int len ) throws IOException {
+         start();
+         if ( width == 0 ) {
+            os.write( b, off, len );
+            return;
+         }
+         for ( final int end = off + len ; off < end ; ) {
+            if ( column == width ) {
+               os.write( '\n' );
+               column = 0;
+            }
+            final int size = Math.min( end - off, width - column );
+            os.write( b, off, size );
+            off += size;
+            column += size;
+         }
+      }
+
+      /** Write the opening delimiter if no text was written. */
+      void start () throws IOException {
+         if ( column >= 0 ) return;
+         column = 0;
+         if ( delimited ) write( new byte[]{ '<', '~' }, 0, 2 );
+      }
+
+      /** Write the closing delimiter, and the opening delimiter if no text was written. */
+      void finish () throws IOException {
+         start();
+         if ( delimited ) {
+            if ( width > 0 && column + 2 > width ) os.write( '\n' );
+            os.write( '~' );
+            os.write( '>' );
+         }
+      }
+
+      @Override public void flush () throws IOException { os.flush(); }
+      @Override public void close () throws IOException { os.close(); }
+   }
+
+   /** Input stream that decodes data in blocks through {@link Decoder#decode(ByteBuffer, ByteBuffer, boolean)}.
+     * Incomplete blocks, including Ascii85 'z' and 'y', are carried over to next read.
+     */
+   private static class DecoderInputStream extends InputStream {
+      private final Decoder decoder;
+      private final InputStream is;
+      private final ByteBuffer in = ByteBuffer.allocate( 10240 ), out = ByteBuffer.allocate( 8192 );
+      private boolean eof, closed;
+
+      DecoderInputStream ( Decoder decoder, InputStream is ) {
+         this.decoder = decoder;
+         this.is = is;
+         out.flip(); // out is kept in read mode, in is kept in write mode.
+      }
+
+      @Override public int read () throws IOException {
+         ensureOpen();
+         if ( ! fill() ) return -1;
+         return out.get() & 0xFF;
+      }
+
+      @Override public int read ( byte[] b, int off, int len ) throws IOException {
+         ensureOpen();
+         if ( off < 0 || len < 0 || len > b.length - off ) throw new IndexOutOfBoundsException();
+         if ( len == 0 ) return 0;
+         if ( ! fill() ) return -1;
+         len = Math.min( len, out.remaining() );
+         out.get( b, off, len );
+         return len;
+      }
+
+      @Override public int available () throws IOException {
+         ensureOpen();
+         return out.remaining();
+      }
+
+      @Override public void close () throws IOException {
+         if ( closed ) return;
+         closed = true;
+         is.close();
+      }
+
+      /** Make sure there is decoded data to read.
+        * @return false if end of stream is reached
+        */
+      private boolean fill () throws IOException {
+         while ( ! out.hasRemaining() ) {
+            if ( eof && in.position() == 0 ) return false;
+            if ( ! eof && in.hasRemaining() ) {
+               int len = is.read( in.array(), in.position(), in.remaining() );
+               if ( len < 0 ) eof = true;
+               else in.position( in.position() + len );
+            }
+            in.flip();
+            out.clear();
+            CoderResult result = decoder.decode( in, out, eof );
+            in.compact();
+            out.flip();
+            // Only a block broken by more whitespace than the buffer holds can leave the buffer full without output.
+            if ( result.isError() || ! in.hasRemaining() && ! out.hasRemaining() )
+               throw new IOException( "Malformed Base85/" + decoder.getName() + " data" );
+         }
+         return true;
+      }
+
+      private void ensureOpen () throws IOException {
+         if ( closed ) throw new IOException( "Stream closed" );
+      }
+   }
+
+   /** Data of one chunk of a parallel stream, and its output.  Reused once the output is written or read. */
+   private static final class Chunk {
+      final byte[] in;
+      int length, outLength;
+      byte[] out;
+      Chunk ( int size ) { in = new byte[ size ]; }
+   }
+
+   /** Chunks converted concurrently on an executor, and taken back in the order they are submitted.
+     * At most maxPending chunks are converting or waiting to be taken; the stream takes the oldest before submitting more,
+     * so that memory stays bounded whatever the speed of the executor and the other side of the stream.
+     */
+   private static final class ChunkPipeline {
+      private final Executor executor;
+      private final int chunkSize, maxPending;
+      private final ArrayDeque<FutureTask<Chunk>> pending = new ArrayDeque<>();
+      private final ArrayDeque<Chunk> free = new ArrayDeque<>();
+      private IOException error; // Failure of a chunk, thrown again on later calls
+
+      ChunkPipeline ( Executor executor, int chunkSize, int maxPending ) {
+         this.executor = executor;
+         this.chunkSize = chunkSize;
+         this.maxPending = maxPending;
+      }
+
+      /** Get an empty chunk, reusing one that has been recycled. */
+      Chunk newChunk () {
+         final Chunk chunk = free.poll();
+         if ( chunk == null ) return new Chunk( chunkSize );
+         chunk.length = 0;
+         return chunk;
+      }
+
+      void recycle ( Chunk chunk ) { free.push( chunk ); }
+      boolean isEmpty () { return pending.isEmpty(); }
+      boolean isFull () { return pending.size() >= maxPending; }
+      boolean isReady () { return ! pending.isEmpty() && pending.peek().isDone(); }
+
+      /** Start converting a chunk.  Call only when not full. */
+      void submit ( final Chunk chunk, final Runnable task ) throws IOException {
+         if ( error != null ) throw error;
+         final FutureTask<Chunk> future = new FutureTask<>( task, chunk );
+         try {
+            executor.execute( future );
+         } catch ( RejectedExecutionException ex ) {
+            throw error = new IOException( "Executor rejected Base85 chunk", ex );
+         }
+         pending.add( future );
+      }
+
+      /** Wait for the oldest chunk and take it.  A failed chunk cancels the rest. */
+      Chunk take () throws IOException {
+         if ( error != null ) throw error;
+         try {
+            final Chunk chunk = pending.peek().get();
+            pending.poll();
+            return chunk;
+         } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for Base85 chunk" );
+         } catch ( ExecutionException ex ) {
+            cancel();
+            final Throwable cause = ex.getCause();
+            if ( cause instanceof Error ) throw (Error) cause;
+            throw error = new IOException( cause.getMessage(), cause );
+         }
+      }
+
+      /** Cancel chunks that have not started, and drop the rest. */
+      void cancel () {
+         for ( FutureTask<Chunk> future : pending ) future.cancel( false );
+         pending.clear();
+      }
+   }
+
+   /** Output stream that encodes chunks of data concurrently, and writes them in order.
+     * Chunks are cut on block boundaries, so the text is the same as one sequential encoding.
+     */
+   private static final class ParallelEncoderOutputStream extends OutputStream {
+      private final Encoder encoder;
+      private final OutputStream os;
+      private final FramedTextStream framed; // Null if the encoder adds no line breaks and delimiters
+      private final ChunkPipeline pipeline;
+      private Chunk current; // Chunk being filled
+      private boolean closed;
+
+      ParallelEncoderOutputStream ( Encoder encoder, OutputStream os, ChunkPipeline pipeline ) {
+         this.encoder = encoder.unframed();
+         framed = FramedTextStream.of( encoder, os );
+         this.os = framed != null ? framed : os;
+         this.pipeline = pipeline;
+      }
+
+      @Override public void write ( int b ) throws IOException {
+         ensureOpen();
+         if ( current == null ) current = pipeline.newChunk();
+         current.in[ current.length++ ] = (byte) b;
+         if ( current.length == current.in.length ) submit( false );
+      }
+
+      @Override public void write ( byte[] b, int off, int len ) throws IOException {
+         ensureOpen();
+         if ( off < 0 || len < 0 || len > b.length - off ) throw new ArrayIndexOutOfBoundsException();
+         while ( len > 0 ) {
+            if ( current == null ) current = pipeline.newChunk();
+            final int size = Math.min( len, current.in.length - current.length );
+            System.arraycopy( b, off, current.in, current.length, size );
+            current.length += size;
+            off += size;
+            len -= size;
+            if ( current.length == current.in.length ) submit( false );
+         }
+      }
+
+      /** Encode and write all complete blocks.  The last incomplete block is not written until close. */
+      @Override public void flush () throws IOException {
+         ensureOpen();
+         if ( current != null && current.length >= 4 ) submit( false );
+         while ( ! pipeline.isEmpty() ) writeOldest();
+         if ( framed != null ) framed.start(); // Open the text on flush, as the sequential stream does
+         os.flush();
+      }
+
+      @Override public void close () throws IOException {
+         if ( closed ) return;
+         closed = true;
+         try {
+            if ( current != null ) submit( true );
+            while ( ! pipeline.isEmpty() ) writeOldest();
+            if ( framed != null ) framed.finish();
+         } finally {
+            pipeline.cancel();
+            os.close();
+         }
+      }
+
+      /** Submit the whole blocks of the current chunk, or all of it if it is the last, and carry the rest to a new chunk.
+        * Waits for the oldest chunk if the pipeline is full, and writes all chunks that are done. */
+      private void submit ( final boolean last ) throws IOException {
+         final Chunk chunk = current;
+         current = null;
+         final int end = last ? chunk.length : chunk.length & ~3;
+         if ( end < chunk.length ) {
+            current = pipeline.newChunk();
+            current.length = chunk.length - end;
+            System.arraycopy( chunk.in, end, current.in, 0, current.length );
+            chunk.length = end;
+         }
+         while ( pipeline.isFull() ) writeOldest();
+         pipeline.submit( chunk, () -> {
+            final int max = encoder.maxEncodedLength( chunk.in, 0, chunk.length );
+            if ( chunk.out == null || chunk.out.length < max ) chunk.out = new byte[ max ];
+            chunk.outLength = encoder._encode( chunk.in, 0, chunk.length, chunk.out, 0 );
+         } );
+         while ( pipeline.isReady() ) writeOldest();
+      }
+
+      private void writeOldest () throws IOException {
+         final Chunk chunk = pipeline.take();
+         os.write( chunk.out, 0, chunk.outLength );
+         pipeline.recycle( chunk );
+      }
+
+      private void ensureOpen () throws IOException {
+         if ( closed ) throw new IOException( "Stream closed" );
+      }
+   }
+
+   /** Input stream that reads text ahead in chunks, decodes them concurrently, and returns them in order.
+     * Each chunk is cut after its last whole block; the rest is carried to the next chunk.
+     */
+   private static final class ParallelDecoderInputStream extends InputStream {
+      private final Decoder decoder;
+      private final InputStream is;
+      private final ChunkPipeline pipeline;
+      private byte[] carry = new byte[ 0 ]; // Text after the last whole block of the previous chunk
+      private Chunk head; // Chunk being read
+      private int pos;
+      private boolean eof, closed;
+
+      ParallelDecoderInputStream ( Decoder decoder, InputStream is, ChunkPipeline pipeline ) {
+         this.decoder = decoder;
+         this.is = is;
+         this.pipeline = pipeline;
+      }
+
+      @Override public int read () throws IOException {
+         ensureOpen();
+         if ( ! fill() ) return -1;
+         return head.out[ pos++ ] & 0xFF;
+      }
+
+      @Override public int read ( byte[] b, int off, int len ) throws IOException {
+         ensureOpen();
+         if ( off < 0 || len < 0 || len > b.length - off ) throw new IndexOutOfBoundsException();
+         if ( len == 0 ) return 0;
+         if ( ! fill() ) return -1;
+         len = Math.min( len, head.outLength - pos );
+         System.arraycopy( head.out, pos, b, off, len );
+         pos += len;
+         return len;
+      }
+
+      @Override public int available () throws IOException {
+         ensureOpen();
+         return head == null ? 0 : head.outLength - pos;
+      }
+
+      @Override public void close () throws IOException {
+         if ( closed ) return;
+         closed = true;
+         pipeline.cancel();
+         is.close();
+      }
+
+      /** Make sure there is decoded data to read, reading and submitting chunks until the pipeline is full.
+        * @return false if end of stream is reached
+        */
+      private boolean fill () throws IOException {
+         while ( head == null || pos == head.outLength ) {
+            if ( head != null ) pipeline.recycle( head );
+            head = null;
+            while ( ! eof && ! pipeline.isFull() ) submit();
+            if ( pipeline.isEmpty() ) return false;
+            head = pipeline.take();
+            pos = 0;
+         }
+         return true;
+      }
+
+      /** Read a chunk of text and submit its whole blocks, or all of it at the end of the text. */
+      private void submit () throws IOException {
+         final Chunk chunk = pipeline.newChunk();
+         System.arraycopy( carry, 0, chunk.in, 0, carry.length );
+         chunk.length = carry.length;
+         while ( chunk.length < chunk.in.length ) {
+            final int len = is.read( chunk.in, chunk.length, chunk.in.length - chunk.length );
+            if ( len < 0 ) {
+               eof = true;
+               break;
+            }
+            chunk.length += len;
+         }
+         final int end = eof ? chunk.length : decoder.blockEnd( chunk.in, 0, chunk.length );
+         carry = Arrays.copyOfRange( chunk.in, end, chunk.length );
+         chunk.length = end;
+         if ( end == 0 ) {
+            pipeline.recycle( chunk );
+            return;
+         }
+         pipeline.submit( chunk, () -> {
+            chunk.out = decoder._decode( chunk.in, 0, chunk.length );
+            chunk.outLength = chunk.out.length;
+         } );
+      }
+
+      private void ensureOpen () throws IOException {
+         if ( closed ) throw new IOException( "Stream closed" );
+      }
+   }
+
+   /** Adapts a writer to a byte stream of ASCII characters. */
+   private static class AsciiWriterStream extends OutputStream {
+      private final Writer writer;
+      private final char[] buf = new char[ 10240 ];
+
+      AsciiWriterStream ( Writer writer ) { this.writer = writer; }
+
+      @Override public void write ( int b ) throws IOException { writer.write( b & 0xFF ); }
+      @Override public void write ( byte[] b, int off, int len ) throws IOException {
+         while ( len > 0 ) {
+            int size = Math.min( len, buf.length );
+            for ( int i = 0 ; i < size ; i++ ) buf[i] = (char) ( b[ off + i ] & 0xFF );
+            writer.write( buf, 0, size );
+            off += size;
+            len -= size;
+         }
+      }
+      @Override public void flush () throws IOException { writer.flush(); }
+      @Override public void close () throws IOException { writer.close(); }
+   }
+
+   /** A view of ASCII bytes as characters, so that encoded data can be appended without creating a string. */
+   private static final class AsciiSequence implements CharSequence {
+      final byte[] bytes;
+      int length;
+      AsciiSequence ( final byte[] bytes ) { this.bytes = bytes; }
+      @Override public int length () { return length; }
+      @Override public char charAt ( final int index ) { return (char) ( bytes[ index ] & 0xFF ); }
+      @Override public CharSequence subSequence ( final int start, final int end ) { return asciiString( bytes, start, end - start ); }
+      @Override public String toString () { return asciiString( bytes, 0, length ); }
+   }
+
+   /** Create a string from ASCII bytes.  The bytes are copied as Latin-1, which is compact on Java 9+ and skips charset decoding. */
+   @SuppressWarnings( "deprecation" )
+   private static String asciiString ( final byte[] data, final int offset, final int length ) {
+      return new String( data, 0, offset, length );
+   }
+
+   /** Copy characters into bytes.  Non-ASCII characters are mapped to an invalid byte. */
+   private static void toAscii ( final CharSequence data, final int offset, final byte[] out, final int wi, final int length ) {
+      for ( int i = 0 ; i < length ; i++ ) {
+         out[ wi + i ] = ascii( data.charAt( offset + i ) );
+      }
+   }
+
+   /** Java 9+ has an intrinsic ASCII fast path in new String(bytes, UTF_8); Java 8 does not. */
+   private static final boolean JAVA8 = System.getProperty( "java.specification.version", "" ).startsWith( "1." );
+
+   /** Create a string from UTF-8 bytes.  On Java 8, charset decoding is skipped if all bytes are ASCII. */
+   private static String utf8String ( final byte[] data, final int length ) {
+      if ( ! JAVA8 ) return new String( data, 0, length, UTF_8 );
+      for ( int i = 0 ; i < length ; i++ )
+         if ( data[ i ] < 0 ) return new String( data, 0, length, UTF_8 );
+      return asciiString( data, 0, length );
+   }
+
+   /** Adapts a reader to a byte stream.  Non-ASCII characters are mapped to an invalid byte. */
+   private static class AsciiReaderStream extends InputStream {
+      private final Reader reader;
+      private final char[] buf = new char[ 10240 ];
+
+      AsciiReaderStream ( Reader reader ) { this.reader = reader; }
+
+      @Override public int read () throws IOException {
+         int c = reader.read();
+         return c < 0 ? -1 : c < 128 ? c : 0xFF;
+      }
+      @Override public int read ( byte[] b, int off, int len ) throws IOException {
+         len = reader.read( buf, 0, Math.min( len, buf.length ) );
+         for ( int i = 0 ; i < len ; i++ ) {
+            char c = buf[i];
+            b[ off + i ] = c < 128 ? (byte) c : (byte) 0xFF;
+         }
+         return len;
+      }
+      @Override public void close () throws IOException { reader.close(); }
+   }
+
+   /** A buffer to buffer conversion, {@link Encoder#encode(ByteBuffer, ByteBuffer, boolean)} or {@link Decoder#decode(ByteBuffer, ByteBuffer, boolean)}. */
+   interface Converter {
+      CoderResult convert ( ByteBuffer src, ByteBuffer dst, boolean endOfInput );
+   }
+
+   static final int IO_BUFFER = 1 << 20; // Input buffer size of convert; output buffer is 5/4 of it.
+   static final long MAP_WINDOW = 1 << 28; // Bytes of a file mapped at a time by the command line tool.
+
+   /** Convert all data from a channel to another channel, so that heap use does not grow with data size.
+     * A file channel is memory-mapped window by window, and copied in bulk into a fixed size heap buffer;
+     * other channels are read into the same buffer.  The codec then runs on heap arrays, where the engines apply.
+     * Output is written through a fixed size heap buffer.
+     * @param converter encode or decode method
+     * @param src channel to read from
+     * @param dst channel to write to
+     * @param name name of the encoding, for error message
+     * @param window bytes of a file to map at a time
+     * @return number of bytes written
+     * @throws IOException if an I/O error occurs, or if the input is malformed
+     */
+   static long convert ( final Converter converter, final ReadableByteChannel src, final WritableByteChannel dst, final String name, final long window ) throws IOException {
+      final ByteBuffer in = ByteBuffer.allocate( IO_BUFFER ), out = ByteBuffer.allocate( IO_BUFFER / 4 * 5 + 5 );
+      final FileChannel file = src instanceof FileChannel && isMappable( (FileChannel) src ) ? (FileChannel) src : null;
+      final long size = file == null ? 0 : file.size();
+      long mapped = file == null ? 0 : file.position(), written = 0;
+      MappedByteBuffer map = null;
+      for ( long read = 0 ; ; ) {
+         boolean eof = false;
+         if ( file != null ) {
+            while ( in.hasRemaining() && mapped < size ) {
+               if ( map == null || ! map.hasRemaining() ) map = file.map( FileChannel.MapMode.READ_ONLY, mapped, Math.min( window, size - mapped ) );
+               final ByteBuffer part = map.duplicate();
+               part.limit( part.position() + Math.min( in.remaining(), part.remaining() ) );
+               mapped += part.remaining();
+               map.position( part.limit() );
+               in.put( part );
+            }
+            eof = mapped == size;
+         } else
+            while ( ! eof && in.hasRemaining() )
+               if ( src.read( in ) < 0 ) eof = true;
+         in.flip();
+         written += convert( converter, in, out, dst, eof, read, name );
+         read += in.position();
+         in.compact();
+         if ( eof ) return written;
+      }
+   }
+
+   /** Convert the data of a buffer, writing the output buffer to dst whenever it is full.
+     * An incomplete block is left in the buffer unless eof is true.
+     * @param offset input position of the buffer's index 0, for error message
+     * @return number of bytes written
+     */
+   private static long convert ( final Converter converter, final ByteBuffer in, final ByteBuffer out, final WritableByteChannel dst,
+         final boolean eof, final long offset, final String name ) throws IOException {
+      long written = 0;
+      CoderResult result;
+      do {
+         result = converter.convert( in, out, eof );
+         out.flip();
+         while ( out.hasRemaining() ) written += dst.write( out );
+         out.clear();
+      } while ( result.isOverflow() );
+      if ( result.isError() )
+         throw new IOException( "Malformed Base85/" + name + " data at input byte " + ( offset + in.position() ) );
+      return written;
+   }
+
+   /** A regular file can be mapped; a pipe or terminal opened as a file channel cannot. */
+   private static boolean isMappable ( final FileChannel file ) {
+      try {
+         return file.size() > 0;
+      } catch ( IOException ex ) {
+         return false;
+      }
+   }
+
+   private static Encoder RFC1924ENCODER, ASCII85ENCODER;
+   private static Z85Encoder Z85ENCODER;
+   private static Z85Decoder Z85DECODER;
+   private static Decoder RFC1924DECODER, ASCII85DECODER, ADOBEASCII85DECODER;
 
    public static Encoder getRfc1924Encoder() {
       if ( RFC1924ENCODER == null ) RFC1924ENCODER = new Rfc1924Encoder();
@@ -643,28 +4475,174 @@ public class Base85 {
       if ( Z85DECODER == null ) Z85DECODER = new Z85Decoder();
       return Z85DECODER;
    }
+   /** Encode a 32 bytes CurveZMQ key into its 40 characters Z85 form.
+     * @param key key to encode
+     * @return encoded key
+     * @throws IllegalArgumentException if key is not 32 bytes long
+     * @see Z85Encoder#encodeKey(byte[])
+     */
+   public static String encodeZ85Key ( final byte[] key ) {
+      getZ85Encoder();
+      return Z85ENCODER.encodeKey( key );
+   }
+   /** Encode a 32 bytes CurveZMQ key into 40 bytes of an array.
+     * @param key array with key to encode
+     * @param offset byte offset that the key starts
+     * @param out array to write the encoded key to
+     * @param out_offset byte offset to start writing the encoded key to
+     * @throws IllegalArgumentException if either array is not big enough
+     * @see Z85Encoder#encodeKey(byte[], int, byte[], int)
+     */
+   public static void encodeZ85Key ( final byte[] key, final int offset, final byte[] out, final int out_offset ) {
+      getZ85Encoder();
+      Z85ENCODER.encodeKey( key, offset, out, out_offset );
+   }
+   /** Decode a 40 characters Z85 CurveZMQ key into 32 bytes.
+     * @param data encoded key
+     * @return decoded key
+     * @throws IllegalArgumentException if data is not 40 characters long or is malformed
+     * @see Z85Decoder#decodeKey(CharSequence)
+     */
+   public static byte[] decodeZ85Key ( final CharSequence data ) {
+      getZ85Decoder();
+      return Z85DECODER.decodeKey( data );
+   }
+   /** Decode a 40 characters Z85 CurveZMQ key into 32 bytes of an array.
+     * @param data encoded key
+     * @param out array to write the decoded key to
+     * @param out_offset byte offset to start writing the decoded key to
+     * @throws IllegalArgumentException if data is not 40 characters long or is malformed, or if out is not big enough
+     * @see Z85Decoder#decodeKey(CharSequence, byte[], int)
+     */
+   public static void decodeZ85Key ( final CharSequence data, final byte[] out, final int out_offset ) {
+      getZ85Decoder();
+      Z85DECODER.decodeKey( data, out, out_offset );
+   }
+   /** Get the shared mutable Ascii85 encoder, with "z" and "y" compression unless changed by its deprecated setters.
+     * New code should use {@link #getAscii85Encoder(boolean, boolean)}, which cannot be changed by other callers.
+     * @return shared Ascii85 encoder
+     */
    public static Encoder getAscii85Encoder() {
       if ( ASCII85ENCODER == null ) ASCII85ENCODER = new Ascii85Encoder();
       return ASCII85ENCODER;
    }
+   /** Get a shared immutable Ascii85 encoder.  Use its {@code with} methods for line breaks and delimiters.
+     * @param zeroCompression true to encode four zeros into "z"
+     * @param spaceCompression true to encode four spaces into "y"
+     * @return shared Ascii85 encoder
+     */
+   public static Ascii85Encoder getAscii85Encoder ( final boolean zeroCompression, final boolean spaceCompression ) {
+      return Ascii85Encoder.of( zeroCompression, spaceCompression, 0, false );
+   }
    public static Decoder getAscii85Decoder() {
       if ( ASCII85DECODER == null ) ASCII85DECODER = new Ascii85Decoder();
       return ASCII85DECODER;
    }
+   /** Get the shared decoder of Ascii85 text as found in PostScript and PDF:
+     * whitespace is skipped, and the text may be wrapped in "&lt;~" and "~&gt;".
+     * @return shared Ascii85 text decoder
+     * @see Ascii85Encoder#withLineLength(int)
+     */
+   public static Decoder getAdobeAscii85Decoder() {
+      if ( ADOBEASCII85DECODER == null ) ADOBEASCII85DECODER = new AdobeAscii85Decoder();
+      return ADOBEASCII85DECODER;
+   }
 
-   public static void main( String[] args ) {
-      /*
-      System.out.println( e.encode( "!\"#$%&'()*+,-./0123456789:;<=>?@ABCDEFGHIJKLMNOPQRSTUVWXYZ[\\]^_`abcdefghijklmnopqrstu" ) );
-      System.out.println( e.encode( "測試中" ) );
-      System.out.println( e.encode( "اختبارات" ) );
-      System.out.println( e.encode( "A" ) );
-      System.out.println( e.encode( "AB" ) );
-      System.out.println( e.encode( "ABC" ) );
-      System.out.println( e.encode( "ABCD" ) );
-      System.out.println( e.encode( "ABCDE" ) );
-      System.out.println( e.encode( "ABCDEF" ) );
-      System.out.println( e.encode( "ABCDEFG" ) );
-      System.out.println( e.encode( "ABCDEFGH" ) );
-      */
+   // Custom codecs by alphabet.  Each holds the tables of its alphabet, and its codecs of other names.
+   private static final Map<String,Custom> CUSTOM = new ConcurrentHashMap<>();
+   // Most alphabets, and names per alphabet, to cache; so that callers passing many of them do not grow the cache forever.
+   static final int CUSTOM_CACHE = 64;
+
+   /** Get the codec of a custom alphabet, named "Custom".
+     * @param alphabet 85 distinct ASCII characters, of digit 0 to 84
+     * @return shared codec of the alphabet
+     * @throws IllegalArgumentException if alphabet is not 85 distinct ASCII characters
+     * @see #custom(String, String)
+     */
+   public static Custom custom ( final String alphabet ) {
+      return custom( alphabet, "Custom" );
+   }
+
+   /** Get the codec of a custom alphabet, such as a URL or cookie safe one.
+     * Decode map, pair tables, and engine tables are built on the first call of each alphabet, and kept for the life of the class;
+     * later calls only look up the alphabet and name.  Cached custom codecs run the same engines as the built-in ones.
+     * <p>
+     * Up to 64 alphabets, each with up to 64 names, are cached.  Beyond that, each call builds a new codec,
+     * so a caller with more alphabets or names should keep the codecs it gets.
+     * Such codecs get engine tables only while the engine has room for them, and otherwise run the scalar code.
+     * @param alphabet 85 distinct ASCII characters, of digit 0 to 84
+     * @param name name of the variant, used in messages of malformed data
+     * @return codec of the alphabet and name
+     * @throws IllegalArgumentException if alphabet is not 85 distinct ASCII characters, or name is empty
+     */
+   public static Custom custom ( final String alphabet, final String name ) {
+      if ( name.isEmpty() ) throw new IllegalArgumentException( "Name must not be empty" );
+      Custom codec = CUSTOM.get( alphabet );
+      if ( codec == null ) codec = cache( CUSTOM, alphabet, new Custom( alphabet ) );
+      return codec.named( name );
+   }
+
+   /** Add a codec to a custom codec cache unless the cache is full, and prepare the engine for it once added.
+     * A codec that is not added, because the cache is full or another thread added one first, leaves nothing in the engine.
+     * @return the codec in the cache, which is a codec added by another thread first, or the given codec
+     */
+   private static Custom cache ( final Map<String,Custom> cache, final String key, final Custom codec ) {
+      if ( cache.size() >= CUSTOM_CACHE ) return codec;
+      final Custom old = cache.putIfAbsent( key, codec );
+      if ( old != null ) return old;
+      final Engine engine = ENGINE;
+      if ( engine != null ) engine.prepare( codec.encoder.getEncodeMap(), codec.decoder.getDecodeMap() );
+      return codec;
    }
+
+   /** Command line tool.  Encode or decode a file, or standard input, into a file or standard output.
+     * <pre>java sheepy.util.text.Base85 [-e|-d] [--z85|--rfc1924|--ascii85] [input|- [output|-]]</pre>
+     * Default is to encode with Z85.  Input files are read through memory-mapped windows, so heap use is the same for any file size.
+     * Ascii85 input is decoded like PostScript and PDF, skipping whitespace and the "&lt;~ ~&gt;" delimiters.
+     * Exit status is 1 on I/O error or malformed input, and 2 on wrong arguments.
+     * @param args command line arguments
+     */
+   public static void main ( String[] args ) {
+      boolean encode = true;
+      Encoder encoder = getZ85Encoder();
+      Decoder decoder = getZ85Decoder();
+      final List<String> files = new ArrayList<>( 2 );
+      for ( String arg : args ) switch ( arg ) {
+         case "-e" : case "--encode" : encode = true; break;
+         case "-d" : case "--decode" : encode = false; break;
+         case "--z85"     : encoder = getZ85Encoder();     decoder = getZ85Decoder();     break;
+         case "--rfc1924" : encoder = getRfc1924Encoder(); decoder = getRfc1924Decoder(); break;
+         case "--ascii85" : encoder = getAscii85Encoder(); decoder = getAdobeAscii85Decoder(); break; // Text may have line breaks or <~ ~>
+         case "-h" : case "--help" :
+            System.out.println( USAGE );
+            return;
+         default :
+            if ( arg.length() > 1 && arg.startsWith( "-" ) || files.size() >= 2 ) {
+               System.err.println( "Base85: unknown argument " + arg + "\n" + USAGE );
+               System.exit( 2 );
+            }
+            files.add( arg );
+      }
+      final String input = files.size() > 0 ? files.get( 0 ) : "-", output = files.size() > 1 ? files.get( 1 ) : "-";
+      try ( ReadableByteChannel src = "-".equals( input ) ? new FileInputStream( FileDescriptor.in ).getChannel() : FileChannel.open( Paths.get( input ), StandardOpenOption.READ );
+            WritableByteChannel dst = "-".equals( output ) ? new FileOutputStream( FileDescriptor.out ).getChannel()
+                  : FileChannel.open( Paths.get( output ), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING ) ) {
+         if ( encode )
+            convert( encoder::encode, src, dst, decoder.getName(), MAP_WINDOW );
+         else
+            convert( decoder::decode, src, dst, decoder.getName(), MAP_WINDOW );
+      } catch ( NoSuchFileException ex ) {
+         System.err.println( "Base85: file not found: " + ex.getMessage() );
+         System.exit( 1 );
+      } catch ( IOException | RuntimeException ex ) {
+         System.err.println( "Base85: " + ex.getMessage() );
+         System.exit( 1 );
+      }
+   }
+
+   private static final String USAGE = "Usage: java sheepy.util.text.Base85 [-e|-d] [--z85|--rfc1924|--ascii85] [input|- [output|-]]\n"
+      + "  -e, --encode   encode binary input (default)\n"
+      + "  -d, --decode   decode Base85 input\n"
+      + "  --z85, --rfc1924, --ascii85   alphabet (default Z85)\n"
+      + "Input and output default to standard input and standard output.";
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package sheepy.util.text;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorder of JDK Flight Recorder events, for Java 11+.
+ * Events are disabled until a recording enables "sheepy.util.text.Base85", e.g. on JDK 17+ <br>
+ * <code>java -Dsheepy.util.text.Base85.monitor=true -XX:StartFlightRecording:+sheepy.util.text.Base85#enabled=true ...</code> <br>
+ * or in a custom .jfc file, where a duration threshold can also be set.
+ */
+final class FlightRecorder extends Base85.Recorder {
+
+   @Name( "sheepy.util.text.Base85" )
+   @Label( "Base85 Operation" )
+   @Category( "Base85" )
+   @Description( "Encoding or decoding of at least the monitor threshold in bytes" )
+   static final class Base85Event extends Event {
+      @Label( "Variant" ) String variant;
+      @Label( "Operation" ) String operation;
+      @Label( "Bytes In" ) @DataAmount long bytesIn;
+      @Label( "Bytes Out" ) @DataAmount long bytesOut;
+   }
+
+   @Override Object begin () {
+      final Base85Event event = new Base85Event();
+      if ( ! event.isEnabled() ) return null;
+      event.begin();
+      return event;
+   }
+
+   @Override void end ( Object e, String variant, String operation, long bytesIn, long bytesOut ) {
+      final Base85Event event = (Base85Event) e;
+      event.end();
+      if ( ! event.shouldCommit() ) return;
+      event.variant = variant;
+      event.operation = operation;
+      event.bytesIn = bytesIn;
+      event.bytesOut = bytesOut;
+      event.commit();
+   }
+}
@@ -0,0 +1,243 @@
+package sheepy.util.text;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.GT;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.NE;
+
+/**
+ * Block engine on the incubating Vector API, for Java 17+ with <code>--add-modules jdk.incubator.vector</code>.
+ * Each iteration converts one vector of four-byte blocks: 16 blocks with 512 bits vectors, or 8 blocks with 256 bits.
+ *
+ * Encoding splits each block with the same reciprocal multiplications as the scalar code, then maps digits to characters with shuffles.
+ * Decoding maps and validates characters with shuffles, and checks overflow before writing anything.
+ * Validation maps one vector of characters per step with the same shuffles, without decoding.
+ * Runs of Ascii85 zero blocks, spaces, 'z', and 'y' are measured one vector per step.
+ * Characters are moved between five-per-block and four-per-block layouts with two-vector shuffles.
+ *
+ * Needs little endian hardware with 256 or 512 bits vectors; the constructor throws otherwise and Base85 falls back to the next engine.
+ */
+final class VectorEngine extends Base85.Engine {
+   private static final VectorSpecies<Byte> BS = ByteVector.SPECIES_PREFERRED;
+   private static final VectorSpecies<Integer> IS = IntVector.SPECIES_PREFERRED;
+   private static final int VL = BS.length(), B = IS.length(); // Bytes and blocks per vector
+   // Quarter vector holds the encoded characters after the first full vector
+   private static final VectorSpecies<Byte> QS = VectorSpecies.of( byte.class, VectorShape.forBitSize( BS.vectorBitSize() / 4 ) );
+
+   private static final VectorShuffle<Byte> BSWAP = VectorShuffle.fromOp( BS, i -> ( i & ~3 ) | ( 3 - ( i & 3 ) ) );
+   // Encode: gather the last digit of each block, then get the first VL characters, and next B characters, from
+   // the first four digits of each block and the last digits.
+   private static final VectorShuffle<Byte> PACK_LAST = VectorShuffle.fromOp( BS, i -> i < B ? i * 4 : 0 );
+   private static final Shuffle2 TO_CHARS1 = new Shuffle2( VectorEngine::fromDigits );
+   private static final Shuffle2 TO_CHARS2 = new Shuffle2( i -> i < B ? fromDigits( VL + i ) : 0 );
+   // Decode: first four digits of each block, and the last digits, from VL characters and the next B characters.
+   private static final Shuffle2 TO_DIGITS1 = new Shuffle2( i -> i / 4 * 5 + i % 4 );
+   private static final Shuffle2 TO_DIGITS2 = new Shuffle2( i -> i % 4 == 0 ? i / 4 * 5 + 4 : 0 );
+   private static final VectorMask<Byte> TAIL = BS.indexInRange( 0, B );
+   private static final int CHUNK = 64; // Vectors per encoding pass
+   // Quotients of a chunk, kept per thread so that encoding allocates nothing.
+   private static final ThreadLocal<int[]> QUOTIENTS = ThreadLocal.withInitial( () -> new int[ CHUNK * B * 2 ] );
+
+   private static int fromDigits ( int ch ) { // Character index to digit lane; the fifth digits are in the second vector.
+      final int block = ch / 5, digit = ch % 5;
+      return digit < 4 ? block * 4 + digit : VL + block;
+   }
+
+   /** Rearrange lanes from two vectors.  Vector.rearrange( shuffle, v ) does the same, but is many times slower on JDK 17. */
+   private static final class Shuffle2 {
+      private final VectorShuffle<Byte> first, second;
+      private final VectorMask<Byte> fromSecond;
+
+      /** @param source lane of each result lane; VL and above are lanes of the second vector */
+      Shuffle2 ( IntUnaryOperator source ) {
+         final boolean[] mask = new boolean[ VL ];
+         for ( int i = 0 ; i < VL ; i++ ) mask[i] = source.applyAsInt( i ) >= VL;
+         first = VectorShuffle.fromOp( BS, i -> source.applyAsInt( i ) < VL ? source.applyAsInt( i ) : 0 );
+         second = VectorShuffle.fromOp( BS, i -> source.applyAsInt( i ) >= VL ? source.applyAsInt( i ) - VL : 0 );
+         fromSecond = VectorMask.fromArray( BS, mask, 0 );
+      }
+
+      ByteVector apply ( ByteVector a, ByteVector b ) {
+         return a.rearrange( first ).blend( b.rearrange( second ), fromSecond );
+      }
+   }
+
+   // Lookup tables by identity of encode map or decode map, each bounded by MAX_TABLES.
+   private final Map<byte[],byte[]> encodeTables = new ConcurrentHashMap<>(), decodeTables = new ConcurrentHashMap<>();
+
+   VectorEngine () {
+      if ( ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN || VL != 32 && VL != 64 )
+         throw new UnsupportedOperationException( "Vector engine needs little endian and 256 or 512 bits vectors" );
+      selfTest();
+   }
+
+   @Override String getName () { return "Vector" + BS.vectorBitSize(); }
+   @Override int tableCount () { return encodeTables.size() + decodeTables.size(); }
+
+   @Override void prepare ( byte[] encodeMap, byte[] decodeMap ) {
+      encodeTables.computeIfAbsent( encodeMap, map -> table( map, 85 ) );
+      decodeTables.computeIfAbsent( decodeMap, map -> table( map, 128 ) );
+   }
+
+   @Override int encode ( byte[] encodeMap, byte[] in, int ri, int blocks, byte[] out, int wi, boolean stopZero, boolean stopSpace ) {
+      blocks = Math.min( blocks, ( out.length - wi ) / 5 ); // Leave short output to the scalar code
+      if ( blocks < B ) return 0;
+      final byte[] table = table( encodeTables, encodeMap, map -> table( map, 85 ) );
+      if ( table == null ) return 0;
+      final int[] quotients = QUOTIENTS.get();
+      int done = 0;
+      for ( int vectors ; ( vectors = Math.min( ( blocks - done ) / B, CHUNK ) ) > 0 ; ) {
+         final int count = quotients( in, ri, vectors, stopZero, stopSpace, quotients );
+         digits( in, ri, count, quotients, out, wi );
+         toChars( table, out, wi, count );
+         done += count * B;
+         ri += count * VL;
+         wi += count * ( VL + B );
+         if ( count < vectors ) break;
+      }
+      return done;
+   }
+
+   @Override int decode ( byte[] decodeMap, byte[] in, int ri, int rlen, byte[] out, int wi, boolean stopZY ) {
+      if ( rlen < VL + B || decodeMap.length < 128 ) return 0;
+      final byte[] table = table( decodeTables, decodeMap, map -> table( map, 128 ) );
+      if ( table == null ) return 0;
+      int done = 0;
+      for ( final int re = ri + rlen ; re - ri >= VL + B && out.length - wi >= VL ; done += B, ri += VL + B, wi += VL )
+         if ( ! decodeVector( table, in, ri, out, wi, stopZY ) ) break;
+      return done;
+   }
+
+   @Override int validate ( byte[] decodeMap, byte[] in, int ri, int rlen ) {
+      if ( rlen < VL || decodeMap.length < 128 ) return 0;
+      final byte[] table = table( decodeTables, decodeMap, map -> table( map, 128 ) );
+      if ( table == null ) return 0;
+      int done = 0;
+      for ( ; rlen - done >= VL ; done += VL )
+         if ( ! validVector( table, in, ri + done ) ) break;
+      return done;
+   }
+
+   @Override int run ( byte[] in, int ri, int length, byte fill ) {
+      int i = ri;
+      for ( final int last = ri + length - VL ; i <= last ; i += VL ) {
+         final int first = ByteVector.fromArray( BS, in, i ).compare( NE, fill ).firstTrue();
+         if ( first < VL ) return i - ri + first;
+      }
+      while ( i < ri + length && in[i] == fill ) i++;
+      return i - ri;
+   }
+
+   // Each step is a separate method taking only arrays and offsets, with one small vector kernel.
+   // Bigger methods exceed the JIT's inlining budget, and any vector operation not inlined runs hundreds of times slower.
+   // Encoding therefore runs in three passes over a chunk: quotients, digits, and characters.
+
+   /** Compute v / 85^2 and v / 85^4 of each block, with the reciprocals of the scalar code in 64 bits lanes of even and odd blocks.
+     * @return number of vectors done; stops before a vector with a block to be compressed */
+   private static int quotients ( byte[] in, int ri, int vectors, boolean stopZero, boolean stopSpace, int[] quotients ) {
+      for ( int i = 0 ; i < vectors ; i++, ri += VL ) {
+         final ByteVector block = ByteVector.fromArray( BS, in, ri ).rearrange( BSWAP );
+         if ( stopZero && block.reinterpretAsInts().eq( 0 ).anyTrue() || stopSpace && block.reinterpretAsInts().eq( 0x20202020 ).anyTrue() ) return i;
+         final LongVector pairs = block.reinterpretAsLongs(), even = pairs.and( 0xFFFFFFFFL ), odd = pairs.lanewise( LSHR, 32 );
+         final LongVector qe = even.mul( 2434904643L ).lanewise( LSHR, 44 ), qo = odd.mul( 2434904643L ).lanewise( LSHR, 44 );
+         toInts( qe, qo ).intoArray( quotients, i * B * 2 );
+         toInts( qe.mul( 148615 ).lanewise( LSHR, 30 ), qo.mul( 148615 ).lanewise( LSHR, 30 ) ).intoArray( quotients, i * B * 2 + B );
+      }
+      return vectors;
+   }
+
+   /** Split the remainders into digits.  x * 12337 >>> 20 == x / 85 for all x < 85^2.
+     * Writes the first four digits of each block, then the last digit of each block. */
+   private static void digits ( byte[] in, int ri, int vectors, int[] quotients, byte[] out, int wi ) {
+      for ( int i = 0 ; i < vectors ; i++, ri += VL, wi += VL + B ) {
+         final IntVector v = ByteVector.fromArray( BS, in, ri ).rearrange( BSWAP ).reinterpretAsInts();
+         final IntVector q = IntVector.fromArray( IS, quotients, i * B * 2 ), d0 = IntVector.fromArray( IS, quotients, i * B * 2 + B );
+         final IntVector hi = q.sub( d0.mul( 7225 ) ), lo = v.sub( q.mul( 7225 ) );
+         final IntVector d1 = hi.mul( 12337 ).lanewise( LSHR, 20 ), d3 = lo.mul( 12337 ).lanewise( LSHR, 20 );
+         final IntVector d2 = hi.sub( d1.mul( 85 ) ), d4 = lo.sub( d3.mul( 85 ) );
+         d0.or( d1.lanewise( LSHL, 8 ) ).or( d2.lanewise( LSHL, 16 ) ).or( d3.lanewise( LSHL, 24 ) ).reinterpretAsBytes().intoArray( out, wi );
+         ( (ByteVector) d4.reinterpretAsBytes().rearrange( PACK_LAST ).reinterpretShape( QS, 0 ) ).intoArray( out, wi + VL );
+      }
+   }
+
+   /** Put digits in block order and map them to characters. */
+   private static void toChars ( byte[] table, byte[] out, int wi, int vectors ) {
+      for ( int i = 0 ; i < vectors ; i++, wi += VL + B ) {
+         final ByteVector head = ByteVector.fromArray( BS, out, wi ), last = (ByteVector) ByteVector.fromArray( QS, out, wi + VL ).reinterpretShape( BS, 0 );
+         lookup( table, TO_CHARS1.apply( head, last ) ).intoArray( out, wi );
+         ( (ByteVector) lookup( table, TO_CHARS2.apply( head, last ) ).reinterpretShape( QS, 0 ) ).intoArray( out, wi + VL );
+      }
+   }
+
+   private static boolean decodeVector ( byte[] table, byte[] in, int ri, byte[] out, int wi, boolean stopZY ) {
+      final ByteVector c1 = ByteVector.fromArray( BS, in, ri ), c2 = (ByteVector) ByteVector.fromArray( QS, in, ri + VL ).reinterpretShape( BS, 0 );
+      if ( stopZY && c1.eq( (byte) 'z' ).or( c1.eq( (byte) 'y' ) ).or( c2.eq( (byte) 'z' ) ).or( c2.eq( (byte) 'y' ) ).anyTrue() ) return false;
+      // A negative digit or a non-ASCII character makes the lane negative.  Lanes of c2 after B are not input.
+      final ByteVector d1 = lookup( table, c1 ), d2 = lookup( table, c2 );
+      if ( d1.or( c1 ).lt( (byte) 0 ).or( d2.or( c2 ).lt( (byte) 0 ).and( TAIL ) ).anyTrue() ) return false;
+      final IntVector head = TO_DIGITS1.apply( d1, d2 ).reinterpretAsInts();
+      final IntVector last = TO_DIGITS2.apply( d1, d2 ).reinterpretAsInts().and( 0xFF );
+      final IntVector sum = head.and( 0xFF ).mul( 85 ).add( head.lanewise( LSHR, 8 ).and( 0xFF ) ).mul( 85 )
+            .add( head.lanewise( LSHR, 16 ).and( 0xFF ) ).mul( 85 ).add( head.lanewise( LSHR, 24 ) );
+      // sum * 85 + last must not exceed 2^32-1, which is 50529027 * 85
+      if ( sum.compare( GT, 50529027 ).or( sum.eq( 50529027 ).and( last.compare( GT, 0 ) ) ).anyTrue() ) return false;
+      sum.mul( 85 ).add( last ).reinterpretAsBytes().rearrange( BSWAP ).intoArray( out, wi );
+      return true;
+   }
+
+   private static boolean validVector ( byte[] table, byte[] in, int ri ) {
+      final ByteVector c = ByteVector.fromArray( BS, in, ri );
+      return ! lookup( table, c ).or( c ).lt( (byte) 0 ).anyTrue();
+   }
+
+   private static IntVector toInts ( LongVector even, LongVector odd ) { // Reinterpret through bytes, which is faster on JDK 17
+      return even.or( odd.lanewise( LSHL, 32 ) ).reinterpretAsBytes().reinterpretAsInts();
+   }
+
+   /** Map each lane through a table of 128 entries.  Non-ASCII lanes get an unspecified value. */
+   private static ByteVector lookup ( byte[] table, ByteVector index ) {
+      final VectorShuffle<Byte> shuffle = index.and( (byte) ( VL - 1 ) ).toShuffle();
+      final ByteVector result = ByteVector.fromArray( BS, table, 0 ).rearrange( shuffle )
+            .blend( ByteVector.fromArray( BS, table, VL ).rearrange( shuffle ), index.compare( GE, (byte) VL ) );
+      if ( VL == 64 ) return result;
+      return result.blend( ByteVector.fromArray( BS, table, 64 ).rearrange( shuffle ), index.compare( GE, (byte) 64 ) )
+            .blend( ByteVector.fromArray( BS, table, 96 ).rearrange( shuffle ), index.compare( GE, (byte) 96 ) );
+   }
+
+   /** Copy the first size entries of a map into a lookup table of 128 entries. */
+   private static byte[] table ( byte[] map, int size ) {
+      return Arrays.copyOf( Arrays.copyOf( map, size ), 128 );
+   }
+
+   /** Convert one vector each way, to make sure all operations work on this runtime before Base85 depends on them. */
+   private void selfTest () {
+      final byte[] encodeMap = new byte[ 85 ], decodeMap = new byte[ 256 ], data = new byte[ VL ], chars = new byte[ VL + B ], back = new byte[ VL ];
+      Arrays.fill( decodeMap, (byte) -1 );
+      for ( int i = 0 ; i < 85 ; i++ ) {
+         encodeMap[i] = (byte) ( '!' + i );
+         decodeMap[ '!' + i ] = (byte) i;
+      }
+      for ( int i = 0 ; i < VL ; i++ ) data[i] = (byte) ( i * 97 + 13 );
+      if ( encode( encodeMap, data, 0, B, chars, 0, false, false ) != B || decode( decodeMap, chars, 0, chars.length, back, 0, false ) != B )
+         throw new IllegalStateException( "Vector engine did not run" );
+      for ( int b = 0 ; b < B ; b++ ) {
+         long sum = ( data[b*4] & 0xFFL ) << 24 | ( data[b*4+1] & 0xFF ) << 16 | ( data[b*4+2] & 0xFF ) << 8 | ( data[b*4+3] & 0xFF );
+         for ( int d = 4 ; d >= 0 ; d--, sum /= 85 )
+            if ( chars[ b*5 + d ] != encodeMap[ (int) ( sum % 85 ) ] ) throw new IllegalStateException( "Vector engine encode mismatch" );
+      }
+      if ( ! Arrays.equals( data, back ) ) throw new IllegalStateException( "Vector engine decode mismatch" );
+   }
+}
@@ -0,0 +1,209 @@
+package sheepy.util.text;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Reactive stream stage that encodes or decodes a stream of byte buffers, for Java 9+.
+ * Each buffer received is pushed through a {@link Base85.EncoderSession} or {@link Base85.DecoderSession},
+ * and its output is published as a new heap buffer; a buffer that completes no block publishes nothing.
+ * The last incomplete block, and the Ascii85 closing delimiter, are published when upstream completes.
+ *
+ * Backpressure is passed through: each buffer requested downstream is requested upstream,
+ * and another buffer is requested for each one that publishes nothing.
+ * An exception from the codec, such as IllegalArgumentException for malformed data, cancels upstream and is signalled downstream.
+ *
+ * Output is built under a lock, and signalled after the lock is released, by one thread at a time.
+ * A processor serves one subscriber from one publisher.  Received buffers are read but not kept.
+ */
+public final class Base85Processor implements Flow.Processor<ByteBuffer,ByteBuffer> {
+   private final Function<ByteBuffer,byte[]> update;
+   private final Supplier<byte[]> finish;
+
+   // All states are guarded by this processor.  No lock is held when calling upstream or downstream.
+   private Flow.Subscription upstream;
+   private Flow.Subscriber<? super ByteBuffer> downstream;
+   private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>(); // Output waiting to be published
+   private long demand;       // Buffers requested downstream and not yet published
+   private Throwable error;   // Error waiting to be signalled
+   private boolean ready;     // Downstream onSubscribe has returned
+   private boolean emitting;  // A thread is in the drain loop
+   private boolean completed, cancelled, terminated;
+
+   private Base85Processor ( final Function<ByteBuffer,byte[]> update, final Supplier<byte[]> finish ) {
+      this.update = update;
+      this.finish = finish;
+   }
+
+   /** Create a processor that encodes data.
+     * @param encoder encoder to use
+     * @return new processor
+     */
+   public static Base85Processor encoding ( final Base85.Encoder encoder ) {
+      final Base85.EncoderSession session = encoder.newSession();
+      return new Base85Processor( session::update, session::finish );
+   }
+
+   /** Create a processor that decodes encoded text.
+     * @param decoder decoder to use
+     * @return new processor
+     */
+   public static Base85Processor decoding ( final Base85.Decoder decoder ) {
+      final Base85.DecoderSession session = decoder.newSession();
+      return new Base85Processor( session::update, session::finish );
+   }
+
+   @Override public void subscribe ( final Flow.Subscriber<? super ByteBuffer> subscriber ) {
+      if ( subscriber == null ) throw new NullPointerException();
+      final boolean first;
+      synchronized ( this ) {
+         first = downstream == null;
+         if ( first ) downstream = subscriber;
+      }
+      if ( ! first ) {
+         subscriber.onSubscribe( new Flow.Subscription() {
+            @Override public void request ( long n ) {}
+            @Override public void cancel () {}
+         } );
+         subscriber.onError( new IllegalStateException( "Base85Processor already has a subscriber" ) );
+         return;
+      }
+      subscriber.onSubscribe( new Flow.Subscription() {
+         @Override public void request ( long n ) { Base85Processor.this.request( n ); }
+         @Override public void cancel () { Base85Processor.this.cancel(); }
+      } );
+      synchronized ( this ) {
+         ready = true;
+      }
+      drain();
+   }
+
+   @Override public void onSubscribe ( final Flow.Subscription subscription ) {
+      final boolean accept;
+      final long n;
+      synchronized ( this ) {
+         accept = upstream == null && ! cancelled;
+         if ( accept ) upstream = subscription;
+         n = demand;
+      }
+      if ( ! accept ) subscription.cancel();
+      else if ( n > 0 ) subscription.request( n );
+   }
+
+   @Override public void onNext ( final ByteBuffer item ) {
+      final Flow.Subscription up;
+      final boolean failed, empty;
+      synchronized ( this ) {
+         if ( completed || cancelled ) return;
+         up = upstream;
+         byte[] out = null;
+         try {
+            out = update.apply( item );
+         } catch ( RuntimeException ex ) {
+            completed = true;
+            error = ex;
+         }
+         failed = out == null;
+         empty = ! failed && out.length == 0;
+         if ( ! failed && ! empty ) queue.add( ByteBuffer.wrap( out ) );
+      }
+      if ( failed ) up.cancel();
+      else if ( empty ) up.request( 1 );
+      drain();
+   }
+
+   @Override public void onError ( final Throwable throwable ) {
+      synchronized ( this ) {
+         if ( completed ) return;
+         completed = true;
+         error = throwable;
+      }
+      drain();
+   }
+
+   @Override public void onComplete () {
+      synchronized ( this ) {
+         if ( completed ) return;
+         completed = true;
+         try {
+            final byte[] last = finish.get();
+            if ( last.length > 0 && ! cancelled ) queue.add( ByteBuffer.wrap( last ) );
+         } catch ( RuntimeException ex ) {
+            error = ex;
+         }
+      }
+      drain();
+   }
+
+   private void request ( final long n ) {
+      final Flow.Subscription up;
+      final boolean forward;
+      synchronized ( this ) {
+         if ( cancelled || terminated ) return;
+         up = upstream != null && ! completed ? upstream : null;
+         forward = n > 0;
+         if ( n <= 0 ) {
+            completed = true;
+            error = new IllegalArgumentException( "Requested " + n + " buffers" );
+         } else
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      }
+      if ( up != null ) {
+         if ( forward ) up.request( n );
+         else up.cancel();
+      }
+      drain();
+   }
+
+   private void cancel () {
+      final Flow.Subscription up;
+      synchronized ( this ) {
+         if ( cancelled ) return;
+         cancelled = true;
+         queue.clear();
+         up = upstream != null && ! completed ? upstream : null;
+      }
+      if ( up != null ) up.cancel();
+   }
+
+   /** Publish queued output while there is demand, then signal the end of the stream when upstream has ended.
+     * Only one thread runs the loop; others return at once, and their changes are seen by the next round of the loop.
+     * An error is signalled at once, dropping queued output. */
+   private void drain () {
+      synchronized ( this ) {
+         if ( emitting ) return;
+         emitting = true;
+      }
+      for ( ;; ) {
+         final Flow.Subscriber<? super ByteBuffer> subscriber;
+         ByteBuffer next = null;
+         Throwable failure = null;
+         synchronized ( this ) {
+            subscriber = downstream;
+            if ( ! ready || cancelled || terminated ) {
+               emitting = false;
+               return;
+            }
+            if ( error != null ) {
+               terminated = true;
+               failure = error;
+               queue.clear();
+            } else if ( demand > 0 && ! queue.isEmpty() ) {
+               next = queue.poll();
+               demand--;
+            } else if ( completed && queue.isEmpty() )
+               terminated = true;
+            else {
+               emitting = false;
+               return;
+            }
+         }
+         if ( next != null ) subscriber.onNext( next );
+         else if ( failure != null ) subscriber.onError( failure );
+         else subscriber.onComplete();
+      }
+   }
+}
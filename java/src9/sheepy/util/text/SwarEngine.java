@@ -0,0 +1,178 @@
+package sheepy.util.text;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Block engine on byte array view VarHandles, for Java 9+.
+ * Each block is read as one big endian int and encoded into one little endian long, so five characters are stored in one write.
+ * Decoding reads five characters as one long, and rejects any non-ASCII character with a single mask before the table lookups.
+ * Validation checks eight characters per long against the range of the alphabet, and against each character missing from the range.
+ * Runs of Ascii85 zero blocks, spaces, 'z', and 'y' are also measured eight bytes per long.
+ *
+ * Uses the same reciprocals and pair tables as the scalar code, without the per-byte shifts and bounds checks.
+ */
+final class SwarEngine extends Base85.Engine {
+   private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle( int[].class, ByteOrder.BIG_ENDIAN );
+   private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle( int[].class, ByteOrder.LITTLE_ENDIAN );
+   private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle( long[].class, ByteOrder.LITTLE_ENDIAN );
+   private static final long HIGH_BITS = 0x8080808080L; // High bit of five characters
+   private static final long ONES = 0x0101010101010101L, HIGH = 0x8080808080808080L; // Low and high bit of eight characters
+   private static final int MAX_EXCLUDED = 2; // Gaps in the alphabet range to check per word; with more the byte loop is faster
+
+   /** Tables of one map.  The final fields make it safe to publish without lock or volatile. */
+   private static final class Tables {
+      final byte[] key, map;    // Decode map padded to 128 entries; null for encoder
+      final char[] encodePairs;  // Two characters that encode 0 to 85^2-1, first character in low byte
+      final short[] decodePairs; // Value of pair ( c1 << 7 | c2 ), or -1 if either is invalid
+      final long[] range; // Lowest and highest valid character, then each invalid character between them, in all eight bytes; null if not checkable
+      Tables ( byte[] key, byte[] map, char[] encodePairs, short[] decodePairs, long[] range ) {
+         this.key = key;
+         this.map = map;
+         this.encodePairs = encodePairs;
+         this.decodePairs = decodePairs;
+         this.range = range;
+      }
+   }
+
+   // Tables by identity of encode map or decode map, bounded by MAX_TABLES, and the last used ones to skip the lookup.
+   private final Map<byte[],Tables> tables = new ConcurrentHashMap<>();
+   private Tables encodeTables, decodeTables;
+
+   @Override String getName () { return "SWAR"; }
+   @Override int tableCount () { return tables.size(); }
+
+   @Override void prepare ( byte[] encodeMap, byte[] decodeMap ) {
+      tables.computeIfAbsent( encodeMap, SwarEngine::encodeTables );
+      tables.computeIfAbsent( decodeMap, SwarEngine::decodeTables );
+   }
+
+   @Override int encode ( byte[] encodeMap, byte[] in, int ri, int blocks, byte[] out, int wi, boolean stopZero, boolean stopSpace ) {
+      blocks = Math.min( blocks, ( out.length - wi ) / 5 ); // Leave short output to the scalar code
+      if ( blocks <= 0 ) return 0;
+      Tables t = encodeTables;
+      if ( t == null || t.key != encodeMap ) {
+         if ( ( t = table( tables, encodeMap, SwarEngine::encodeTables ) ) == null ) return 0;
+         encodeTables = t;
+      }
+      final byte[] map = encodeMap;
+      final char[] pairs = t.encodePairs;
+      for ( int i = 0 ; i < blocks ; i++, ri += 4, wi += 5 ) {
+         final int block = (int) INT_BE.get( in, ri );
+         if ( stopZero && block == 0 || stopSpace && block == 0x20202020 ) return i;
+         final long sum = block & 0xFFFFFFFFL;
+         final long q = ( sum * 2434904643L ) >>> 44, hi = ( q * 148615 ) >>> 30; // sum / 85^2, sum / 85^4
+         final long chars = map[ (int) hi ] & 0xFF | (long) pairs[ (int) ( q - hi * 7225 ) ] << 8 | (long) pairs[ (int) ( sum - q * 7225 ) ] << 24;
+         if ( i < blocks - 1 ) // The extra three bytes are overwritten by the next block
+            LONG_LE.set( out, wi, chars );
+         else {
+            INT_LE.set( out, wi, (int) chars );
+            out[ wi + 4 ] = (byte) ( chars >>> 32 );
+         }
+      }
+      return blocks;
+   }
+
+   @Override int run ( byte[] in, int ri, int length, byte fill ) {
+      final long word = ( fill & 0xFFL ) * ONES;
+      int i = ri;
+      for ( final int last = ri + length - 8 ; i <= last ; i += 8 ) {
+         final long diff = (long) LONG_LE.get( in, i ) ^ word;
+         if ( diff != 0 ) return i - ri + ( Long.numberOfTrailingZeros( diff ) >>> 3 );
+      }
+      while ( i < ri + length && in[i] == fill ) i++;
+      return i - ri;
+   }
+
+   @Override int decode ( byte[] decodeMap, byte[] in, int ri, int rlen, byte[] out, int wi, boolean stopZY ) {
+      // Each block reads eight characters, so stop three characters before the end of the array.
+      final int blocks = Math.min( Math.min( rlen, in.length - ri - 3 ) / 5, ( out.length - wi ) / 4 );
+      if ( blocks <= 0 ) return 0;
+      Tables t = decodeTables;
+      if ( t == null || t.key != decodeMap ) {
+         if ( ( t = table( tables, decodeMap, SwarEngine::decodeTables ) ) == null ) return 0;
+         decodeTables = t;
+      }
+      final byte[] map = t.map;
+      final short[] pairs = t.decodePairs;
+      // 'z' and 'y' are not in the Ascii85 alphabet, so stopZY needs no check of its own: they fail the lookup like any invalid character.
+      for ( int i = 0 ; i < blocks ; i++, ri += 5, wi += 4 ) {
+         final long chars = (long) LONG_LE.get( in, ri );
+         if ( ( chars & HIGH_BITS ) != 0 ) return i;
+         final int d0 = map[ (int) chars & 0x7F ];
+         final int p1 = pairs[ (int) ( chars >>> 1 ) & 0x3F80 | (int) ( chars >>> 16 ) & 0x7F ];
+         final int p2 = pairs[ (int) ( chars >>> 17 ) & 0x3F80 | (int) ( chars >>> 32 ) & 0x7F ];
+         if ( ( d0 | p1 | p2 ) < 0 ) return i;
+         final long sum = d0 * 52200625L + p1 * 7225 + p2;
+         if ( sum > 0xFFFFFFFFL ) return i;
+         INT_BE.set( out, wi, (int) sum );
+      }
+      return blocks;
+   }
+
+   /** Each byte is valid if its high bit is clear, (x | 0x80) - lo keeps the high bit, hi | 0x80 - x keeps the high bit,
+     * and x ^ c + 0x7F sets the high bit for every excluded c.  No byte borrows from or carries into its neighbour. */
+   @Override int validate ( byte[] decodeMap, byte[] in, int ri, int rlen ) {
+      Tables t = decodeTables;
+      if ( t == null || t.key != decodeMap ) {
+         if ( ( t = table( tables, decodeMap, SwarEngine::decodeTables ) ) == null ) return 0;
+         decodeTables = t;
+      }
+      final long[] range = t.range;
+      if ( range == null ) return 0;
+      final long lo = range[0], hi = range[1];
+      int done = 0;
+      for ( ; rlen - done >= 8 ; done += 8 ) {
+         final long x = (long) LONG_LE.get( in, ri + done ), x7 = x & ~HIGH;
+         long valid = ~x & ( ( x7 | HIGH ) - lo ) & ( hi - x7 );
+         for ( int i = 2 ; i < range.length ; i++ )
+            valid &= ( x7 ^ range[i] ) + ~HIGH;
+         if ( ( valid & HIGH ) != HIGH ) break;
+      }
+      return done;
+   }
+
+   private static Tables encodeTables ( byte[] encodeMap ) {
+      return new Tables( encodeMap, null, encodePairs( encodeMap ), null, null );
+   }
+
+   private static char[] encodePairs ( byte[] encodeMap ) {
+      final char[] pairs = new char[ 7225 ];
+      for ( int i = 0 ; i < 7225 ; i++ )
+         pairs[ i ] = (char) ( ( encodeMap[ i % 85 ] & 0xFF ) << 8 | encodeMap[ i / 85 ] & 0xFF );
+      return pairs;
+   }
+
+   private static Tables decodeTables ( byte[] decodeMap ) {
+      final byte[] map = new byte[ 128 ];
+      for ( int c = 0 ; c < 128 ; c++ )
+         map[ c ] = c < decodeMap.length ? decodeMap[ c ] : -1;
+      final short[] pairs = new short[ 128 * 128 ];
+      for ( int c1 = 0 ; c1 < 128 ; c1++ )
+         for ( int c2 = 0 ; c2 < 128 ; c2++ )
+            pairs[ c1 << 7 | c2 ] = (short) ( map[ c1 ] < 0 || map[ c2 ] < 0 ? -1 : map[ c1 ] * 85 + map[ c2 ] );
+      return new Tables( decodeMap, map, null, pairs, range( map ) );
+   }
+
+   private static long[] range ( byte[] map ) {
+      int lo = 128, hi = -1, excluded = 0;
+      for ( int c = 0 ; c < 128 ; c++ )
+         if ( map[ c ] >= 0 ) {
+            lo = Math.min( lo, c );
+            hi = c;
+         }
+      if ( hi < 0 ) return null;
+      for ( int c = lo ; c <= hi ; c++ )
+         if ( map[ c ] < 0 ) excluded++;
+      if ( excluded > MAX_EXCLUDED ) return null;
+      final long[] range = new long[ 2 + excluded ];
+      range[0] = lo * ONES;
+      range[1] = hi * ONES | HIGH;
+      for ( int c = lo, i = 2 ; c <= hi ; c++ )
+         if ( map[ c ] < 0 ) range[ i++ ] = c * ONES;
+      return range;
+   }
+}
@@ -1,21 +1,49 @@
 package sheepy.util.text;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
 import java.net.Inet6Address;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CoderResult;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
 import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import javax.management.ObjectName;
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 import org.junit.Test;
 import sheepy.util.text.Base85.Decoder;
 
 public class Base85Test {
    private final Random rng = new Random();
    private final Base85.Encoder rfcE, z85E, a85E;
+   private final Base85.Ascii85Encoder a85I; // Immutable, for the configuration methods
    private final Base85.Decoder rfcD, z85D, a85D;
 
    public Base85Test() {
@@ -24,6 +52,7 @@ public class Base85Test {
       z85E = Base85.getZ85Encoder();
       z85D = Base85.getZ85Decoder();
       a85E = Base85.getAscii85Encoder();
+      a85I = Base85.getAscii85Encoder( true, true );
       a85D = Base85.getAscii85Decoder();
    }
 
@@ -50,7 +79,7 @@ public class Base85Test {
       if ( offset >= buf.length ) return;
       int count = offset + 1, oklen = ok.length;
       if ( count % 5 == 1 )  {
-         buf[ offset ] = ok[ rng.nextInt( oklen ) ];
+         buf[ offset ] = ok[ rng.nextInt( 82 ) ]; // First digit below 82 never overflows 32 bits
          testValidateFail( buf, count, decoder );
          recurTestValidate( ok, fail, buf, count, decoder );
          return;
@@ -84,6 +113,72 @@ public class Base85Test {
       }
    }
 
+   private interface BufferCoder { CoderResult code ( ByteBuffer src, ByteBuffer dst, boolean endOfInput ); }
+
+   /** Feed data through a buffer coder in random sized fragments, using small buffers to exercise tail carrying and overflow. */
+   private byte[] codeByBuffer ( BufferCoder coder, byte[] data, boolean direct ) {
+      ByteBuffer src = direct ? ByteBuffer.allocateDirect( 9 ) : ByteBuffer.allocate( 9 );
+      ByteBuffer dst = direct ? ByteBuffer.allocateDirect( 5 ) : ByteBuffer.allocate( 5 );
+      if ( rng.nextBoolean() ) dst.order( ByteOrder.LITTLE_ENDIAN ); // Byte order should not matter
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      for ( int ri = 0 ;; ) {
+         int len = Math.min( src.remaining(), Math.min( data.length - ri, 1 + rng.nextInt( 6 ) ) );
+         src.put( data, ri, len );
+         ri += len;
+         src.flip();
+         boolean end = ri == data.length;
+         CoderResult r;
+         do {
+            r = coder.code( src, dst, end );
+            dst.flip();
+            while ( dst.hasRemaining() ) result.write( dst.get() );
+            dst.clear();
+         } while ( r.isOverflow() );
+         if ( r.isError() ) throw new IllegalArgumentException( r.toString() );
+         src.compact();
+         if ( end ) {
+            assertEquals( "Buffer fully consumed", 0, src.position() );
+            return result.toByteArray();
+         }
+      }
+   }
+
+   /** An input stream that returns a few bytes at a time, to test reads that break blocks. */
+   private InputStream trickle ( byte[] data ) {
+      return new ByteArrayInputStream( data ) {
+         @Override public synchronized int read ( byte[] b, int off, int len ) {
+            return super.read( b, off, Math.min( len, 1 + rng.nextInt( 7 ) ) );
+         }
+      };
+   }
+
+   private byte[] readAll ( InputStream is ) throws IOException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      byte[] buf = new byte[ 1000 ];
+      try ( InputStream in = is ) {
+         for ( int len ; ; ) {
+            if ( rng.nextInt( 4 ) == 0 ) {
+               if ( ( len = in.read() ) < 0 ) break;
+               result.write( len );
+            } else {
+               if ( ( len = in.read( buf, 0, 1 + rng.nextInt( buf.length ) ) ) < 0 ) break;
+               result.write( buf, 0, len );
+            }
+         }
+      }
+      return result.toByteArray();
+   }
+
+   private void writeAll ( OutputStream os, byte[] data ) throws IOException {
+      try ( OutputStream out = os ) {
+         for ( int i = 0, len ; i < data.length ; i += len ) {
+            len = Math.min( data.length - i, 1 + rng.nextInt( 9000 ) );
+            if ( len < 3 ) for ( int j = 0 ; j < len ; j++ ) out.write( data[ i + j ] );
+            else out.write( data, i, len );
+         }
+      }
+   }
+
    /////////// Generic Test Routines ///////////
 
    public void testStrEncode ( Base85.Encoder e, String[] map ) {
@@ -98,6 +193,46 @@ public class Base85Test {
       }
    }
 
+   public void testChars ( Base85.Encoder e, Base85.Decoder d, String[] map ) throws IOException {
+      for ( int i = 0 ; i < map.length ; i += 2 ) {
+         byte[] orig = map[i].getBytes( UTF_8 );
+         String code = map[i+1];
+         char[] chars = ( "~~" + code ).toCharArray();
+         assertEquals( "Encode to StringBuilder " + code, "~~" + code, e.encode( orig, 0, orig.length, new StringBuilder( "~~" ) ).toString() );
+         assertEquals( "Encode to Writer " + code, code, e.encode( orig, 0, orig.length, new StringWriter() ).toString() );
+         assertArrayEquals( "Decode StringBuilder " + code, orig, d.decodeToBytes( new StringBuilder( code ) ) );
+         assertArrayEquals( "Decode char[] " + code, orig, d.decodeToBytes( chars, 2, code.length() ) );
+         byte[] out = new byte[ orig.length + 1 ];
+         assertEquals( "Decode chars to array " + code, orig.length, d.decode( "~~" + code, 2, code.length(), out, 1 ) );
+         assertArrayEquals( "Decode chars to array " + code, orig, Arrays.copyOfRange( out, 1, out.length ) );
+         assertTrue( "Test StringBuilder " + code, d.test( new StringBuilder( code ) ) );
+         assertTrue( "Test char[] " + code, d.test( chars, 2, code.length() ) );
+         if ( code.length() > 0 ) {
+            assertFalse( "Test non-ASCII " + code, d.test( code.substring( 1 ) + '\u0130' ) );
+            try {
+               d.decodeToBytes( code.substring( 1 ) + '\u0130' );
+               fail( "Decode non-ASCII " + code + " should throw" );
+            } catch ( IllegalArgumentException expected ) {}
+         }
+      }
+      // Longer than the internal buffers, with runs of zeros and spaces for Ascii85.
+      byte[] big = new byte[ 30001 ];
+      new Random( 85 ).nextBytes( big );
+      Arrays.fill( big, 100, 20100, (byte) 0 );
+      Arrays.fill( big, 24000, 25000, (byte) ' ' );
+      String code = e.encodeToString( big );
+      assertEquals( "Encode big to StringBuilder", code, e.encode( big, 0, big.length, new StringBuilder() ).toString() );
+      assertArrayEquals( "Decode big StringBuilder", big, d.decodeToBytes( new StringBuilder( code ) ) );
+      assertTrue( "Test big char[]", d.test( code.toCharArray(), 0, code.length() ) );
+      String text = "Base85 " + code;
+      assertEquals( "Decode ASCII text", text, d.decode( e.encode( text ) ) );
+      assertEquals( "Decode UTF-8 text", text + "\u0130", d.decode( e.encode( text + "\u0130" ) ) );
+      // Code compiled against the String methods must still link.
+      for ( String name : new String[]{ "decodeToBytes", "test" } ) try {
+         Base85.Decoder.class.getMethod( name, String.class );
+      } catch ( NoSuchMethodException ex ) { fail( "Decoder." + name + "( String ) should exist" ); }
+   }
+
    public void testByteEncode ( Base85.Encoder e, String[] map ) {
       String origStr = map[ map.length - 2 ], codeStr = map[ map.length - 1 ];
       byte[] orig = origStr.getBytes( UTF_8 ), code = codeStr.getBytes( US_ASCII );
@@ -108,7 +243,7 @@ public class Base85Test {
       System.arraycopy( buf, 0, buf, 2, orig.length );
       assertArrayEquals( "Byte to byte encode offset 2", code, e.encode( buf, 2, orig.length ) );
       byte[] output = new byte[ code.length + 2 ];
-      e.encode( orig, 0, orig.length, output, 0 );
+      assertEquals( "Byte to byte direct encode length", code.length, e.encode( orig, 0, orig.length, output, 0 ) );
       assertArrayEquals( "Byte to byte direct encode offset 0", code, Arrays.copyOfRange( output, 0, code.length ) );
       e.encode( buf, 2, orig.length, output, 2 );
       assertArrayEquals( "Byte to byte direct encode offset 2", code, Arrays.copyOfRange( output, 2, code.length + 2 ) );
@@ -123,7 +258,7 @@ public class Base85Test {
       System.arraycopy( buf, 0, buf, 2, code.length );
       assertArrayEquals( "Byte to byte decode offset 2", orig, d.decode( buf, 2, code.length ) );
       byte[] output = new byte[ orig.length + 2 ];
-      d.decode( code, 0, code.length, output, 0 );
+      assertEquals( "Byte to byte direct decode length", orig.length, d.decode( code, 0, code.length, output, 0 ) );
       assertArrayEquals( "Byte to byte direct decode offset 0", orig, Arrays.copyOfRange( output, 0, orig.length ) );
       d.decode( buf, 2, code.length, output, 2 );
       assertArrayEquals( "Byte to byte direct decode offset 2", orig, Arrays.copyOfRange( output, 2, orig.length + 2 ) );
@@ -149,6 +284,325 @@ public class Base85Test {
       }
    }
 
+   public void testBufferRoundTrip ( Base85.Encoder e, Base85.Decoder d ) {
+      for ( int len = 0 ; len <= 40 ; len++ ) {
+         byte[] from = new byte[ len ];
+         rng.nextBytes( from );
+         if ( len > 12 ) Arrays.fill( from, 4, 8, (byte) 0 );
+         if ( len > 16 ) Arrays.fill( from, 8, 16, (byte) ' ' );
+         byte[] enc = e.encode( from );
+         for ( boolean direct : new boolean[]{ false, true } ) {
+            String test = ( direct ? "Direct" : "Heap" ) + " buffer " + randData( from, len );
+            assertArrayEquals( test + " encode", enc, codeByBuffer( e::encode, from, direct ) );
+            assertArrayEquals( test + " decode", from, codeByBuffer( d::decode, enc, direct ) );
+         }
+      }
+   }
+
+   public void testStream ( Base85.Encoder e, Base85.Decoder d ) throws IOException {
+      for ( int len : new int[]{ 0, 1, 2, 3, 4, 5, 8193, 30001 } ) {
+         byte[] from = new byte[ len ];
+         rng.nextBytes( from );
+         for ( int i = 0 ; i + 16 <= len ; i += 40 ) Arrays.fill( from, i, i + 16, i % 80 == 0 ? 0 : (byte) ' ' );
+         byte[] enc = e.encode( from );
+         String test = "Stream of " + len + " bytes ";
+
+         ByteArrayOutputStream bos = new ByteArrayOutputStream();
+         writeAll( e.wrap( bos ), from );
+         assertArrayEquals( test + "encode", enc, bos.toByteArray() );
+         StringWriter writer = new StringWriter();
+         writeAll( e.wrap( writer ), from );
+         assertEquals( test + "encode to writer", new String( enc, US_ASCII ), writer.toString() );
+
+         assertArrayEquals( test + "decode", from, readAll( d.wrap( trickle( enc ) ) ) );
+         assertArrayEquals( test + "decode from reader", from, readAll( d.wrap( new StringReader( new String( enc, US_ASCII ) ) ) ) );
+      }
+      testException( () -> { try {
+         readAll( d.wrap( new ByteArrayInputStream( new byte[]{ '0', '0', '0', '0', '0', '0', '0', '0', '0', ' ' } ) ) );
+      } catch ( IOException ex ) { throw new IllegalStateException( ex ); } }, IllegalStateException.class, "Decode malformed stream" );
+      testException( () -> { try {
+         readAll( d.wrap( new StringReader( "0000\u0130" ) ) );
+      } catch ( IOException ex ) { throw new IllegalStateException( ex ); } }, IllegalStateException.class, "Decode non-ASCII reader" );
+   }
+
+   /** Encode and decode through parallel streams with small chunks, on a thread pool and on the calling thread,
+     * and compare with sequential encoding.  Runs of zeros and spaces cross chunk boundaries. */
+   public void testParallelStream ( Base85.Encoder e, Base85.Decoder d ) throws IOException {
+      final ExecutorService pool = Executors.newFixedThreadPool( 3 );
+      try {
+         for ( int len : new int[]{ 0, 1, 3, 4, 5, 97, 8193, 30001 } ) {
+            final byte[] from = new byte[ len ];
+            rng.nextBytes( from );
+            for ( int i = 0 ; i + 64 <= len ; i += 40 + rng.nextInt( 400 ) ) Arrays.fill( from, i, i + rng.nextInt( 64 ), rng.nextBoolean() ? 0 : (byte) ' ' );
+            final byte[] enc = e.encode( from );
+            for ( Executor executor : new Executor[]{ pool, Runnable::run } ) {
+               final int chunk = 4 + rng.nextInt( 2000 ), pending = 1 + rng.nextInt( 4 );
+               final String test = "Parallel stream of " + len + " bytes in chunks of " + chunk + " ";
+               final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+               writeAll( e.wrapParallel( bos, executor, chunk, pending ), from );
+               assertArrayEquals( test + "encode", enc, bos.toByteArray() );
+               final ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+               bos.reset();
+               try ( OutputStream out = e.wrapParallel( bos, executor, chunk, pending ); OutputStream seq = e.wrap( sequential ) ) {
+                  out.write( from, 0, len / 2 );
+                  seq.write( from, 0, len / 2 );
+                  out.flush();
+                  seq.flush();
+                  assertArrayEquals( test + "flush", sequential.toByteArray(), bos.toByteArray() );
+                  out.write( from, len / 2, len - len / 2 );
+               }
+               assertArrayEquals( test + "encode after flush", enc, bos.toByteArray() );
+               assertArrayEquals( test + "decode", from, readAll( d.wrapParallel( trickle( enc ), executor, chunk + 1, pending ) ) );
+            }
+         }
+         final byte[] data = new byte[ 3000 ];
+         rng.nextBytes( data );
+         final byte[] bad = e.encode( data );
+         bad[ bad.length * 2 / 3 ] = (byte) 0x80;
+         testException( () -> { try {
+            readAll( d.wrapParallel( new ByteArrayInputStream( bad ), pool, 100, 2 ) );
+         } catch ( IOException ex ) { throw new IllegalStateException( ex ); } }, IllegalStateException.class, "Decode malformed parallel stream" );
+         testException( () -> e.wrapParallel( new ByteArrayOutputStream(), pool, 3, 1 ), IllegalArgumentException.class, "Chunk too small" );
+         testException( () -> d.wrapParallel( new ByteArrayInputStream( bad ), pool, 5, 0 ), IllegalArgumentException.class, "No pending chunk" );
+      } finally {
+         pool.shutdown();
+      }
+   }
+
+   public void testParallel ( Base85.Encoder e, Base85.Decoder d ) {
+      ForkJoinPool pool = new ForkJoinPool( 4 );
+      for ( int len : new int[]{ Base85.PARALLEL_THRESHOLD - 1, Base85.PARALLEL_THRESHOLD * 3 + 3 } ) {
+         byte[] from = new byte[ len ];
+         rng.nextBytes( from );
+         // Runs of zeros and spaces at random alignment, so that z and y shift the blocks across parts
+         for ( int i = rng.nextInt( 100 ) ; i < len - 64 ; i += 1000 + rng.nextInt( 100000 ) )
+            Arrays.fill( from, i, i + rng.nextInt( 64 ), rng.nextBoolean() ? 0 : (byte) ' ' );
+         byte[] enc = e.encode( from );
+         assertArrayEquals( "Parallel encode of " + len + " bytes", enc, e.encodeParallel( from ) );
+         assertArrayEquals( "Parallel decode of " + len + " bytes", from, d.decodeParallel( enc ) );
+         assertArrayEquals( "Parallel encode of " + len + " bytes with offset", e.encode( from, 3, len - 7 ),
+               e.encodeParallel( from, 3, len - 7, pool ) );
+         assertArrayEquals( "Parallel decode of " + len + " bytes with offset", from, d.decodeParallel( enc, 0, enc.length, pool ) );
+      }
+      byte[] enc = e.encode( new byte[ Base85.PARALLEL_THRESHOLD * 2 ] );
+      enc[ enc.length - 3 ] = ' ';
+      testException( () -> d.decodeParallel( enc ), IllegalArgumentException.class, "Parallel decode malformed data" );
+      testException( () -> e.encodeParallel( enc, Integer.MAX_VALUE - 2, Base85.PARALLEL_THRESHOLD, pool ), ArrayIndexOutOfBoundsException.class, "Parallel encode overflowing offset" );
+      testException( () -> d.decodeParallel( enc, Integer.MAX_VALUE - 2, Base85.PARALLEL_THRESHOLD, pool ), ArrayIndexOutOfBoundsException.class, "Parallel decode overflowing offset" );
+      pool.shutdown();
+   }
+
+   public void testSink ( Base85.Encoder e, Base85.Decoder d ) {
+      final Base85.ByteSink encoded = new Base85.ByteSink( 0 ), decoded = new Base85.ByteSink( 1 );
+      final Base85.BufferPool pool = new Base85.BufferPool( 2, 16, 1024 );
+      final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      for ( int len = 0 ; len <= 300 ; len += 1 + len / 4 ) {
+         final byte[] from = new byte[ len ];
+         rng.nextBytes( from );
+         if ( len > 12 ) Arrays.fill( from, 4, 12, rng.nextBoolean() ? 0 : (byte) ' ' );
+         final byte[] enc = e.encode( from );
+         final int start = encoded.length();
+         assertEquals( "Sink encode length of " + len + " bytes", enc.length, e.encode( from, 0, len, encoded ) );
+         assertArrayEquals( "Sink encode of " + len + " bytes", enc, Arrays.copyOfRange( encoded.array(), start, encoded.length() ) );
+         assertEquals( "Sink decode length of " + len + " bytes", len, d.decode( enc, 0, enc.length, decoded ) );
+         expected.write( from, 0, len );
+         try ( Base85.ByteSink leased = e.encode( from, 0, len, pool ) ) {
+            assertArrayEquals( "Pooled encode of " + len + " bytes", enc, leased.toByteArray() );
+         }
+         try ( Base85.ByteSink leased = d.decode( enc, 0, enc.length, pool ) ) {
+            assertArrayEquals( "Pooled decode of " + len + " bytes", from, leased.toByteArray() );
+         }
+      }
+      assertArrayEquals( "Sink decode appends", expected.toByteArray(), decoded.toByteArray() );
+      final Base85.ByteSink first = pool.lease();
+      first.close();
+      assertSame( "Pool reuses released sink", first, pool.lease() );
+      assertEquals( "Reused sink is empty", 0, first.length() );
+      testException( () -> pool.release( new Base85.ByteSink() ), IllegalArgumentException.class, "Release foreign sink" );
+      final int length = decoded.length();
+      testException( () -> d.decode( "0000\u0130".getBytes( UTF_8 ), 0, 6, decoded ), IllegalArgumentException.class, "Sink decode malformed data" );
+      assertEquals( "Sink length after malformed data", length, decoded.length() );
+   }
+
+   /** Encode and decode batches of small messages, packed and as slices, and compare with one message at a time. */
+   public void testBatch ( Base85.Encoder e, Base85.Decoder d ) {
+      final byte[][] messages = new byte[ 200 ][];
+      final int[] offsets = new int[ messages.length + 1 ], starts = new int[ messages.length ], lengths = new int[ messages.length ];
+      final ByteArrayOutputStream packed = new ByteArrayOutputStream();
+      for ( int i = 0 ; i < messages.length ; i++ ) {
+         messages[ i ] = new byte[ 3 + rng.nextInt( 130 ) ];
+         rng.nextBytes( messages[ i ] );
+         if ( i % 3 == 0 ) Arrays.fill( messages[ i ], 3, Math.min( 11, messages[ i ].length ), i % 2 == 0 ? 0 : (byte) ' ' );
+         starts[ i ] = 3;
+         lengths[ i ] = messages[ i ].length - 3;
+         packed.write( messages[ i ], 3, lengths[ i ] );
+         offsets[ i + 1 ] = packed.size();
+      }
+      final Base85.ByteSink encoded = new Base85.ByteSink( 0 ), sliced = new Base85.ByteSink( 4 ), decoded = new Base85.ByteSink();
+      e.encode( new byte[ 2 ], 0, 2, sliced ); // Output starts after the data in the sink
+      final int[] codes = e.encodeBatch( packed.toByteArray(), offsets, encoded );
+      final int[] slices = e.encodeBatch( messages, starts, lengths, sliced );
+      assertEquals( "Slices start after data", e.encode( new byte[ 2 ] ).length, slices[ 0 ] );
+      assertEquals( "Encoded offsets", messages.length + 1, codes.length );
+      for ( int i = 0 ; i < messages.length ; i++ ) {
+         final byte[] expected = e.encode( messages[ i ], 3, lengths[ i ] );
+         assertArrayEquals( "Batch encode " + i, expected, Arrays.copyOfRange( encoded.array(), codes[ i ], codes[ i + 1 ] ) );
+         assertArrayEquals( "Slice encode " + i, expected, Arrays.copyOfRange( sliced.array(), slices[ i ], slices[ i + 1 ] ) );
+      }
+      assertEquals( "Encoded length", codes[ messages.length ], encoded.length() );
+      final int[] back = d.decodeBatch( encoded.toByteArray(), codes, decoded );
+      assertArrayEquals( "Batch decode", packed.toByteArray(), Arrays.copyOfRange( decoded.array(), back[ 0 ], back[ messages.length ] ) );
+      for ( int i = 0 ; i < messages.length ; i++ )
+         assertEquals( "Batch decode length " + i, lengths[ i ], back[ i + 1 ] - back[ i ] );
+      final byte[][] codeArrays = new byte[ messages.length ][];
+      final int[] codeLengths = new int[ messages.length ];
+      for ( int i = 0 ; i < messages.length ; i++ ) {
+         codeArrays[ i ] = Arrays.copyOfRange( encoded.array(), codes[ i ], codes[ i + 1 ] );
+         codeLengths[ i ] = codeArrays[ i ].length;
+      }
+      final int[] sliceBack = d.decodeBatch( codeArrays, new int[ messages.length ], codeLengths, decoded.clear() );
+      assertArrayEquals( "Slice decode", packed.toByteArray(), Arrays.copyOfRange( decoded.array(), sliceBack[ 0 ], sliceBack[ messages.length ] ) );
+      assertArrayEquals( "Empty batch", new int[]{ decoded.length() }, d.decodeBatch( new byte[ 0 ], new int[]{ 0 }, decoded ) );
+
+      final int length = decoded.length();
+      codeArrays[ 100 ][ 1 ] = (byte) 0x80;
+      testException( () -> d.decodeBatch( codeArrays, new int[ messages.length ], codeLengths, decoded ), IllegalArgumentException.class, "Batch decode malformed data" );
+      assertEquals( "Sink length after malformed data", length, decoded.length() );
+      testException( () -> e.encodeBatch( new byte[ 4 ], new int[ 0 ], encoded ), IllegalArgumentException.class, "Batch without end" );
+      testException( () -> e.encodeBatch( new byte[ 4 ], new int[]{ 0, 3, 2 }, encoded ), IllegalArgumentException.class, "Batch decreasing" );
+      testException( () -> e.encodeBatch( new byte[ 4 ], new int[]{ 0, 5 }, encoded ), IllegalArgumentException.class, "Batch beyond data" );
+      testException( () -> e.encodeBatch( messages, starts, new int[ 1 ], encoded ), IllegalArgumentException.class, "Batch mismatch" );
+      testException( () -> d.decodeBatch( new byte[][]{ new byte[ 5 ] }, new int[]{ -1 }, new int[]{ 5 }, decoded ), IllegalArgumentException.class, "Batch negative offset" );
+   }
+
+   /** Encode and decode longs and UUIDs, and compare with encoding their big endian bytes. */
+   public void testPrimitives ( Base85.Encoder e, Base85.Decoder d ) {
+      final long[] values = { 0, -1, 1, Long.MIN_VALUE, Long.MAX_VALUE, 0x2020202020202020L, 0x20202020L << 32, rng.nextLong(), rng.nextLong() };
+      final byte[] out = new byte[ 3 + 40 ];
+      for ( long value : values ) {
+         final String test = "Long " + Long.toHexString( value ) + " ";
+         final byte[] bytes = ByteBuffer.allocate( 8 ).putLong( value ).array();
+         final String expected = e.encodeToString( bytes );
+         assertEquals( test + "encode", expected, e.encode( value ) );
+         assertEquals( test + "encode length", expected.length(), e.encode( value, out, 3 ) );
+         assertEquals( test + "encode to array", expected, new String( out, 3, expected.length(), US_ASCII ) );
+         assertEquals( test + "decode", value, d.decodeLong( expected ) );
+         assertEquals( test + "decode array", value, d.decodeLong( out, 3, expected.length() ) );
+
+         final UUID uuid = new UUID( value, ~value );
+         final byte[] uuidBytes = ByteBuffer.allocate( 16 ).putLong( value ).putLong( ~value ).array();
+         final String code = e.encodeToString( uuidBytes );
+         assertEquals( test + "UUID encode", code, e.encode( uuid ) );
+         assertEquals( test + "UUID encode length", code.length(), e.encode( uuid, out, 3 ) );
+         assertEquals( test + "UUID encode to array", code, new String( out, 3, code.length(), US_ASCII ) );
+         assertEquals( test + "UUID decode", uuid, d.decodeUuid( code ) );
+         assertEquals( test + "UUID decode array", uuid, d.decodeUuid( out, 3, code.length() ) );
+      }
+      final String code = e.encode( 0x123456789ABCDEFL );
+      testException( () -> d.decodeLong( code.substring( 0, 9 ) ), IllegalArgumentException.class, "Long too short" );
+      testException( () -> d.decodeLong( code + code.substring( 0, 2 ) ), IllegalArgumentException.class, "Long too long" );
+      testException( () -> d.decodeLong( code.substring( 0, 9 ) + "\u0130" ), IllegalArgumentException.class, "Long non-ASCII" );
+      testException( () -> d.decodeUuid( code + code.substring( 0, 7 ) + "\u00000" ), IllegalArgumentException.class, "UUID invalid character" );
+      testException( () -> d.decodeLong( new byte[ 10 ], 2, 10 ), IllegalArgumentException.class, "Long outside array" );
+   }
+
+   public void testBufferMalformed ( Base85.Decoder d, String data, int malformedLength, int malformedPosition ) {
+      for ( boolean direct : new boolean[]{ false, true } ) {
+         ByteBuffer src = ByteBuffer.wrap( data.getBytes( US_ASCII ) ), dst = direct ? ByteBuffer.allocateDirect( 16 ) : ByteBuffer.allocate( 16 );
+         CoderResult r = d.decode( src, dst, true );
+         assertTrue( data + " is malformed", r.isMalformed() );
+         assertEquals( data + " malformed length, direct " + direct, malformedLength, r.length() );
+         assertEquals( data + " malformed position, direct " + direct, malformedPosition, src.position() );
+      }
+   }
+
+   /** Compare block encoding against plain division, focusing on boundary values. */
+   public void testBlockArithmetic ( Base85.Encoder e ) {
+      byte[] map = e.getEncodeMap(), block = new byte[4], expected = new byte[5];
+      long[] edges = { 0, 1, 84, 85, 7224, 7225, 614124, 614125, 52200624, 52200625, 0x7FFFFFFFL, 0x80000000L, 0xFFFFFFFEL, 0xFFFFFFFFL };
+      for ( int i = 0 ; i < 100000 ; i++ ) {
+         long value = i < edges.length ? edges[ i ] : rng.nextInt() & 0xFFFFFFFFL;
+         if ( value == 0 || value == 0x20202020 ) continue; // Ascii85 compression
+         for ( int j = 3 ; j >= 0 ; j-- ) block[ 3 - j ] = (byte) ( value >>> ( j * 8 ) );
+         for ( int j = 4 ; j >= 0 ; j-- ) {
+            expected[ j ] = map[ (int) ( value % 85 ) ];
+            value /= 85;
+         }
+         assertArrayEquals( "Encode " + randData( block, 4 ), expected, e.encode( block ) );
+      }
+   }
+
+   /** Values just below and above 2^32 should be accepted and rejected respectively. */
+   public void testDecodeOverflow ( Base85.Encoder e, Base85.Decoder d ) {
+      byte[] max = new byte[]{ -1, -1, -1, -1 }, map = e.getEncodeMap();
+      byte[] code = e.encode( max ), over = code.clone();
+      assertArrayEquals( "Decode 2^32-1", max, d.decode( code ) );
+      for ( int i = 4 ; i >= 0 ; i-- ) { // Add one to get 2^32
+         int digit = d.getDecodeMap()[ over[i] ] + 1;
+         over[i] = map[ digit % 85 ];
+         if ( digit < 85 ) break;
+      }
+      testException( () -> d.decode( over ), IllegalArgumentException.class, "Decode 2^32" );
+      byte[] highest = new byte[]{ map[84], map[84], map[84], map[84], map[84] };
+      testException( () -> d.decode( highest ), IllegalArgumentException.class, "Decode 85^5-1" );
+      testException( () -> d.decode( Arrays.copyOf( highest, 2 ) ), IllegalArgumentException.class, "Decode dangling overflow" );
+   }
+
+   public void testTryDecode ( Base85.Encoder e, Base85.Decoder d, String[] map ) {
+      for ( int i = 0 ; i < map.length ; i += 2 ) {
+         byte[] orig = map[i].getBytes( UTF_8 ), code = ( "--" + map[i+1] ).getBytes( US_ASCII ), out = new byte[ orig.length + 1 ];
+         Base85.Result r = d.tryDecode( code, 2, code.length - 2, out, 1 );
+         assertTrue( "tryDecode " + map[i+1], r.isValid() );
+         assertEquals( "tryDecode length " + map[i+1], orig.length, r.getLength() );
+         assertArrayEquals( "tryDecode " + map[i+1], orig, Arrays.copyOfRange( out, 1, out.length ) );
+         assertEquals( "validate " + map[i+1], orig.length, d.validate( code, 2, code.length - 2 ).getLength() );
+         assertEquals( "validate string " + map[i+1], orig.length, d.validate( map[i+1] ).getLength() );
+      }
+   }
+
+   public void testTryDecodeError ( Base85.Decoder d, String data, Base85.Result.Reason reason, int offset ) {
+      byte[] code = data.getBytes( UTF_8 );
+      Base85.Result r = d.tryDecode( code, 0, code.length, new byte[ code.length * 4 ], 0 );
+      assertFalse( "tryDecode " + data + " should fail", r.isValid() );
+      assertEquals( "tryDecode " + data + " reason", reason, r.getReason() );
+      assertEquals( "tryDecode " + data + " offset", offset, r.getErrorOffset() );
+      assertEquals( "validate " + data, r.toString(), d.validate( code ).toString() );
+      assertEquals( "validate string " + data, r.toString(), d.validate( data ).toString() );
+      assertFalse( "test " + data, d.test( code ) );
+      assertFalse( "test string " + data, d.test( data ) );
+   }
+
+   /** Validate random text with random corruptions, and compare with tryDecode which decodes the text. */
+   public void testValidate ( Base85.Encoder e, Base85.Decoder d ) {
+      final Random rnd = new Random( 20 );
+      final byte[] map = e.getEncodeMap();
+      for ( int len = 0 ; len < 600 ; len += 1 + len / 8 ) {
+         final byte[] orig = new byte[ len ];
+         rnd.nextBytes( orig );
+         if ( len > 12 ) Arrays.fill( orig, len / 3 & ~3, ( len / 3 & ~3 ) + 8, (byte) ( len % 2 == 0 ? 0 : ' ' ) );
+         final byte[] code = e.encode( orig );
+         for ( int round = 0 ; round < 8 ; round++ ) {
+            final byte[] bad = Arrays.copyOf( code, round == 7 && code.length > 0 ? code.length - 1 : code.length );
+            if ( round > 0 && round < 7 && code.length > 0 ) {
+               final int i = rnd.nextInt( code.length );
+               switch ( round ) {
+                  case 1 : bad[i] = (byte) rnd.nextInt( 256 ); break;
+                  case 2 : bad[i] = (byte) 'z'; break;
+                  case 3 : bad[i] = (byte) 'y'; break;
+                  case 4 : Arrays.fill( bad, i / 5 * 5, Math.min( i / 5 * 5 + 5, bad.length ), map[84] ); break;
+                  case 5 : bad[i] = (byte) ( '!' + rnd.nextInt( 94 ) ); break; // Gaps in the range of the alphabet
+                  default : bad[i] = map[ rnd.nextInt( 85 ) ];
+               }
+            }
+            final String test = d.getClass().getSimpleName() + " " + len + " round " + round;
+            final Base85.Result expected = d.tryDecode( bad, 0, bad.length, new byte[ bad.length + 8 ], 0 ), actual = d.validate( bad );
+            assertEquals( test, expected.toString(), actual.toString() );
+            assertEquals( test + " test", expected.isValid(), d.test( bad ) );
+            assertEquals( test + " test text", expected.isValid(), d.test( new String( bad, ISO_8859_1 ) ) );
+         }
+      }
+   }
+
    public void testInvalidLength ( Base85.Encoder e, Base85.Decoder d ) {
       byte[] buf = new byte[4];
       Arrays.fill( buf, e.getEncodeMap()[0] ); // Fill in valid values in case an decode actually tries to read it
@@ -178,6 +632,72 @@ public class Base85Test {
       recurTestValidate( validCodes, invalidCodes, new byte[11], 0, d );
    }
 
+   /** Run the differential test on every engine available in this runtime.  Skipped when there is none, e.g. on Java 8. */
+   public void testEngine ( Base85.Encoder e, Base85.Decoder d ) {
+      int tested = 0;
+      for ( String name : ENGINES ) {
+         final Base85.Engine engine = Base85.loadEngine( name );
+         if ( engine == null ) continue;
+         testEngine( e, d, engine );
+         tested++;
+      }
+      assumeTrue( tested > 0 );
+   }
+
+   /** Compare a bulk engine with the scalar code on random data of many lengths, with runs of zeros and spaces,
+     * and check that malformed data found by the engine is still reported.  The same data is used for every engine. */
+   public void testEngine ( Base85.Encoder encoder, Base85.Decoder decoder, Base85.Engine engine ) {
+      final Random rnd = new Random( 17 );
+      final byte[] map = encoder.getEncodeMap();
+      final Base85.Encoder e = encoder.withEngine( engine ), scalar = encoder.withEngine( null );
+      final Base85.Decoder d = decoder.withEngine( engine );
+      for ( int len = 0 ; len < 5000 ; len += len < 300 ? 1 : 997 ) {
+         final byte[] orig = new byte[ len ];
+         rnd.nextBytes( orig );
+         if ( len > 100 && len % 3 == 0 ) Arrays.fill( orig, len / 2 & ~3, ( len / 2 & ~3 ) + 4, (byte) ( len % 2 == 0 ? 0 : ' ' ) );
+         if ( len > 200 && len % 5 == 0 ) Arrays.fill( orig, 8, len / 3 & ~3, (byte) ( len % 2 == 0 ? 0 : ' ' ) );
+         final byte[] code = e.encode( orig ), out = new byte[ code.length + 8 ];
+         Arrays.fill( out, (byte) '#' );
+         assertEquals( engine.getName() + " encode length " + len, code.length, e.encode( orig, 0, len, out, 4 ) );
+         assertArrayEquals( engine.getName() + " decode " + len, orig, d.decode( code ) );
+         final byte[] back = new byte[ len + 4 ];
+         assertEquals( engine.getName() + " decode length " + len, len, d.decode( code, 0, code.length, back, 2 ) );
+         assertArrayEquals( engine.getName() + " decode range " + len, orig, Arrays.copyOfRange( back, 2, len + 2 ) );
+         final byte[] bad = code.clone(), overflow = code.clone();
+         if ( code.length >= 5 ) {
+            bad[ rnd.nextInt( code.length ) ] = (byte) 128;
+            final int block = rnd.nextInt( code.length / 5 ) * 5;
+            Arrays.fill( overflow, block, block + 5, map[84] );
+         }
+         assertArrayEquals( engine.getName() + " encode " + len, code, scalar.encode( orig ) );
+         assertArrayEquals( engine.getName() + " encode range " + len, Arrays.copyOfRange( out, 4, out.length - 4 ), code );
+         assertEquals( engine.getName() + " encode bounds " + len, "########", new String( out, 0, 4, US_ASCII ) + new String( out, out.length - 4, 4, US_ASCII ) );
+         if ( code.length < 5 ) continue;
+         testException( () -> d.decode( bad ), IllegalArgumentException.class, engine.getName() + " decode invalid " + len );
+         testException( () -> d.decode( overflow ), IllegalArgumentException.class, engine.getName() + " decode overflow " + len );
+         assertFalse( engine.getName() + " test invalid " + len, d.test( bad ) );
+         for ( byte[] data : new byte[][]{ code, bad, overflow } )
+            assertEquals( engine.getName() + " validate " + len, d.tryDecode( data, 0, data.length, new byte[ len + 8 ], 0 ).toString(), d.validate( data ).toString() );
+      }
+      for ( int i = 0 ; i < 200 ; i++ ) {
+         final byte[] data = new byte[ 1 + rnd.nextInt( 300 ) ];
+         final int start = rnd.nextInt( data.length ), run = rnd.nextInt( data.length - start + 1 );
+         final byte fill = i % 2 == 0 ? 0 : (byte) 'z';
+         rnd.nextBytes( data );
+         Arrays.fill( data, start, start + run, fill );
+         int expected = run;
+         while ( start + expected < data.length && data[ start + expected ] == fill ) expected++;
+         final int length = rnd.nextInt( data.length - start + 1 );
+         assertEquals( engine.getName() + " run " + i, Math.min( expected, length ), engine.run( data, start, length, fill ) );
+      }
+      final byte[] blocks = new byte[ 4000 ], small = new byte[ 1003 ];
+      rnd.nextBytes( blocks );
+      assertTrue( engine.getName() + " encode short output", engine.encode( map, blocks, 0, 1000, small, 3, false, false ) <= 200 );
+      testValidate( e, d );
+   }
+
+   private static final String[] ENGINES = { "vector", "swar" };
+
    /////////// RFC Tests ///////////
 
    private final String[] rfcTests = {
@@ -203,13 +723,72 @@ public class Base85Test {
       assertArrayEquals( "Inet decode", addr, rfcD.decodeBlockReverse( encoded.getBytes( US_ASCII ) ) );
    }
 
+   /** Compare block reverse coding with plain BigInteger division, for the 64 and 128 bits paths and the divide and conquer path. */
+   @Test public void testRfcBlockReverse() {
+      Random rnd = new Random( 1924 );
+      byte[] map = rfcE.getEncodeMap();
+      for ( int len : new int[]{ 0, 1, 2, 3, 4, 5, 7, 8, 9, 15, 16, 17, 31, 32, 33, 100, 1000, 4099 } ) {
+         for ( int round = 0 ; round < 4 ; round++ ) {
+            byte[] data = new byte[ len ];
+            rnd.nextBytes( data );
+            if ( round == 1 && len > 0 ) Arrays.fill( data, 0, len / 2 + 1, (byte) 0 ); // Leading zeros
+            if ( round == 2 ) Arrays.fill( data, (byte) 0xFF );
+            String test = "byte[" + len + "] " + randData( data, Math.min( len, 8 ) );
+            byte[] expected = new byte[ (int) Math.ceil( len * 1.25 ) ];
+            BigInteger sum = new BigInteger( 1, data ), b85 = BigInteger.valueOf( 85 );
+            for ( int i = expected.length - 1 ; i >= 0 ; i-- ) {
+               BigInteger[] mod = sum.divideAndRemainder( b85 );
+               expected[ i ] = map[ mod[1].intValue() ];
+               sum = mod[0];
+            }
+            byte[] encoded = rfcE.encodeBlockReverse( data );
+            assertArrayEquals( test + " encode", expected, encoded );
+            assertArrayEquals( test + " decode", data, rfcD.decodeBlockReverse( encoded ) );
+         }
+      }
+      byte[] code = new byte[ 22 ], addr = new byte[ 18 ];
+      assertEquals( "Block reverse encode offset", 20, rfcE.encodeBlockReverse( new byte[ 20 ], 2, 16, code, 2 ) );
+      assertEquals( "Block reverse decode offset", 16, rfcD.decodeBlockReverse( code, 2, 20, addr, 2 ) );
+      assertArrayEquals( "Block reverse offset round trip", new byte[ 18 ], addr );
+      for ( String err : new String[]{ "1", "|NsC1", "=r54lj&NUUO~Hi%c2ym1", "=r54lj&NUUO~Hi%c2ym\"" } )
+         try {
+            rfcD.decodeBlockReverse( err.getBytes( US_ASCII ) );
+            fail( "Block reverse decode should fail on " + err );
+         } catch ( IllegalArgumentException expected ) {}
+   }
+
    @Test public void testRfcStrEncode() { testStrEncode( rfcE, rfcTests ); }
    @Test public void testRfcStrDecode() { testStrDecode( rfcD, rfcTests ); }
+   @Test public void testRfcChars() throws IOException { testChars( rfcE, rfcD, rfcTests ); }
    @Test public void testRfcEncode() { testByteEncode( rfcE, rfcTests ); }
    @Test public void testRfcDecode() { testByteDecode( rfcD, rfcTests ); }
    @Test public void testRfcRoundTrip() { testRoundTrip( rfcE, rfcD ); }
+   @Test public void testRfcArithmetic() { testBlockArithmetic( rfcE ); }
+   @Test public void testRfcOverflow() { testDecodeOverflow( rfcE, rfcD ); }
    @Test public void testRfcWrongData() { testInvalidData( rfcE, rfcD ); }
    @Test public void testRfcWrongLength() { testInvalidLength( rfcE, rfcD ); }
+   @Test public void testRfcTryDecode() {
+      testTryDecode( rfcE, rfcD, rfcTests );
+      testTryDecodeError( rfcD, "K|(`B~~~~~", Base85.Result.Reason.BLOCK_OVERFLOW, 5 );
+      testTryDecodeError( rfcD, "K|(\"B", Base85.Result.Reason.INVALID_CHARACTER, 3 );
+      testTryDecodeError( rfcD, "K|(`BMM\u00e9", Base85.Result.Reason.INVALID_CHARACTER, 7 );
+      testTryDecodeError( rfcD, "K|(`BM", Base85.Result.Reason.INVALID_LENGTH, 5 );
+      testTryDecodeError( rfcD, "K|(`B~~", Base85.Result.Reason.BLOCK_OVERFLOW, 5 );
+      testValidate( rfcE, rfcD );
+   }
+   @Test public void testRfcEngine() { testEngine( rfcE, rfcD ); }
+   @Test public void testRfcParallel() { testParallel( rfcE, rfcD ); }
+   @Test public void testRfcStream() throws IOException { testStream( rfcE, rfcD ); }
+   @Test public void testRfcParallelStream() throws IOException { testParallelStream( rfcE, rfcD ); }
+   @Test public void testRfcSink() { testSink( rfcE, rfcD ); }
+   @Test public void testRfcBatch() { testBatch( rfcE, rfcD ); }
+   @Test public void testRfcPrimitives() { testPrimitives( rfcE, rfcD ); }
+   @Test public void testRfcBuffer() {
+      testBufferRoundTrip( rfcE, rfcD );
+      testBufferMalformed( rfcD, "K|(`B~~~~~", 5, 5 );
+      testBufferMalformed( rfcD, "K|(`B'", 1, 5 );
+      testBufferMalformed( rfcD, "K|(\"B", 5, 0 );
+   }
 
    @Test(expected = IllegalArgumentException.class) public void testRfcDecodedLenErr6() {
       rfcD.calcDecodedLength( null, 0, 6 );
@@ -243,11 +822,62 @@ public class Base85Test {
 
    @Test public void testZ85StrEncode() { testStrEncode( z85E, z85Tests ); }
    @Test public void testZ85StrDecode() { testStrDecode( z85D, z85Tests ); }
+   @Test public void testZ85Chars() throws IOException { testChars( z85E, z85D, z85Tests ); }
    @Test public void testZ85Encode() { testByteEncode( z85E, z85Tests ); }
    @Test public void testZ85Decode() { testByteDecode( z85D, z85Tests ); }
    @Test public void testZ85RoundTrip() { testRoundTrip( z85E, z85D ); }
+   @Test public void testZ85Arithmetic() { testBlockArithmetic( z85E ); }
+   @Test public void testZ85Overflow() { testDecodeOverflow( z85E, z85D ); }
    @Test public void testZ85WrongData() { testInvalidData( z85E, z85D ); }
    @Test public void testZ85WrongLength() { testInvalidLength( z85E, z85D ); }
+   @Test public void testZ85TryDecode() {
+      testTryDecode( z85E, z85D, z85Tests );
+      testTryDecodeError( z85D, "k%^}b#####", Base85.Result.Reason.BLOCK_OVERFLOW, 5 );
+      testTryDecodeError( z85D, "k%^}b\u0000", Base85.Result.Reason.INVALID_CHARACTER, 5 );
+      testTryDecodeError( z85D, "k%^}bmmG^rn", Base85.Result.Reason.INVALID_LENGTH, 10 );
+      testValidate( z85E, z85D );
+   }
+   @Test public void testZ85Engine() { testEngine( z85E, z85D ); }
+   @Test public void testZ85Parallel() { testParallel( z85E, z85D ); }
+   @Test public void testZ85Stream() throws IOException { testStream( z85E, z85D ); }
+   @Test public void testZ85ParallelStream() throws IOException { testParallelStream( z85E, z85D ); }
+   @Test public void testZ85Sink() { testSink( z85E, z85D ); }
+   @Test public void testZ85Batch() { testBatch( z85E, z85D ); }
+   @Test public void testZ85Primitives() { testPrimitives( z85E, z85D ); }
+   @Test public void testZ85Key() {
+      final Base85.Z85Encoder e = (Base85.Z85Encoder) Base85.getZ85Encoder();
+      final Base85.Z85Decoder d = (Base85.Z85Decoder) Base85.getZ85Decoder();
+      final byte[] key = { // CurveZMQ example server public key
+         (byte) 0xBB, (byte) 0x88, (byte) 0x47, (byte) 0x1D, (byte) 0x65, (byte) 0xE2, (byte) 0x65, (byte) 0x9B,
+         (byte) 0x30, (byte) 0xC5, (byte) 0x5A, (byte) 0x53, (byte) 0x21, (byte) 0xCE, (byte) 0xBB, (byte) 0x5A,
+         (byte) 0xAB, (byte) 0x2B, (byte) 0x70, (byte) 0xA3, (byte) 0x98, (byte) 0x64, (byte) 0x5C, (byte) 0x26,
+         (byte) 0xDC, (byte) 0xA2, (byte) 0xB2, (byte) 0xFC, (byte) 0xB4, (byte) 0x3F, (byte) 0xC5, (byte) 0x18 };
+      final String text = "Yne@$w-vo<fVvi]a<NY6T1ed:M$fCG*[IaLV{hID";
+      assertEquals( "Key encode", text, e.encodeKey( key ) );
+      assertArrayEquals( "Key decode", key, d.decodeKey( text ) );
+      assertEquals( "Static key encode", text, Base85.encodeZ85Key( key ) );
+      assertArrayEquals( "Static key decode", key, Base85.decodeZ85Key( text ) );
+      for ( int i = 0 ; i < 20 ; i++ ) {
+         final byte[] random = new byte[ 34 ], out = new byte[ 44 ], back = new byte[ 33 ];
+         rng.nextBytes( random );
+         Base85.encodeZ85Key( random, 2, out, 4 );
+         assertEquals( "Random key " + i, z85E.encodeToString( Arrays.copyOfRange( random, 2, 34 ) ), new String( out, 4, 40, US_ASCII ) );
+         Base85.decodeZ85Key( new String( out, 4, 40, US_ASCII ), back, 1 );
+         assertArrayEquals( "Random key back " + i, Arrays.copyOfRange( random, 2, 34 ), Arrays.copyOfRange( back, 1, 33 ) );
+      }
+      testException( () -> e.encodeKey( new byte[ 31 ] ), IllegalArgumentException.class, "Short key" );
+      testException( () -> e.encodeKey( new byte[ 32 ], 1, new byte[ 40 ], 0 ), IllegalArgumentException.class, "Key outside array" );
+      testException( () -> e.encodeKey( new byte[ 32 ], 0, new byte[ 40 ], 1 ), IllegalArgumentException.class, "Key output outside array" );
+      testException( () -> d.decodeKey( text.substring( 5 ) ), IllegalArgumentException.class, "Short key text" );
+      testException( () -> d.decodeKey( text.substring( 0, 35 ) + "#####" ), IllegalArgumentException.class, "Key overflow" );
+      testException( () -> d.decodeKey( text.substring( 0, 39 ) + "\u00e9" ), IllegalArgumentException.class, "Non-ASCII key" );
+      testException( () -> d.decodeKey( text, new byte[ 32 ], 1 ), IllegalArgumentException.class, "Key output outside array" );
+   }
+   @Test public void testZ85Buffer() {
+      testBufferRoundTrip( z85E, z85D );
+      testBufferMalformed( z85D, "k%^}b####", 4, 5 );
+      testBufferMalformed( z85D, "k%^}b,", 1, 5 );
+   }
 
    @Test(expected = IllegalArgumentException.class) public void testZ85DecodedLenErr6() {
       z85D.calcDecodedLength( null, 0, 6 );
@@ -286,14 +916,668 @@ public class Base85Test {
    }
    @Test public void testA85StrEncode() { testStrEncode( a85E, A85Tests ); }
    @Test public void testA85StrDecode() { testStrDecode( a85D, A85Tests ); }
+   @Test public void testA85Chars() throws IOException { testChars( a85E, a85D, A85Tests ); }
    @Test public void testA85Encode() { testByteEncode( a85E, A85Tests ); }
    @Test public void testA85Decode() { testByteDecode( a85D, A85Tests ); }
    @Test public void testA85RoundTrip() { testRoundTrip( a85E, a85D ); }
+   @Test public void testA85Arithmetic() { testBlockArithmetic( a85E ); }
+   @Test public void testA85Overflow() { testDecodeOverflow( a85E, a85D ); }
    @Test public void testA85WrongData() {
       testInvalidData( a85E, a85D );
       assertFalse( "Ascii85 test \"ya\" should fail", a85D.test( "ya" ) );
       assertFalse( "Ascii85 test \"zya\" should fail", a85D.test( "zya" ) );
+      final byte[] runs = new byte[ 200 ];
+      Arrays.fill( runs, (byte) 'z' );
+      Arrays.fill( runs, 60, 140, (byte) '9' );
+      assertTrue( "Ascii85 test bytes with runs", a85D.test( runs ) );
+      runs[ 60 ] = 'y';
+      assertFalse( "Ascii85 test misplaced y", a85D.test( runs ) );
+      runs[ 60 ] = (byte) 0xB9;
+      assertFalse( "Ascii85 test non-ASCII byte", a85D.test( runs ) );
+      assertFalse( "Ascii85 test outside array", a85D.test( runs, 100, 101 ) );
+      assertFalse( "Ascii85 test negative offset", a85D.test( runs, -1, 10 ) );
    }
    @Test public void testA85WrongLength() { testInvalidLength( a85E, a85D ); }
+   @Test public void testA85TryDecode() {
+      testTryDecode( a85E, a85D, A85Tests );
+      testTryDecodeError( a85D, "zyuuuuu", Base85.Result.Reason.BLOCK_OVERFLOW, 2 );
+      testTryDecodeError( a85D, "zy5sz", Base85.Result.Reason.MISPLACED_COMPRESSION, 4 );
+      testTryDecodeError( a85D, "zy5sdq,5~", Base85.Result.Reason.INVALID_CHARACTER, 8 );
+      testTryDecodeError( a85D, "zya", Base85.Result.Reason.INVALID_LENGTH, 2 );
+      testValidate( a85E, a85D );
+   }
+   @SuppressWarnings( "deprecation" )
+   @Test public void testA85Compression() {
+      Base85.Ascii85Encoder shared = Base85.getAscii85Encoder( true, true );
+      byte[] data = new byte[]{ 0, 0, 0, 0, 32, 32, 32, 32, 0, 0, 0, 0 };
+      assertEquals( "Shared encoder", "zyz", shared.encodeToString( data ) );
+      assertEquals( "No z", "!!!!!y!!!!!", shared.withZeroCompression( false ).encodeToString( data ) );
+      assertEquals( "No y", "z+<VdLz", shared.withSpaceCompression( false ).encodeToString( data ) );
+      Base85.Ascii85Encoder none = shared.withZeroCompression( false ).withSpaceCompression( false );
+      assertEquals( "No compression", "!!!!!+<VdL!!!!!", none.encodeToString( data ) );
+      assertEquals( "No compression length", 15, none.calcEncodedLength( data ) );
+      assertSame( "Immutable encoders are cached", shared, none.withZeroCompression( true ).withSpaceCompression( true ) );
+      try {
+         shared.setZeroCompression( false );
+         fail( "Shared encoder should be immutable" );
+      } catch ( UnsupportedOperationException expected ) {}
+      assertTrue( "Shared encoder unchanged", shared.getZeroCompression() );
+      Base85.Ascii85Encoder mutable = new Base85.Ascii85Encoder();
+      mutable.setSpaceCompression( false );
+      assertEquals( "Mutable encoder", "z+<VdLz", mutable.encodeToString( data ) );
+      assertEquals( "Shared encoder unaffected", "zyz", shared.encodeToString( data ) );
+      Base85.Ascii85Encoder legacy = (Base85.Ascii85Encoder) Base85.getAscii85Encoder();
+      assertSame( "Legacy encoder is shared", legacy, Base85.getAscii85Encoder() );
+      try {
+         legacy.setZeroCompression( false );
+         assertEquals( "Legacy encoder is mutable", "!!!!!y!!!!!", legacy.encodeToString( data ) );
+      } finally {
+         legacy.setZeroCompression( true );
+      }
+      assertEquals( "Legacy encoder", "zyz", legacy.encodeToString( data ) );
+   }
+   @Test public void testA85OnePass() {
+      // Mostly compressed blocks force the one-pass decoder to grow its output several times.
+      byte[] orig = new byte[ 4099 ];
+      for ( int i = 0 ; i < orig.length ; i += 4 )
+         if ( i % 20 == 0 ) orig[i] = (byte) i;
+         else if ( i % 8 == 0 && i + 4 <= orig.length ) Arrays.fill( orig, i, i + 4, (byte) ' ' );
+      byte[] code = a85E.encode( orig );
+      assertEquals( "Ascii85 one-pass encode length", a85E.calcEncodedLength( orig ), code.length );
+      assertArrayEquals( "Ascii85 one-pass decode", orig, a85D.decode( code ) );
+      byte[] zs = new byte[ 1000 ];
+      Arrays.fill( zs, (byte) 'z' );
+      assertArrayEquals( "Ascii85 all z", new byte[ 4000 ], a85D.decode( zs ) );
+      assertEquals( "Ascii85 direct decode length", 4000, a85D.decode( zs, 0, zs.length, new byte[ 4001 ], 1 ) );
+      assertArrayEquals( "Ascii85 z with dangling", new byte[]{ 0, 0, 0, 0, 'a' }, a85D.decode( a85E.encode( new byte[]{ 0, 0, 0, 0, 'a' } ) ) );
+   }
+   @Test public void testA85Engine() {
+      testEngine( a85E, a85D );
+      testEngine( a85I.withZeroCompression( false ).withSpaceCompression( false ), a85D );
+   }
+   @Test public void testA85Parallel() { testParallel( a85I, a85D ); }
+   @Test public void testA85Stream() throws IOException { testStream( a85E, a85D ); }
+   @Test public void testA85ParallelStream() throws IOException {
+      testParallelStream( a85I, a85D );
+      testParallelStream( a85I.withDelimiters( true ).withLineLength( 7 ), Base85.getAdobeAscii85Decoder() );
+   }
+   @Test public void testA85Sink() {
+      testSink( a85E, a85D );
+      testSink( a85I.withDelimiters( true ).withLineLength( 7 ), Base85.getAdobeAscii85Decoder() );
+   }
+   @Test public void testA85Batch() {
+      testBatch( a85E, a85D );
+      testBatch( a85I.withDelimiters( true ).withLineLength( 7 ), Base85.getAdobeAscii85Decoder() );
+   }
+   /** Runs of zero and space blocks of many lengths and alignments, compared with encoding block by block. */
+   @Test public void testA85Runs() {
+      final byte[] noZ = a85I.withZeroCompression( false ).encode( new byte[ 4 ] );
+      for ( int i = 0 ; i < 100 ; i++ ) {
+         final ByteArrayOutputStream data = new ByteArrayOutputStream(), code = new ByteArrayOutputStream(), plain = new ByteArrayOutputStream();
+         while ( data.size() < i * 40 ) {
+            final int kind = rng.nextInt( 3 ), blocks = 1 + rng.nextInt( rng.nextBoolean() ? 3 : 300 );
+            for ( int b = 0 ; b < blocks ; b++ ) {
+               final byte[] block = new byte[ 4 ];
+               if ( kind == 0 ) rng.nextBytes( block );
+               else if ( kind == 2 ) Arrays.fill( block, (byte) ' ' );
+               data.write( block, 0, 4 );
+               code.write( a85E.encode( block ), 0, kind == 0 ? 5 : 1 );
+               plain.write( kind == 1 ? noZ : a85E.encode( block ), 0, kind == 2 ? 1 : 5 );
+            }
+         }
+         data.write( 1 );
+         code.write( a85E.encode( new byte[]{ 1 } ), 0, 2 );
+         plain.write( a85E.encode( new byte[]{ 1 } ), 0, 2 );
+         final byte[] from = data.toByteArray(), expected = code.toByteArray();
+         assertArrayEquals( "Runs encode " + i, expected, a85E.encode( from ) );
+         assertArrayEquals( "Runs without z " + i, plain.toByteArray(), a85I.withZeroCompression( false ).encode( from ) );
+         final byte[] out = new byte[ expected.length + 2 ];
+         assertEquals( "Runs encode to array " + i, expected.length, a85E.encode( from, 0, from.length, out, 2 ) );
+         assertArrayEquals( "Runs decode " + i, from, a85D.decode( expected ) );
+         final byte[] back = new byte[ from.length + 1 ];
+         assertEquals( "Runs decode to array " + i, from.length, a85D.decode( expected, 0, expected.length, back, 1 ) );
+         assertArrayEquals( "Runs decode range " + i, from, Arrays.copyOfRange( back, 1, back.length ) );
+      }
+      testException( () -> a85D.decode( "zzz".getBytes( US_ASCII ), 0, 3, new byte[ 11 ], 0 ), "Run beyond output" );
+   }
+   @Test public void testA85Primitives() {
+      testPrimitives( a85E, a85D );
+      testPrimitives( a85I.withDelimiters( true ).withLineLength( 7 ), Base85.getAdobeAscii85Decoder() );
+      testPrimitives( a85I.withZeroCompression( false ).withSpaceCompression( false ), a85D );
+      assertEquals( "Zero long", "zz", a85E.encode( 0L ) );
+      assertEquals( "Zero UUID", new UUID( 0, 0 ), a85D.decodeUuid( "zzzz" ) );
+      assertEquals( "Space long", 0x2020202020202020L, a85D.decodeLong( "yy" ) );
+   }
+   @Test public void testA85Buffer() {
+      testBufferRoundTrip( a85E, a85D );
+      testBufferMalformed( a85D, "ya", 1, 1 );
+      testBufferMalformed( a85D, "zya", 1, 2 );
+      testBufferMalformed( a85D, "5sdq,z5sdz,", 5, 6 );
+      testBufferMalformed( a85D, "5sz", 3, 0 );
+   }
+
+   @Test public void testSubclassWriteData() {
+      // Overrides only the array version; direct buffers must go through it too.
+      final Base85.Encoder e = new Base85.Encoder() {
+         @Override protected byte[] getEncodeMap() { return z85E.getCharset().getBytes( US_ASCII ); }
+         @Override protected int _writeData ( long sum, byte[] map, byte[] out, int wi ) {
+            if ( sum != 0 ) return super._writeData( sum, map, out, wi );
+            out[ wi ] = '~';
+            return wi + 1;
+         }
+      };
+      final byte[] data = new byte[ 103 ];
+      rng.nextBytes( data );
+      Arrays.fill( data, 20, 40, (byte) 0 );
+      final byte[] code = e.encode( data );
+      assertEquals( "Array override", '~', code[ 25 ] );
+      assertArrayEquals( "Direct buffer override", code, codeByBuffer( e::encode, data, true ) );
+      assertArrayEquals( "Heap buffer override", code, codeByBuffer( e::encode, data, false ) );
+   }
+
+   @SuppressWarnings( "deprecation" )
+   @Test public void testSubclassAscii85WriteData() {
+      // A subclass of the Ascii85 encoder must see every block, including compressed ones, as with the base encoder.
+      final int[] calls = new int[ 1 ];
+      final Base85.Encoder e = new Base85.Ascii85Encoder() {
+         @Override protected int _writeData ( long sum, byte[] map, byte[] out, int wi ) {
+            calls[ 0 ]++;
+            return super._writeData( sum, map, out, wi );
+         }
+      };
+      final byte[] data = new byte[ 103 ];
+      rng.nextBytes( data );
+      Arrays.fill( data, 20, 40, (byte) 0 );
+      assertArrayEquals( "Ascii85 subclass encode", a85E.encode( data ), e.encode( data ) );
+      assertEquals( "Ascii85 subclass calls", 25, calls[ 0 ] );
+   }
+
+   @Test public void testSubclassPutData() {
+      // Overrides only the array hooks; direct buffers must go through them too.
+      final int[] calls = new int[ 3 ];
+      final Base85.Encoder e = new Base85.Z85Encoder() {
+         @Override protected int _encodeDangling ( byte[] encodeMap, byte[] out, int wi, long sum, int leftover ) {
+            calls[ 0 ]++;
+            return super._encodeDangling( encodeMap, out, wi, sum, leftover );
+         }
+      };
+      final Base85.Decoder d = new Base85.Z85Decoder() {
+         @Override protected int _putData ( byte[] map, byte[] in, int ri, byte[] out, int wi ) {
+            calls[ 1 ]++;
+            return super._putData( map, in, ri, out, wi );
+         }
+         @Override protected int _decodeDangling ( byte[] decodeMap, byte[] in, int ri, byte[] out, int wi, int leftover ) {
+            calls[ 2 ]++;
+            return super._decodeDangling( decodeMap, in, ri, out, wi, leftover );
+         }
+      };
+      final byte[] data = new byte[ 103 ];
+      rng.nextBytes( data );
+      final byte[] code = z85E.encode( data );
+      assertArrayEquals( "Direct buffer encode", code, codeByBuffer( e::encode, data, true ) );
+      assertArrayEquals( "Direct buffer decode", data, codeByBuffer( d::decode, code, true ) );
+      assertArrayEquals( "Direct buffer calls", new int[]{ 1, 25, 1 }, calls );
+      final ByteBuffer out = ByteBuffer.allocateDirect( 4 );
+      assertTrue( "Direct buffer malformed", d.decode( ByteBuffer.wrap( "Hell\"".getBytes( US_ASCII ) ), out, true ).isMalformed() );
+   }
+
+   @SuppressWarnings( "deprecation" )
+   @Test public void testDeprecatedExtensionPoints() {
+      final byte[] encodeMap = z85E.getEncodeMap(), decodeMap = z85D.getDecodeMap(), code = "HelloWorld".getBytes( US_ASCII );
+      final ByteBuffer buffer = ByteBuffer.allocate( 4 );
+      z85D._putData( buffer, decodeMap, code, 5 );
+      assertArrayEquals( "Old _putData", new byte[]{ (byte)0xB5, (byte)0x59, (byte)0xF7, (byte)0x5B }, buffer.array() );
+      assertEquals( "Old _decodeDangling", 2, z85D._decodeDangling( decodeMap, code, 0, buffer, 3 ) );
+      final byte[] out = new byte[ 3 ];
+      assertEquals( "Old _encodeDangling", 3, z85E._encodeDangling( encodeMap, out, 0, buffer, 2 ) );
+      assertArrayEquals( "Old dangling round trip", z85E.encode( Arrays.copyOf( buffer.array(), 2 ) ), out );
+   }
+
+   @SuppressWarnings( "deprecation" )
+   @Test public void testDeprecatedOverrides() {
+      // Subclasses written for the old ByteBuffer hooks still have them called by the codec.
+      final int[] calls = new int[ 3 ];
+      final Base85.Encoder enc = new Base85.Z85Encoder() {
+         @Override protected int _encodeDangling ( byte[] encodeMap, byte[] out, int wi, ByteBuffer buffer, int leftover ) {
+            calls[ 0 ]++;
+            return super._encodeDangling( encodeMap, out, wi, buffer, leftover );
+         }
+      };
+      final Base85.Decoder dec = new Base85.Z85Decoder() {
+         @Override protected void _putData ( ByteBuffer buffer, byte[] map, byte[] in, int ri ) {
+            calls[ 1 ]++;
+            super._putData( buffer, map, in, ri );
+         }
+         @Override protected int _decodeDangling ( byte[] decodeMap, byte[] in, int ri, ByteBuffer buffer, int leftover ) {
+            calls[ 2 ]++;
+            return super._decodeDangling( decodeMap, in, ri, buffer, leftover );
+         }
+      };
+      final byte[] data = new byte[ 4099 ];
+      rng.nextBytes( data );
+      final byte[] code = enc.encode( data );
+      assertArrayEquals( "Old hook encode", z85E.encode( data ), code );
+      assertArrayEquals( "Old hook decode", data, dec.decode( code ) );
+      assertArrayEquals( "Old hook calls", new int[]{ 1, 1024, 1 }, calls );
+   }
+
+   @Test public void testPutDataMap() {
+      // The map passed in decides the alphabet, not the decoder it is called on.
+      final byte[] data = new byte[ 4 ], out = new byte[ 4 ];
+      rng.nextBytes( data );
+      final byte[] code = rfcE.encode( data );
+      assertEquals( "Array _putData", 4, z85D._putData( rfcD.getDecodeMap(), code, 0, out, 0 ) );
+      assertArrayEquals( "Array _putData with map", data, out );
+      final ByteBuffer buf = ByteBuffer.allocateDirect( 4 );
+      assertTrue( "Buffer _putData", z85D._putData( rfcD.getDecodeMap(), ByteBuffer.wrap( code ), 0, buf, 0 ) );
+      assertEquals( "Buffer _putData with map", ByteBuffer.wrap( data ), buf );
+      code[ 0 ] = '.';
+      assertFalse( "Buffer _putData invalid", z85D._putData( rfcD.getDecodeMap(), ByteBuffer.wrap( code ), 0, buf, 0 ) );
+   }
+
+   @Test public void testAsciiDecodeMap() {
+      // A subclass map may cover only ASCII; other bytes are malformed, not out of bounds.
+      final Base85.Decoder d = new Base85.Decoder() {
+         @Override protected byte[] getDecodeMap() { return Arrays.copyOf( z85D.getDecodeMap(), 128 ); }
+         @Override protected String getName() { return "ASCII"; }
+      };
+      final byte[] code = "HelloWorld".getBytes( US_ASCII );
+      assertTrue( "ASCII map test", d.test( code ) );
+      code[ 7 ] = (byte) 0xC0;
+      assertFalse( "ASCII map test non-ASCII", d.test( code ) );
+      testException( () -> d.decode( code ), IllegalArgumentException.class, "ASCII map decode non-ASCII" );
+      testException( () -> d.decodeBlockReverse( code ), IllegalArgumentException.class, "ASCII map reverse non-ASCII" );
+   }
+
+   /////////// Ascii85 Text Tests ///////////
+
+   private final Base85.Decoder adobeD = Base85.getAdobeAscii85Decoder();
+   private final String adobeFrom = "Man is distinguished, not only by his reason";
+   // Line length, encoded text; generated with Python's base64.a85encode( data, wrapcol = length, adobe = True )
+   private final Object[] adobeTests = {
+      0, "<~9jqo^BlbD-BleB1DJ+*+F(f,q/0JhKF<GL>Cj@.4Gp$d7F!,L7@<6@)~>",
+      2, "<~\n9j\nqo\n^B\nlb\nD-\nBl\neB\n1D\nJ+\n*+\nF(\nf,\nq/\n0J\nhK\nF<\nGL\n>C\nj@\n.4\nGp\n$d\n7F\n!,\nL7\n@<\n6@\n)\n~>",
+      3, "<~9\njqo\n^Bl\nbD-\nBle\nB1D\nJ+*\n+F(\nf,q\n/0J\nhKF\n<GL\n>Cj\n@.4\nGp$\nd7F\n!,L\n7@<\n6@)\n~>",
+      5, "<~9jq\no^Blb\nD-Ble\nB1DJ+\n*+F(f\n,q/0J\nhKF<G\nL>Cj@\n.4Gp$\nd7F!,\nL7@<6\n@)~>",
+      16, "<~9jqo^BlbD-BleB\n1DJ+*+F(f,q/0JhK\nF<GL>Cj@.4Gp$d7F\n!,L7@<6@)~>",
+      20, "<~9jqo^BlbD-BleB1DJ+\n*+F(f,q/0JhKF<GL>Cj@\n.4Gp$d7F!,L7@<6@)~>",
+   };
+
+   @Test public void testA85TextEncode() throws IOException {
+      final byte[] from = adobeFrom.getBytes( US_ASCII );
+      for ( int i = 0 ; i < adobeTests.length ; i += 2 ) {
+         final Base85.Ascii85Encoder e = a85I.withDelimiters( true ).withLineLength( (Integer) adobeTests[i] );
+         final String code = (String) adobeTests[i+1], test = "Line length " + adobeTests[i] + " ";
+         assertEquals( test + "encode", code, e.encode( adobeFrom ) );
+         assertEquals( test + "length", code.length(), e.calcEncodedLength( from ) );
+         final byte[] out = new byte[ code.length() + 3 ];
+         assertEquals( test + "direct encode length", code.length(), e.encode( from, 0, from.length, out, 3 ) );
+         assertEquals( test + "direct encode", code, new String( out, 3, code.length(), US_ASCII ) );
+         assertEquals( test + "encode to StringBuilder", "~~" + code, e.encode( from, 0, from.length, new StringBuilder( "~~" ) ).toString() );
+         final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+         writeAll( e.wrap( bos ), from );
+         assertEquals( test + "stream", code, new String( bos.toByteArray(), US_ASCII ) );
+         assertEquals( test + "decode", adobeFrom, adobeD.decode( code ) );
+      }
+      final Base85.Ascii85Encoder e = a85I.withDelimiters( true ).withLineLength( 4 );
+      assertEquals( "Compressed", "<~zy\nz@:B\n~>", e.encodeToString( new byte[]{ 0, 0, 0, 0, 32, 32, 32, 32, 0, 0, 0, 0, 'a', 'b' } ) );
+      assertEquals( "Empty", "<~\n~>", e.withLineLength( 3 ).encodeToString( new byte[ 0 ] ) );
+      assertEquals( "Empty stream", "<~~>", writeAll( e.withLineLength( 0 ), new byte[ 0 ] ) );
+      assertEquals( "No delimiters", "9jqo^BlbD-\nBleB1DJ+*+\nF(f,q/0JhK\nF<GL>Cj@.4\nGp$d7F!,L7\n@<6@)",
+            a85I.withLineLength( 10 ).encode( adobeFrom ) );
+      assertSame( "Plain encoder is shared", Base85.getAscii85Encoder( true, true ), e.withLineLength( 0 ).withDelimiters( false ) );
+      assertEquals( "Compression keeps line length", 4, e.withSpaceCompression( false ).getLineLength() );
+      assertTrue( "Line length keeps delimiters", e.withLineLength( 76 ).getDelimiters() );
+      testException( () -> e.withLineLength( -1 ), IllegalArgumentException.class, "Negative line length" );
+      testException( () -> e.encode( ByteBuffer.allocate( 4 ), ByteBuffer.allocate( 10 ), true ), UnsupportedOperationException.class, "Buffer encode with line breaks" );
+   }
+
+   @Test public void testA85TextDecode() throws IOException {
+      testStrDecode( adobeD, A85Tests );
+      testByteDecode( adobeD, A85Tests );
+      testChars( a85E, adobeD, A85Tests );
+      testRoundTrip( a85E, adobeD );
+      testBufferRoundTrip( a85E, adobeD );
+      testDecodeOverflow( a85E, adobeD );
+      testTryDecode( a85E, adobeD, A85Tests );
+      assertEquals( "Whitespace", "ABCDEFGH", adobeD.decode( " 5s\r\ndq ,7\t7Kd\f<\u000B\0" ) );
+      assertEquals( "Delimiters", "ABCDEFGH", adobeD.decode( "\n<~5sdq,\n77Kd<~>\n" ) );
+      assertEquals( "Dangling before delimiter", "ABC", adobeD.decode( "<~5s\ndp~>" ) );
+      assertEquals( "z and y after line break", "ABCD\0\0\0\0    EFGH", adobeD.decode( "5sdq,\nz\ny7\n7Kd<" ) );
+      assertEquals( "z and y in line after broken block", "ABCD\0\0\0\0    EFGH", adobeD.decode( "5s\ndq,zy77Kd<" ) );
+      assertEquals( "Empty", "", adobeD.decode( "<~ ~>" ) );
+      for ( String bad : new String[]{ "5s z", "5sdq,~", "5sdq,~x", "5sdq,~>5s", "5sdq,\n5", "<~<~5sdq,~>", "~>~>", "uu\nuuu" } ) {
+         assertFalse( "Test " + bad, adobeD.test( bad ) );
+         testException( () -> adobeD.decode( bad ), IllegalArgumentException.class, "Decode " + bad );
+      }
+      testTryDecodeError( adobeD, "5sdq,\n5", Base85.Result.Reason.INVALID_LENGTH, 6 );
+      testTryDecodeError( adobeD, "5s\nz5", Base85.Result.Reason.MISPLACED_COMPRESSION, 3 );
+      testTryDecodeError( adobeD, "<~5sdq,~x", Base85.Result.Reason.INVALID_CHARACTER, 7 );
+      testTryDecodeError( adobeD, "z uu\nuuu", Base85.Result.Reason.BLOCK_OVERFLOW, 2 );
+      testValidate( a85E, adobeD );
+      testBufferMalformed( adobeD, "z5s\nz5sdq", 6, 1 );
+      testBufferMalformed( adobeD, "5sdq,~>\n5", 1, 8 );
+   }
+
+   @Test public void testA85TextRoundTrip() throws IOException {
+      final Random rnd = new Random( 76 );
+      final byte[] spaces = { ' ', '\t', '\n', '\r', '\f', 0x0B, 0 };
+      for ( int len : new int[]{ 0, 1, 5, 100, 8193, 30001, Base85.PARALLEL_THRESHOLD * 3 + 3 } ) {
+         final byte[] from = new byte[ len ];
+         rnd.nextBytes( from );
+         for ( int i = rnd.nextInt( 40 ) ; i + 16 <= len ; i += 40 + rnd.nextInt( 400 ) ) Arrays.fill( from, i, i + 16, rnd.nextBoolean() ? 0 : (byte) ' ' );
+         for ( int width : new int[]{ 0, 1, 7, 76 } ) {
+            final Base85.Ascii85Encoder e = a85I.withLineLength( width ).withDelimiters( width != 7 );
+            final String test = len + " bytes in lines of " + width + " ";
+            final byte[] enc = e.encode( from );
+            assertEquals( test + "length", enc.length, e.calcEncodedLength( from ) );
+            assertArrayEquals( test + "parallel encode", enc, e.encodeParallel( from ) );
+            assertEquals( test + "stream", new String( enc, US_ASCII ), writeAll( e, from ) );
+            assertArrayEquals( test + "decode", from, adobeD.decode( enc ) );
+            assertEquals( test + "decoded length", len, adobeD.calcDecodedLength( enc ) );
+            assertArrayEquals( test + "parallel decode", from, adobeD.decodeParallel( enc ) );
+            assertArrayEquals( test + "stream decode", from, readAll( adobeD.wrap( len < 65536 ? trickle( enc ) : new ByteArrayInputStream( enc ) ) ) );
+            assertArrayEquals( test + "buffer decode", from, codeByBuffer( adobeD::decode, enc, width == 1 ) );
+         }
+         // Strict text with whitespace inserted anywhere, including inside blocks and between z and y.
+         final String code = a85E.encodeToString( from );
+         final StringBuilder text = new StringBuilder();
+         for ( int i = 0, next ; i < code.length() ; i = next ) {
+            next = Math.min( code.length(), i + 1 + rnd.nextInt( 9 ) );
+            text.append( code, i, next ).append( (char) spaces[ rnd.nextInt( spaces.length ) ] );
+         }
+         assertArrayEquals( len + " bytes with random whitespace", from, adobeD.decodeToBytes( text ) );
+         assertArrayEquals( len + " bytes with random whitespace in direct buffers", from, codeByBuffer( adobeD::decode, text.toString().getBytes( US_ASCII ), true ) );
+         assertTrue( len + " bytes with random whitespace test", adobeD.test( text ) );
+      }
+   }
+
+   private String writeAll ( Base85.Encoder e, byte[] data ) throws IOException {
+      final StringWriter writer = new StringWriter();
+      writeAll( e.wrap( writer ), data );
+      return writer.toString();
+   }
+
+   /////////// Custom Tests ///////////
+
+   // Z85 in reverse, so that expected results can be translated from Z85.
+   private final String customAlphabet = new StringBuilder( Base85.getZ85Encoder().getCharset() ).reverse().toString();
+   private final Base85.Custom custom = Base85.custom( customAlphabet );
+   private final Base85.Encoder customE = custom.getEncoder();
+   private final Base85.Decoder customD = custom.getDecoder();
+
+   private String[] customTests () {
+      final String z85 = z85E.getCharset();
+      final String[] tests = z85Tests.clone();
+      for ( int i = 1 ; i < tests.length ; i += 2 ) {
+         final char[] code = tests[i].toCharArray();
+         for ( int j = 0 ; j < code.length ; j++ ) code[j] = customAlphabet.charAt( z85.indexOf( code[j] ) );
+         tests[i] = new String( code );
+      }
+      return tests;
+   }
+
+   @Test public void testCustomStrEncode() { testStrEncode( customE, customTests() ); }
+   @Test public void testCustomStrDecode() { testStrDecode( customD, customTests() ); }
+   @Test public void testCustomEncode() { testByteEncode( customE, customTests() ); }
+   @Test public void testCustomDecode() { testByteDecode( customD, customTests() ); }
+   @Test public void testCustomRoundTrip() { testRoundTrip( customE, customD ); }
+   @Test public void testCustomOverflow() { testDecodeOverflow( customE, customD ); }
+   @Test public void testCustomWrongData() { testInvalidData( customE, customD ); }
+   @Test public void testCustomTryDecode() {
+      testTryDecode( customE, customD, customTests() );
+      testValidate( customE, customD );
+   }
+   @Test public void testCustomEngine() { testEngine( customE, customD ); }
+   @Test public void testCustomSink() { testSink( customE, customD ); }
+   @Test public void testCustomBatch() { testBatch( customE, customD ); }
+   @Test public void testCustomPrimitives() { testPrimitives( customE, customD ); }
+
+   @Test public void testCustom() {
+      assertSame( "Cached by alphabet", custom, Base85.custom( new String( customAlphabet.toCharArray() ) ) );
+      assertEquals( "Alphabet", customAlphabet, customE.getCharset() );
+      final Base85.Custom named = Base85.custom( customAlphabet, "Cookie" );
+      assertEquals( "Name", "Cookie", named.getName() );
+      assertSame( "Name shares encoder", customE, named.getEncoder() );
+      assertSame( "Cached by name", named, Base85.custom( customAlphabet, "Cookie" ) );
+      for ( int i = 0 ; i < Base85.CUSTOM_CACHE ; i++ ) Base85.custom( customAlphabet, "Name " + i );
+      assertNotSame( "Names cache is bounded", Base85.custom( customAlphabet, "Uncached" ), Base85.custom( customAlphabet, "Uncached" ) );
+      testException( () -> named.getDecoder().decode( "0" ), IllegalArgumentException.class, "Malformed named" );
+      try {
+         named.getDecoder().decode( "00000 " );
+         fail( "Malformed named message" );
+      } catch ( IllegalArgumentException ex ) {
+         assertTrue( "Named message", ex.getMessage().contains( "Base85/Cookie" ) );
+      }
+      final String ascii = Base85.getAscii85Encoder().getCharset();
+      assertEquals( "Ascii85 range", Base85.getAscii85Encoder().encodeToString( new byte[]{ 1, 2, 3, 4, 5 } ),
+            Base85.custom( ascii ).getEncoder().encodeToString( new byte[]{ 1, 2, 3, 4, 5 } ) );
+      testException( () -> Base85.custom( customAlphabet.substring( 1 ) ), IllegalArgumentException.class, "84 characters" );
+      testException( () -> Base85.custom( customAlphabet + "~" ), IllegalArgumentException.class, "86 characters" );
+      testException( () -> Base85.custom( "0" + customAlphabet.substring( 1, 84 ) + "0" ), IllegalArgumentException.class, "Repeated character" );
+      testException( () -> Base85.custom( "\u00e9" + customAlphabet.substring( 1 ) ), IllegalArgumentException.class, "Non-ASCII character" );
+      testException( () -> Base85.custom( customAlphabet, "" ), IllegalArgumentException.class, "Empty name" );
+      assertFalse( "Non-ASCII data", customD.test( new byte[]{ (byte) 0xFF, '0', '0', '0', '0' } ) );
+   }
+
+   @Test public void testCustomEngineTables() {
+      // Codecs beyond the cache are new every call; the engine must not keep tables for each of them.
+      final byte[] data = new byte[ 1000 ];
+      rng.nextBytes( data );
+      int tested = 0;
+      for ( String name : ENGINES ) {
+         final Base85.Engine engine = Base85.loadEngine( name );
+         if ( engine == null ) continue;
+         for ( int i = 0 ; i < Base85.Engine.MAX_TABLES * 2 ; i++ ) {
+            final String from = i % 2 == 0 ? customAlphabet : z85E.getCharset(), alphabet = from.substring( i % 85 ) + from.substring( 0, i % 85 );
+            final Base85.Custom codec = Base85.custom( alphabet );
+            final byte[] code = codec.getEncoder().withEngine( engine ).encode( data );
+            assertArrayEquals( engine.getName() + " custom " + i, data, codec.getDecoder().withEngine( engine ).decode( code ) );
+         }
+         assertTrue( engine.getName() + " tables bounded", engine.tableCount() <= 2 * ( Base85.Engine.MAX_TABLES + Base85.CUSTOM_CACHE ) );
+         tested++;
+      }
+      assumeTrue( tested > 0 );
+   }
+
+   /////////// Session Tests ///////////
+
+   @Test public void testSession() {
+      final Random rnd = new Random( 17 );
+      final Base85.Encoder[] encoders = { rfcE, z85E, a85E, a85I.withDelimiters( true ), a85I.withLineLength( 1 ), a85I.withDelimiters( true ).withLineLength( 7 ) };
+      final Base85.Decoder[] decoders = { rfcD, z85D, a85D, adobeD, adobeD, adobeD };
+      for ( int len : new int[]{ 0, 1, 3, 4, 5, 9, 100, 3001 } ) {
+         final byte[] from = new byte[ len ];
+         rnd.nextBytes( from );
+         for ( int i = rnd.nextInt( 6 ) ; i + 8 <= len ; i += 9 + rnd.nextInt( 40 ) ) Arrays.fill( from, i, i + 8, rnd.nextBoolean() ? 0 : (byte) ' ' );
+         for ( int i = 0 ; i < encoders.length ; i++ ) {
+            final Base85.Encoder e = encoders[i];
+            final Base85.Decoder d = decoders[i];
+            final String test = "Session " + i + " of " + len + " bytes ";
+            final byte[] enc = e.encode( from );
+            final Base85.EncoderSession es = e.newSession();
+            assertArrayEquals( test + "encode", enc, pushFragments( es::update, es::finish, from, rnd ) );
+            assertArrayEquals( test + "encode again", enc, pushFragments( es::update, es::finish, from, rnd ) );
+            final int half = len / 2;
+            assertArrayEquals( test + "encode arrays", enc, concat( es.update( from, 0, half ), es.update( from, half, len - half ), es.finish() ) );
+            final Base85.DecoderSession ds = d.newSession();
+            assertArrayEquals( test + "decode", from, pushFragments( ds::update, ds::finish, enc, rnd ) );
+            assertArrayEquals( test + "decode again", from, pushFragments( ds::update, ds::finish, enc, rnd ) );
+            final int split = enc.length / 2;
+            assertArrayEquals( test + "decode arrays", from, concat( ds.update( enc, 0, split ), ds.update( enc, split, enc.length - split ), ds.finish() ) );
+            assertEquals( test + "pending after finish", 0, ds.getPending() );
+         }
+      }
+      final Base85.DecoderSession ds = a85D.newSession();
+      assertArrayEquals( "z after split block", "ABCD\0\0\0\0".getBytes( US_ASCII ),
+            concat( ds.update( "5sd".getBytes( US_ASCII ), 0, 3 ), ds.update( "q,z".getBytes( US_ASCII ), 0, 3 ), ds.finish() ) );
+      assertEquals( "Split block", 0, ds.update( "5s".getBytes( US_ASCII ), 0, 2 ).length );
+      assertEquals( "Pending characters", 2, ds.getPending() );
+      testException( () -> { ds.update( "z".getBytes( US_ASCII ), 0, 1 ); ds.finish(); }, IllegalArgumentException.class, "z inside split block" );
+      final Base85.DecoderSession zs = z85D.newSession();
+      assertTrue( "Malformed buffer", zs.update( ByteBuffer.wrap( "00 00".getBytes( US_ASCII ) ), ByteBuffer.allocate( 8 ) ).isMalformed() );
+      testException( () -> z85D.newSession().update( new byte[]{ '0', '0', ' ', '0', '0' }, 0, 5 ), IllegalArgumentException.class, "Malformed array" );
+      final Base85.EncoderSession es = a85E.newSession();
+      assertEquals( "Complete block", "z", new String( es.update( new byte[ 7 ], 0, 7 ), US_ASCII ) );
+      assertEquals( "Pending bytes", 3, es.getPending() );
+   }
+
+   /** Push data through a session in random fragments, with a small output buffer. */
+   private byte[] pushFragments ( BiFunction<ByteBuffer,ByteBuffer,CoderResult> update, Function<ByteBuffer,CoderResult> finish, byte[] data, Random rnd ) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final ByteBuffer dst = ByteBuffer.allocate( 5 + rnd.nextInt( 12 ) );
+      for ( int pos = 0 ; ; ) {
+         final boolean end = pos == data.length;
+         final ByteBuffer src = ByteBuffer.wrap( data, pos, end ? 0 : 1 + rnd.nextInt( Math.min( data.length - pos, 11 ) ) );
+         CoderResult result;
+         do {
+            result = end ? finish.apply( dst ) : update.apply( src, dst );
+            assertFalse( "Session result " + result, result.isError() );
+            out.write( dst.array(), 0, dst.position() );
+            dst.clear();
+         } while ( result.isOverflow() );
+         assertFalse( "Session used up fragment", src.hasRemaining() );
+         if ( end ) return out.toByteArray();
+         pos = src.position();
+      }
+   }
 
+   private static byte[] concat ( byte[] ... parts ) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for ( byte[] part : parts ) out.write( part, 0, part.length );
+      return out.toByteArray();
+   }
+
+   /////////// Monitor Tests ///////////
+
+   @Test public void testMonitor() throws Exception {
+      final Base85.MonitorMXBean monitor = Base85.getMonitor();
+      assumeTrue( "Monitoring is on", monitor != null ); // Maven runs the monitor tests again with monitoring on
+      monitor.reset();
+      assertEquals( "Ascii85 encode", "zy!<", a85E.encodeToString( new byte[]{ 0, 0, 0, 0, 32, 32, 32, 32, 1 } ) );
+      assertEquals( "Z85 decode", 8, z85D.decode( "HelloWorld".getBytes( US_ASCII ), 0, 10, new byte[ 8 ], 0 ) );
+      assertEquals( "Ascii85 decode", 9, a85D.decodeToBytes( "zy!<" ).length );
+      testException( () -> z85D.decode( "Hello Worl" ), IllegalArgumentException.class, "Malformed Z85" );
+      assertFalse( "Malformed tryDecode", z85D.tryDecode( "Hello Worl".getBytes( US_ASCII ), 0, 10, new byte[ 8 ], 0 ).isValid() );
+      testException( () -> a85D.decode( "zz!!!!!!".getBytes( US_ASCII ), 0, 8, new Base85.ByteSink() ), IllegalArgumentException.class, "Malformed Ascii85 sink" );
+      assertEquals( "Encode count", 1, monitor.getEncodeCount() );
+      assertEquals( "Encode bytes in", 9, monitor.getEncodeBytesIn() );
+      assertEquals( "Encode bytes out", 4, monitor.getEncodeBytesOut() );
+      assertEquals( "Decode count", 2, monitor.getDecodeCount() );
+      assertEquals( "Decode bytes in", 14, monitor.getDecodeBytesIn() );
+      assertEquals( "Decode bytes out", 17, monitor.getDecodeBytesOut() );
+      assertEquals( "Malformed count", 3, monitor.getMalformedCount() );
+      assertEquals( "Compressed blocks", 4, monitor.getCompressedBlockCount() );
+      final Object mbean = ManagementFactory.getPlatformMBeanServer().getAttribute( new ObjectName( Base85.MONITOR_NAME ), "EncodeCount" );
+      assertEquals( "MXBean", 1L, mbean );
+      monitor.reset();
+      assertEquals( "Reset", 0, monitor.getDecodeBytesOut() );
+      final byte[] batch = new byte[ 40 ]; // Eight messages of a zero block and one dangling byte
+      final int[] offsets = new int[ 9 ];
+      for ( int i = 1 ; i <= 8 ; i++ ) offsets[ i ] = i * 5;
+      final Base85.ByteSink sink = new Base85.ByteSink();
+      final int[] codes = a85E.encodeBatch( batch, offsets, sink );
+      a85D.decodeBatch( sink.toByteArray(), codes, new Base85.ByteSink() );
+      assertEquals( "Batch encode count", 1, monitor.getEncodeCount() );
+      assertEquals( "Batch decode count", 1, monitor.getDecodeCount() );
+      assertEquals( "Batch compressed blocks", 16, monitor.getCompressedBlockCount() );
+      assertEquals( "Batch malformed count", 0, monitor.getMalformedCount() );
+   }
+   @Test public void testMonitorOff() {
+      assumeTrue( "Monitoring is off", ! Boolean.getBoolean( Base85.MONITOR_PROPERTY ) );
+      assertNull( "No monitor", Base85.getMonitor() );
+   }
+
+   /////////// Engine Tests ///////////
+
+   @Test public void testEngineSelection () {
+      final String old = System.getProperty( Base85.ENGINE_PROPERTY );
+      final Base85.Engine vector = Base85.loadEngine( "vector" ), swar = Base85.loadEngine( "swar" );
+      try {
+         assertEquals( Base85.ENGINE == null ? "Scalar" : Base85.ENGINE.getName(), Base85.getEngineName() );
+         assertNull( Base85.loadEngine( "scalar" ) );
+         System.setProperty( Base85.ENGINE_PROPERTY, "scalar" );
+         assertNull( Base85.selectEngine() );
+         System.setProperty( Base85.ENGINE_PROPERTY, " SWAR " );
+         assertEquals( name( swar ), name( Base85.selectEngine() ) );
+         // Unavailable engines fall back to the next one, fastest first
+         final String best = name( vector != null ? vector : swar );
+         System.setProperty( Base85.ENGINE_PROPERTY, "vector" );
+         assertEquals( best, name( Base85.selectEngine() ) );
+         System.setProperty( Base85.ENGINE_PROPERTY, "auto" );
+         assertEquals( best, name( Base85.selectEngine() ) );
+      } finally {
+         if ( old == null ) System.clearProperty( Base85.ENGINE_PROPERTY );
+         else System.setProperty( Base85.ENGINE_PROPERTY, old );
+      }
+   }
+
+   private static String name ( Base85.Engine engine ) {
+      return engine == null ? "Scalar" : engine.getName();
+   }
+
+   /////////// Command Line Tests ///////////
+
+   @Test public void testConvert() throws IOException {
+      final byte[] orig = new byte[ Base85.IO_BUFFER * 3 + 3 ];
+      rng.nextBytes( orig );
+      Arrays.fill( orig, 1000, 2000, (byte) 0 );
+      final Path bin = Files.createTempFile( "base85", ".bin" ), txt = Files.createTempFile( "base85", ".txt" );
+      try {
+         Files.write( bin, orig );
+         for ( Base85.Encoder e : new Base85.Encoder[]{ rfcE, z85E, a85E } ) {
+            final Base85.Decoder d = e == rfcE ? rfcD : e == z85E ? z85D : a85D;
+            final byte[] code = e.encode( orig );
+            // File channels are memory-mapped
+            try ( FileChannel src = FileChannel.open( bin ); FileChannel dst = FileChannel.open( txt, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) ) {
+               assertEquals( d.getName() + " encode file", code.length, Base85.convert( e::encode, src, dst, d.getName(), Base85.MAP_WINDOW ) );
+            }
+            assertArrayEquals( d.getName() + " encoded file", code, Files.readAllBytes( txt ) );
+            try ( FileChannel src = FileChannel.open( txt ) ) {
+               final ByteArrayOutputStream out = new ByteArrayOutputStream();
+               assertEquals( d.getName() + " decode file", orig.length, Base85.convert( d::decode, src, Channels.newChannel( out ), d.getName(), Base85.MAP_WINDOW ) );
+               assertArrayEquals( d.getName() + " decoded file", orig, out.toByteArray() );
+            }
+            // Blocks split between small windows are carried to the next window
+            try ( FileChannel bs = FileChannel.open( bin ); FileChannel ts = FileChannel.open( txt ) ) {
+               final ByteArrayOutputStream encoded = new ByteArrayOutputStream(), decoded = new ByteArrayOutputStream();
+               Base85.convert( e::encode, bs, Channels.newChannel( encoded ), d.getName(), 4099 );
+               assertArrayEquals( d.getName() + " encoded small windows", code, encoded.toByteArray() );
+               Base85.convert( d::decode, ts, Channels.newChannel( decoded ), d.getName(), 4099 );
+               assertArrayEquals( d.getName() + " decoded small windows", orig, decoded.toByteArray() );
+            }
+            // Other channels are read into buffer
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Base85.convert( d::decode, Channels.newChannel( new ByteArrayInputStream( code ) ), Channels.newChannel( out ), d.getName(), Base85.MAP_WINDOW );
+            assertArrayEquals( d.getName() + " decoded stream", orig, out.toByteArray() );
+            // Malformed data is reported with its position
+            code[ Base85.IO_BUFFER + 7 ] = (byte) 127;
+            try {
+               Base85.convert( d::decode, Channels.newChannel( new ByteArrayInputStream( code ) ), Channels.newChannel( new ByteArrayOutputStream() ), d.getName(), Base85.MAP_WINDOW );
+               fail( d.getName() + " decode malformed" );
+            } catch ( IOException ex ) {
+               assertTrue( ex.getMessage(), ex.getMessage().contains( "Malformed" ) );
+            }
+         }
+      } finally {
+         Files.delete( bin );
+         Files.delete( txt );
+      }
+   }
+
+   @Test public void testMainAscii85() throws IOException {
+      final byte[] orig = "Man is distinguished".getBytes( US_ASCII );
+      final Path txt = Files.createTempFile( "base85", ".txt" ), bin = Files.createTempFile( "base85", ".bin" );
+      try {
+         // Text files usually end with a line break
+         for ( String text : new String[]{ a85E.encodeToString( orig ) + "\n", "<~" + a85E.encodeToString( orig ) + "~>\r\n" } ) {
+            Files.write( txt, text.getBytes( US_ASCII ) );
+            Base85.main( new String[]{ "-d", "--ascii85", txt.toString(), bin.toString() } );
+            assertArrayEquals( "Decode " + text.trim(), orig, Files.readAllBytes( bin ) );
+         }
+      } finally {
+         Files.delete( txt );
+         Files.delete( bin );
+      }
+   }
 }
\ No newline at end of file
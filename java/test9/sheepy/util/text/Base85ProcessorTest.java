@@ -0,0 +1,140 @@
+package sheepy.util.text;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class Base85ProcessorTest {
+   private final Random rng = new Random( 9 );
+
+   /** Subscriber that requests one buffer at a time, and records what it gets. */
+   private static class Collector implements Flow.Subscriber<ByteBuffer> {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Flow.Subscription subscription;
+      Throwable error;
+      boolean completed, autoRequest = true;
+      int outstanding, received;
+
+      @Override public void onSubscribe ( Flow.Subscription subscription ) {
+         this.subscription = subscription;
+         if ( autoRequest ) request( 1 );
+      }
+      @Override public void onNext ( ByteBuffer item ) {
+         assertTrue( "Not more than requested", --outstanding >= 0 );
+         received++;
+         out.write( item.array(), item.arrayOffset() + item.position(), item.remaining() );
+         if ( autoRequest ) request( 1 );
+      }
+      @Override public void onError ( Throwable throwable ) { error = throwable; }
+      @Override public void onComplete () { completed = true; }
+      void request ( int n ) {
+         outstanding += n;
+         subscription.request( n );
+      }
+   }
+
+   private Collector run ( Base85Processor processor, byte[] data, Collector collector ) {
+      try ( SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>( Runnable::run, 4 ) ) {
+         publisher.subscribe( processor );
+         processor.subscribe( collector );
+         for ( int pos = 0, len ; pos < data.length ; pos += len ) {
+            len = Math.min( data.length - pos, 1 + rng.nextInt( 30 ) );
+            publisher.submit( ByteBuffer.wrap( Arrays.copyOfRange( data, pos, pos + len ) ) );
+         }
+      }
+      return collector;
+   }
+
+   @Test public void testRoundTrip () {
+      final Base85.Ascii85Encoder a85 = Base85.getAscii85Encoder( true, true );
+      final Base85.Encoder[] encoders = { Base85.getZ85Encoder(), a85, a85.withDelimiters( true ).withLineLength( 10 ) };
+      final Base85.Decoder[] decoders = { Base85.getZ85Decoder(), Base85.getAscii85Decoder(), Base85.getAdobeAscii85Decoder() };
+      for ( int len : new int[]{ 0, 1, 3, 100, 1003 } ) {
+         final byte[] from = new byte[ len ];
+         rng.nextBytes( from );
+         if ( len > 20 ) Arrays.fill( from, 8, 16, (byte) 0 );
+         for ( int i = 0 ; i < encoders.length ; i++ ) {
+            final String test = "Codec " + i + " of " + len + " bytes ";
+            final byte[] enc = encoders[i].encode( from );
+            final Collector encoded = run( Base85Processor.encoding( encoders[i] ), from, new Collector() );
+            assertTrue( test + "encode completed", encoded.completed );
+            assertArrayEquals( test + "encode", enc, encoded.out.toByteArray() );
+            final Collector decoded = run( Base85Processor.decoding( decoders[i] ), enc, new Collector() );
+            assertTrue( test + "decode completed", decoded.completed );
+            assertArrayEquals( test + "decode", from, decoded.out.toByteArray() );
+         }
+      }
+   }
+
+   @Test public void testBackpressure () {
+      final Base85Processor processor = Base85Processor.encoding( Base85.getZ85Encoder() );
+      final Collector collector = new Collector();
+      collector.autoRequest = false;
+      final SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>( Runnable::run, 4 );
+      publisher.subscribe( processor );
+      processor.subscribe( collector );
+      for ( int i = 0 ; i < 4 ; i++ ) publisher.submit( ByteBuffer.wrap( new byte[]{ 1, 2 } ) );
+      assertEquals( "Nothing published before request", 0, collector.received );
+      collector.request( 1 );
+      assertEquals( "One buffer per request", 1, collector.received );
+      assertEquals( "Two fragments make one block", 5, collector.out.size() );
+      publisher.submit( ByteBuffer.wrap( new byte[]{ 3 } ) );
+      publisher.close();
+      assertFalse( "Last block waits for demand", collector.completed );
+      collector.request( 10 );
+      assertTrue( "Completed", collector.completed );
+      assertEquals( "Encoded length", 10 + 2, collector.out.size() );
+   }
+
+   @Test public void testMalformed () {
+      final Collector collector = run( Base85Processor.decoding( Base85.getZ85Decoder() ), "0000000000 000".getBytes( US_ASCII ), new Collector() );
+      assertTrue( "Malformed data", collector.error instanceof IllegalArgumentException );
+      assertFalse( "Not completed", collector.completed );
+
+      final Collector bad = new Collector();
+      bad.autoRequest = false;
+      final Base85Processor processor = Base85Processor.encoding( Base85.getZ85Encoder() );
+      processor.subscribe( bad );
+      bad.subscription.request( 0 );
+      assertTrue( "Non-positive request", bad.error instanceof IllegalArgumentException );
+
+      final Collector second = new Collector();
+      processor.subscribe( second );
+      assertTrue( "Second subscriber", second.error instanceof IllegalStateException );
+
+      final Base85.Encoder failing = new Base85.Encoder() {
+         @Override protected byte[] getEncodeMap() { return Base85.getZ85Encoder().getCharset().getBytes( US_ASCII ); }
+         @Override protected int _writeData ( long sum, byte[] map, byte[] out, int wi ) { throw new IllegalStateException( "Codec failure" ); }
+      };
+      final Collector failed = run( Base85Processor.encoding( failing ), new byte[ 100 ], new Collector() );
+      assertTrue( "Any codec exception", failed.error instanceof IllegalStateException );
+      assertFalse( "Not completed after codec exception", failed.completed );
+   }
+
+   @Test public void testNoLockWhenSignalling () {
+      final boolean[] blocked = { false };
+      final Collector collector = new Collector() {
+         @Override public void onNext ( ByteBuffer item ) {
+            super.onNext( item );
+            if ( received != 1 ) return;
+            // Request from another thread while in onNext, which would block forever if the processor held its lock.
+            final Thread other = new Thread( () -> request( 1 ) );
+            other.start();
+            try {
+               other.join( 5000 );
+            } catch ( InterruptedException ex ) { Thread.currentThread().interrupt(); }
+            blocked[ 0 ] = other.isAlive();
+         }
+      };
+      run( Base85Processor.encoding( Base85.getZ85Encoder() ), new byte[ 100 ], collector );
+      assertFalse( "Request from another thread during onNext", blocked[ 0 ] );
+      assertTrue( "Completed", collector.completed );
+      assertEquals( "Encoded length", 125, collector.out.size() );
+   }
+}